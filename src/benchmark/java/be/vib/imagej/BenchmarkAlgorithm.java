@@ -0,0 +1,157 @@
+package be.vib.imagej;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ij.process.ImageProcessor;
+
+// An algorithm for the command-line benchmarks. It creates the denoisers of a real denoising algorithm
+// via DenoiseBackends (so the backend choice works as in the plugin), but without a user interface panel,
+// optionally with a different tile size, and it records how long each tile takes to denoise.
+public class BenchmarkAlgorithm extends Algorithm
+{
+	private DenoiseParams params;
+	private int tileSize;  // 0 to use the tile size preferred by the denoiser
+	private List<Long> tileLatencies = new ArrayList<Long>();  // in nanoseconds
+
+	public BenchmarkAlgorithm(Name name, DenoiseParams params, int tileSize)
+	{
+		super(name);
+		this.params = params;
+		this.tileSize = tileSize;
+	}
+
+	// Makes the backend with the given name the preferred one, starting Quasar first if needed.
+	// Throws a RuntimeException if there is no such backend or if it is not available.
+	public static void selectBackend(String name)
+	{
+		DenoiseBackend backend = DenoiseBackends.getBackend(name);
+		if (backend == null)
+			throw new RuntimeException("Unknown denoising backend " + name);
+
+		if (backend == QuasarBackend.getInstance() && !backend.isAvailable())
+		{
+			// Outside of the plugin nobody starts Quasar for us, so do it here (on this thread).
+			try
+			{
+				new QuasarInitializationSwingWorker(null, null).doInBackground();
+			}
+			catch (Exception e)
+			{
+				throw new RuntimeException("Quasar initialization failed", e);
+			}
+		}
+
+		if (!backend.isAvailable())
+			throw new RuntimeException("Denoising backend " + name + " is not available.");
+
+		DenoiseBackends.setPreferredBackend(name);
+	}
+
+	// Returns a DenoiseEngine for this algorithm, without progress output. If mode is null, the mode is chosen
+	// as in the plugin: PARALLEL if the backend can denoise concurrently, PIPELINED otherwise.
+	public DenoiseEngine newEngine(DenoiseEngine.Mode mode, int numWorkers)
+	{
+		DenoiseEngine engine = new DenoiseEngine(this)
+		{
+			@Override
+			public void process(List<Integer> chunks)
+			{
+				// no progress output
+			}
+		};
+
+		DenoiseBackend backend = DenoiseBackends.getBackend(getName());
+		engine.setMode((mode != null) ? mode : (backend.supportsConcurrentDenoising() ? DenoiseEngine.Mode.PARALLEL : DenoiseEngine.Mode.PIPELINED));
+		engine.setNumWorkers(numWorkers);
+		return engine;
+	}
+
+	@Override
+	public String getReadableName()
+	{
+		return getName().toString();
+	}
+
+	@Override
+	public DenoiseParams getParams()
+	{
+		return params;
+	}
+
+	@Override
+	public DenoiseParams getParamsCopy()
+	{
+		// The denoisers never modify their parameters, so they can share them.
+		return params;
+	}
+
+	@Override
+	public Denoiser getDenoiserCopy()
+	{
+		return new TimedDenoiser(super.getDenoiserCopy());
+	}
+
+	@Override
+	public DenoiseParamsPanelBase getPanel()
+	{
+		return null;
+	}
+
+	@Override
+	public void setDefaultParameters(float noiseEstimate)
+	{
+		params.setDefaultParameters(noiseEstimate);
+	}
+
+	// Returns the denoising times of all tiles since the last call, in nanoseconds, and forgets them.
+	public synchronized long[] takeTileLatencies()
+	{
+		long[] latencies = new long[tileLatencies.size()];
+		for (int i = 0; i < latencies.length; i++)
+			latencies[i] = tileLatencies.get(i);
+		tileLatencies.clear();
+		return latencies;
+	}
+
+	private synchronized void addTileLatency(long nanoseconds)
+	{
+		tileLatencies.add(nanoseconds);
+	}
+
+	// Wraps the denoiser of the backend. It runs the wrapped denoiser on the thread where the engine
+	// executes this one (i.e. via the backend of the wrapped denoiser), so only the denoising of the tile
+	// itself is timed, not the waiting for the backend.
+	private class TimedDenoiser extends Denoiser
+	{
+		private final Denoiser denoiser;
+
+		TimedDenoiser(Denoiser denoiser)
+		{
+			super(denoiser.getParams(), denoiser.getBackend());
+			this.denoiser = denoiser;
+		}
+
+		@Override
+		public ImageProcessor call() throws Exception
+		{
+			denoiser.setImage(image, normalizer);
+			final long start = System.nanoTime();
+			ImageProcessor result = denoiser.call();
+			addTileLatency(System.nanoTime() - start);
+			return result;
+		}
+
+		@Override
+		public int imageTileSize()
+		{
+			return (tileSize > 0) ? tileSize : denoiser.imageTileSize();
+		}
+
+		@Override
+		public int imageMargin()
+		{
+			return denoiser.imageMargin();
+		}
+	}
+}
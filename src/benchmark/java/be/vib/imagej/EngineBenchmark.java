@@ -0,0 +1,80 @@
+package be.vib.imagej;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+
+// End-to-end overhead of the DenoiseEngine: tiling, normalization, stitching, scheduling and the
+// assembly of the result stack, for each engine mode. The tiles are "denoised" by a pass-through
+// denoiser on the Java backend, so no graphics card is needed and the measured time is the
+// host-side cost that comes on top of the denoising itself.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class EngineBenchmark
+{
+	@Param({"512", "2048", "8192", "16384"})
+	public int imageSize;
+
+	@Param({"8", "16"})
+	public int bitDepth;
+
+	@Param({"256", "1024"})
+	public int tileSize;
+
+	@Param({"1"})
+	public int numSlices;
+
+	@Param({"SEQUENTIAL", "PIPELINED", "PARALLEL"})
+	public DenoiseEngine.Mode mode;
+
+	private ImagePlus imagePlus;
+	private ImageNormalizer normalizer;
+	private ImageRange range;
+	private DenoiseEngine engine;
+
+	@Setup
+	public void setup()
+	{
+		ImageStack stack = new ImageStack(imageSize, imageSize);
+		for (int slice = 0; slice < numSlices; slice++)
+			stack.addSlice("", SyntheticImages.newImage(imageSize, imageSize, bitDepth, slice + 1));
+
+		imagePlus = new ImagePlus("benchmark", stack);
+		normalizer = new ImageNormalizer(imagePlus);
+		range = ImageRange.makeAllSlicesRange(imagePlus);
+
+		engine = new DenoiseEngine(new PassThroughAlgorithm(tileSize))
+		{
+			@Override
+			public void process(List<Integer> chunks)
+			{
+				// no progress output during the benchmark
+			}
+		};
+		engine.setMode(mode);
+	}
+
+	@Benchmark
+	public ImagePlus denoise()
+	{
+		return engine.denoise(imagePlus, normalizer, range, "denoised");
+	}
+}
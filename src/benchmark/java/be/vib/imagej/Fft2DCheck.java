@@ -0,0 +1,101 @@
+package be.vib.imagej;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Command-line correctness check of Fft2D (and so of Fft): the half spectrum of random images is compared
+// with a direct 2D DFT, and the inverse transform must restore the image. The image sizes exercise each code
+// path of Fft (radix 2, 3, 4 and 5 butterflies, the generic radix butterfly and Bluestein's algorithm).
+// It exits with status 1 if any check fails.
+//
+// Example (run "ant checks" for the classpath):
+//   java be.vib.imagej.Fft2DCheck
+public class Fft2DCheck
+{
+	private static final int EXIT_FAILURE = 1;
+
+	// Image sizes { width, height }: powers of two, mixed radix 3 and 5, generic radix 7 and 11,
+	// and the prime 67 (and odd widths) for Bluestein's algorithm
+	private static final int[][] SIZES = { { 16, 8 }, { 30, 18 }, { 14, 22 }, { 67, 6 }, { 9, 67 } };
+	private static final double TOLERANCE = 1e-9;  // maximum error relative to the largest spectrum magnitude
+	private static final double ROUND_TRIP_TOLERANCE = 1e-5;  // maximum error after forward and inverse transform, for pixels in [0,1]
+
+	public static void main(String[] args)
+	{
+		int numChecks = 0;
+		List<String> failures = new ArrayList<String>();
+
+		for (int[] size : SIZES)
+		{
+			numChecks += 2;
+			check(size[0], size[1], failures);
+		}
+
+		System.out.println();
+		if (failures.isEmpty())
+		{
+			System.out.println("All " + numChecks + " checks passed.");
+		}
+		else
+		{
+			System.out.println(failures.size() + " of " + numChecks + " checks failed:");
+			for (String failure : failures)
+				System.out.println("  " + failure);
+			System.exit(EXIT_FAILURE);
+		}
+	}
+
+	// Compares the Fft2D half spectrum of a random image with a direct 2D DFT, and checks that the inverse transform
+	// restores the image. Adds a message to failures for each of these two checks that fails.
+	private static void check(int width, int height, List<String> failures)
+	{
+		Random random = new Random(width * 1000 + height);
+		float[] image = new float[width * height];
+		for (int i = 0; i < image.length; i++)
+			image[i] = random.nextFloat();
+
+		Fft2D fft = Fft2D.getPlan(width, height);
+		final int spectrumWidth = fft.spectrumWidth();
+		double[] re = new double[fft.spectrumSize()];
+		double[] im = new double[fft.spectrumSize()];
+		fft.forward(image, re, im);
+
+		double maxError = 0;
+		double maxMagnitude = 0;
+		for (int v = 0; v < height; v++)
+		{
+			for (int u = 0; u < spectrumWidth; u++)
+			{
+				double sr = 0, si = 0;
+				for (int y = 0; y < height; y++)
+				{
+					for (int x = 0; x < width; x++)
+					{
+						final double angle = -2 * Math.PI * ((double)(u * x % width) / width + (double)(v * y % height) / height);
+						sr += image[y * width + x] * Math.cos(angle);
+						si += image[y * width + x] * Math.sin(angle);
+					}
+				}
+				maxError = Math.max(maxError, Math.hypot(re[v * spectrumWidth + u] - sr, im[v * spectrumWidth + u] - si));
+				maxMagnitude = Math.max(maxMagnitude, Math.hypot(sr, si));
+			}
+		}
+
+		float[] restored = new float[image.length];
+		fft.inverse(re, im, restored);
+
+		double maxRoundTripError = 0;
+		for (int i = 0; i < image.length; i++)
+			maxRoundTripError = Math.max(maxRoundTripError, Math.abs(restored[i] - image[i]));
+
+		final double relativeError = maxError / maxMagnitude;
+		System.out.println(String.format(Locale.ROOT, "Fft2D %d x %d: relative error %.2g, round trip error %.2g", width, height, relativeError, maxRoundTripError));
+
+		if (!(relativeError <= TOLERANCE))
+			failures.add(String.format(Locale.ROOT, "Fft2D %d x %d: relative error %.2g with respect to a direct DFT exceeds %.2g", width, height, relativeError, TOLERANCE));
+		if (!(maxRoundTripError <= ROUND_TRIP_TOLERANCE))
+			failures.add(String.format(Locale.ROOT, "Fft2D %d x %d: round trip error %.2g exceeds %.2g", width, height, maxRoundTripError, ROUND_TRIP_TOLERANCE));
+	}
+}
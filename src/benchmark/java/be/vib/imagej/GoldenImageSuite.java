@@ -0,0 +1,361 @@
+package be.vib.imagej;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+// Command-line quality and timing regression suite. It follows the test methodology of the main() functions
+// in the .q files: a clean image is blurred with fgaussian(15, sigma), (correlated) Gaussian noise is added,
+// the result is denoised, and the PSNR of the denoised image with respect to the clean image is computed.
+//
+// The images are synthetic (SyntheticImages) and the noise comes from fixed seeds, so every run denoises exactly
+// the same images. Each algorithm is run via the DenoiseEngine with its default parameters for the estimated
+// noise level, as in the plugin, so tiling, margins and the normalization of 8 and 16 bit images are covered too.
+// For each algorithm the suite checks that the PSNR reaches a floor for each test case, and that denoising
+// takes no longer than a time budget for the backend used. It exits with status 1 if any check fails.
+//
+// The PSNR floors are set somewhat below the PSNR obtained when they were last calibrated (for the default image
+// size of 512 x 512 pixels), so they catch real quality regressions but not small numerical differences, for
+// example between JVMs or processors. The time budgets are generous, and can be scaled with --time-scale for slower machines.
+//
+// Example (run "ant golden" for the classpath):
+//   java be.vib.imagej.GoldenImageSuite --backend Java --tile 256
+public class GoldenImageSuite
+{
+	private static final int EXIT_FAILURE = 1;
+	private static final int EXIT_USAGE = 2;
+
+	private static final int BLUR_KERNEL_SIZE = 15;  // as fgaussian(15, sigma) in the .q files
+
+	// Horizontal correlation of the noise, resembling the correlation along the scan lines of EM detectors
+	private static final float[] NOISE_CORRELATION = { 0.2f, 0.5f, 1.0f, 0.5f, 0.2f };
+
+	private static class TestCase
+	{
+		final String name;
+		final float blurSigma;
+		final float noiseSigma;  // standard deviation of the noise, for pixel intensities in [0,1]
+		final boolean correlatedNoise;
+		final long seed;
+
+		TestCase(String name, float blurSigma, float noiseSigma, boolean correlatedNoise, long seed)
+		{
+			this.name = name;
+			this.blurSigma = blurSigma;
+			this.noiseSigma = noiseSigma;
+			this.correlatedNoise = correlatedNoise;
+			this.seed = seed;
+		}
+	}
+
+	private static final TestCase[] TEST_CASES = { new TestCase("white noise", 1.0f, 0.05f, false, 1),
+	                                               new TestCase("correlated noise", 1.0f, 0.05f, true, 2),
+	                                               new TestCase("strong white noise", 1.0f, 0.10f, false, 3) };
+
+	// The minimum PSNR (in dB) for each test case, and the maximum time (in seconds) for denoising
+	// a single test image, for an algorithm on a backend.
+	private static class Budget
+	{
+		final Algorithm.Name algorithm;
+		final String backend;
+		final float[] minPsnr;  // for each of the TEST_CASES
+		final double maxSeconds;
+
+		Budget(Algorithm.Name algorithm, String backend, float[] minPsnr, double maxSeconds)
+		{
+			this.algorithm = algorithm;
+			this.backend = backend;
+			this.minPsnr = minPsnr;
+			this.maxSeconds = maxSeconds;
+		}
+	}
+
+	// The PSNR floors and time budgets were calibrated with the Java backend, for a single 512 x 512 image.
+	// There are no budgets for the Quasar backend yet: they should be calibrated on a machine with Quasar
+	// and a GPU. Until then the suite reports its results without checking them.
+	// Note: with their default parameters the bilateral filter (rangeSigma 1) hardly denoises, and Tikhonov
+	// denoises little for noise levels around 0.1, hence their low floors.
+	private static final Budget[] BUDGETS = {
+		new Budget(Algorithm.Name.GAUSSIAN, "Java", new float[] { 29.5f, 28.1f, 28.0f }, 0.5),
+		new Budget(Algorithm.Name.BILATERAL, "Java", new float[] { 24.7f, 24.7f, 19.3f }, 3.0),
+		new Budget(Algorithm.Name.BLSGSM, "Java", new float[] { 30.8f, 27.6f, 28.2f }, 3.0),
+		new Budget(Algorithm.Name.WAVELET_THRESHOLDING, "Java", new float[] { 29.7f, 29.1f, 27.9f }, 1.0),
+		new Budget(Algorithm.Name.ANISOTROPIC_DIFFUSION, "Java", new float[] { 30.9f, 29.8f, 28.5f }, 1.0),
+		new Budget(Algorithm.Name.NONLOCALMEANS, "Java", new float[] { 31.2f, 29.1f, 29.5f }, 2.0),
+		new Budget(Algorithm.Name.TIKHONOV, "Java", new float[] { 27.7f, 26.4f, 23.0f }, 0.5),
+		new Budget(Algorithm.Name.TOTAL_VARIATION, "Java", new float[] { 30.8f, 29.5f, 29.1f }, 2.0)
+	};
+
+	private String backendName = null;  // null for the automatic backend choice
+	private int numWorkers = Runtime.getRuntime().availableProcessors();
+	private int tileSize = 0;  // 0 for the tile size preferred by each denoiser
+	private int imageSize = 512;
+	private int[] bitDepths = { 8, 16 };
+	private List<Algorithm.Name> algorithms = new ArrayList<Algorithm.Name>(Arrays.asList(Algorithm.Name.values()));
+	private double timeScale = 1.0;
+	private boolean checkTime = true;
+
+	public static void main(String[] args)
+	{
+		GoldenImageSuite suite = new GoldenImageSuite();
+		try
+		{
+			suite.parseArguments(args);
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(EXIT_USAGE);
+		}
+
+		boolean passed = suite.run();
+		System.exit(passed ? 0 : EXIT_FAILURE);
+	}
+
+	private static void printUsage()
+	{
+		System.err.println("Usage: GoldenImageSuite [options]");
+		System.err.println("  --backend NAME          denoising backend, e.g. Java or Quasar (default: automatic choice)");
+		System.err.println("  --workers N             number of workers in PARALLEL mode (default: number of processors)");
+		System.err.println("  --tile N                tile size in pixels (default: the tile size preferred by each algorithm)");
+		System.err.println("  --size N                width and height of the test images (default: 512, for which the PSNR floors were calibrated)");
+		System.err.println("  --bitdepths LIST        comma separated bit depths, 8 and/or 16 (default: 8,16)");
+		System.err.println("  --algorithms LIST       comma separated algorithm names, e.g. GAUSSIAN,BLSGSM (default: all)");
+		System.err.println("  --time-scale FACTOR     multiply all time budgets by FACTOR (default: 1)");
+		System.err.println("  --check-time BOOLEAN    check the time budgets (default: true)");
+	}
+
+	private void parseArguments(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			final String option = args[i];
+			if (i + 1 >= args.length)
+				throw new RuntimeException("Missing value for option " + option);
+			final String value = args[++i];
+
+			switch (option)
+			{
+				case "--backend":
+					backendName = value.equalsIgnoreCase("auto") ? null : value;
+					break;
+				case "--workers":
+					numWorkers = Integer.parseInt(value);
+					break;
+				case "--tile":
+					tileSize = Integer.parseInt(value);
+					break;
+				case "--size":
+					imageSize = Integer.parseInt(value);
+					break;
+				case "--bitdepths":
+					String[] depths = value.split(",");
+					bitDepths = new int[depths.length];
+					for (int d = 0; d < depths.length; d++)
+					{
+						bitDepths[d] = Integer.parseInt(depths[d].trim());
+						if (bitDepths[d] != 8 && bitDepths[d] != 16)
+							throw new RuntimeException("Only 8 and 16 bit images are supported.");
+					}
+					break;
+				case "--algorithms":
+					algorithms.clear();
+					for (String name : value.split(","))
+						algorithms.add(Algorithm.Name.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+					break;
+				case "--time-scale":
+					timeScale = Double.parseDouble(value);
+					break;
+				case "--check-time":
+					checkTime = Boolean.parseBoolean(value);
+					break;
+				default:
+					throw new RuntimeException("Unknown option " + option);
+			}
+		}
+
+		if (numWorkers <= 0 || tileSize < 0 || imageSize <= 0 || timeScale <= 0)
+			throw new RuntimeException("Invalid option value");
+	}
+
+	// Runs all test cases, and returns true if all checks passed.
+	private boolean run()
+	{
+		if (backendName != null)
+			BenchmarkAlgorithm.selectBackend(backendName);
+
+		final float[] clean = SyntheticImages.newCleanPixels(imageSize, imageSize, 0);
+
+		int numChecks = 0;
+		List<String> failures = new ArrayList<String>();
+
+		for (int c = 0; c < TEST_CASES.length; c++)
+		{
+			final TestCase testCase = TEST_CASES[c];
+			final float[] noisy = newNoisyPixels(clean, testCase);
+
+			for (int bitDepth : bitDepths)
+			{
+				ImagePlus noisyImagePlus = new ImagePlus(testCase.name, SyntheticImages.toImage(noisy, imageSize, imageSize, bitDepth));
+				final double noisyPsnr = psnr(SyntheticImages.toPixels(noisyImagePlus.getProcessor()), clean);
+				System.out.println(String.format(Locale.ROOT, "%s, %d bit: noisy PSNR %.2f dB", testCase.name, bitDepth, noisyPsnr));
+
+				ImageNormalizer normalizer = new ImageNormalizer(noisyImagePlus);
+				final float noiseEstimate = new NoiseEstimator(noisyImagePlus.getProcessor(), normalizer).call();
+
+				for (Algorithm.Name name : algorithms)
+				{
+					if (backendName != null && !DenoiseBackends.getBackend(backendName).supports(name))
+					{
+						System.out.println("  " + name + ": skipped, not supported by backend " + backendName);
+						continue;
+					}
+
+					final String backend = DenoiseBackends.getBackend(name).getName();
+					final Budget budget = findBudget(name, backend);
+					final String label = String.format(Locale.ROOT, "%s (%s) on %s, %d bit", name, backend, testCase.name, bitDepth);
+
+					BenchmarkAlgorithm algorithm = new BenchmarkAlgorithm(name, DenoiseParams.newParams(name), tileSize);
+					algorithm.setDefaultParameters(noiseEstimate);
+					DenoiseEngine engine = algorithm.newEngine(null, numWorkers);
+
+					// The first run of an algorithm includes class loading, JIT compilation and (for Quasar) kernel compilation,
+					// which the time budgets do not account for.
+					if (c == 0)
+						engine.denoise(noisyImagePlus, normalizer, ImageRange.makeAllSlicesRange(noisyImagePlus), "warmup");
+
+					final long start = System.nanoTime();
+					ImagePlus denoisedImagePlus = engine.denoise(noisyImagePlus, normalizer, ImageRange.makeAllSlicesRange(noisyImagePlus), "denoised");
+					final double seconds = (System.nanoTime() - start) * 1e-9;
+
+					final double denoisedPsnr = psnr(SyntheticImages.toPixels(denoisedImagePlus.getProcessor()), clean);
+
+					StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "  %s: PSNR %.2f dB, %.2f s", name, denoisedPsnr, seconds));
+
+					if (budget == null)
+					{
+						line.append(" (no budget for backend ").append(backend).append(")");
+					}
+					else
+					{
+						final double maxSeconds = budget.maxSeconds * timeScale;
+						line.append(String.format(Locale.ROOT, " (floor %.2f dB, budget %.2f s)", budget.minPsnr[c], maxSeconds));
+
+						numChecks++;
+						if (!(denoisedPsnr >= budget.minPsnr[c]))
+						{
+							failures.add(String.format(Locale.ROOT, "%s: PSNR %.2f dB is below the floor of %.2f dB", label, denoisedPsnr, budget.minPsnr[c]));
+							line.append(" PSNR FAILED");
+						}
+
+						if (checkTime)
+						{
+							numChecks++;
+							if (seconds > maxSeconds)
+							{
+								failures.add(String.format(Locale.ROOT, "%s: %.2f s exceeds the time budget of %.2f s", label, seconds, maxSeconds));
+								line.append(" TIME FAILED");
+							}
+						}
+					}
+
+					System.out.println(line);
+				}
+			}
+		}
+
+		System.out.println();
+		if (failures.isEmpty())
+		{
+			System.out.println("All " + numChecks + " checks passed.");
+			return true;
+		}
+		else
+		{
+			System.out.println(failures.size() + " of " + numChecks + " checks failed:");
+			for (String failure : failures)
+				System.out.println("  " + failure);
+			return false;
+		}
+	}
+
+	private static Budget findBudget(Algorithm.Name algorithm, String backend)
+	{
+		for (Budget budget : BUDGETS)
+		{
+			if (budget.algorithm == algorithm && budget.backend.equalsIgnoreCase(backend))
+				return budget;
+		}
+		return null;
+	}
+
+	// Returns the clean image, blurred and with noise added. The result is not clipped to [0,1].
+	private float[] newNoisyPixels(float[] clean, TestCase testCase)
+	{
+		float[] noisy = new GaussianFilter(BLUR_KERNEL_SIZE, testCase.blurSigma).filter(clean, imageSize, imageSize);
+
+		Random random = new Random(testCase.seed);
+		float[] noise = new float[noisy.length];
+		for (int i = 0; i < noise.length; i++)
+			noise[i] = (float)random.nextGaussian();
+
+		if (testCase.correlatedNoise)
+			noise = correlateRows(noise, imageSize, imageSize);
+
+		// Like corr_noise ./ std(corr_noise) .* sigma in the .q files
+		final double scale = testCase.noiseSigma / standardDeviation(noise);
+		for (int i = 0; i < noisy.length; i++)
+			noisy[i] += (float)(scale * noise[i]);
+
+		return noisy;
+	}
+
+	// Filters each row with NOISE_CORRELATION, with mirror boundaries.
+	private static float[] correlateRows(float[] pixels, int width, int height)
+	{
+		final int radius = NOISE_CORRELATION.length / 2;
+		float[] out = new float[pixels.length];
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				float sum = 0;
+				for (int k = -radius; k <= radius; k++)
+					sum += NOISE_CORRELATION[k + radius] * pixels[y * width + ImageUtils.mirrorIndex(x + k, width)];
+				out[y * width + x] = sum;
+			}
+		}
+		return out;
+	}
+
+	private static double standardDeviation(float[] values)
+	{
+		double sum = 0;
+		double sumSquares = 0;
+		for (float v : values)
+		{
+			sum += v;
+			sumSquares += v * v;
+		}
+		final double mean = sum / values.length;
+		return Math.sqrt(sumSquares / values.length - mean * mean);
+	}
+
+	// PSNR (in dB) of x with respect to the reference y, for pixel intensities in [0,1]
+	private static double psnr(float[] x, float[] y)
+	{
+		double sum = 0;
+		for (int i = 0; i < x.length; i++)
+		{
+			final double d = x[i] - y[i];
+			sum += d * d;
+		}
+		return 10 * Math.log10(1 / (sum / x.length));
+	}
+}
@@ -0,0 +1,65 @@
+package be.vib.imagej;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.process.ImageProcessor;
+
+// Cost of the pixel conversions in ImageUtils between 8/16 bit images and float arrays,
+// and of the mirrored border extension used by the filters of the Java backend.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class ImageUtilsBenchmark
+{
+	@Param({"512", "2048", "8192", "16384"})
+	public int imageSize;
+
+	@Param({"8", "16"})
+	public int bitDepth;
+
+	@Param({"16"})
+	public int border;
+
+	private ImageProcessor image;
+	private float[] pixels;
+
+	@Setup
+	public void setup()
+	{
+		image = SyntheticImages.newImage(imageSize, imageSize, bitDepth, 1);
+		pixels = ImageUtils.newFloatArrayFromImage(image);
+	}
+
+	@Benchmark
+	public float[] imageToFloats()
+	{
+		return ImageUtils.newFloatArrayFromImage(image);
+	}
+
+	@Benchmark
+	public ImageProcessor floatsToImage()
+	{
+		return ImageUtils.newImageFromFloatArray(image, pixels);
+	}
+
+	@Benchmark
+	public float[] mirrorExtend()
+	{
+		return ImageUtils.mirrorExtend(pixels, imageSize, imageSize, border);
+	}
+}
@@ -0,0 +1,225 @@
+package be.vib.imagej;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Minimal JSON support for the benchmark result files, so the benchmarks need no JSON library.
+// parse() returns a Map (for objects, with keys in file order), a List, a String, a Double, a Boolean or null.
+public class Json
+{
+	private final String text;
+	private int pos;
+
+	private Json(String text)
+	{
+		this.text = text;
+		this.pos = 0;
+	}
+
+	public static Object parse(String text)
+	{
+		Json json = new Json(text);
+		Object value = json.parseValue();
+		json.skipWhitespace();
+		if (json.pos != text.length())
+			throw json.error("Unexpected text after JSON value");
+		return value;
+	}
+
+	// Returns the given string as a JSON string literal, including the quotes.
+	public static String quote(String s)
+	{
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++)
+		{
+			final char c = s.charAt(i);
+			switch (c)
+			{
+				case '"':  sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					if (c < 0x20)
+						sb.append(String.format("\\u%04x", (int)c));
+					else
+						sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	// Returns the given number as a JSON number, independent of the default locale.
+	public static String number(double value)
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			return "null";
+		return String.format(Locale.ROOT, "%.4f", value);
+	}
+
+	private Object parseValue()
+	{
+		skipWhitespace();
+		if (pos >= text.length())
+			throw error("Unexpected end of JSON text");
+
+		final char c = text.charAt(pos);
+		if (c == '{')
+			return parseObject();
+		else if (c == '[')
+			return parseArray();
+		else if (c == '"')
+			return parseString();
+		else if (text.startsWith("true", pos))
+			return literal("true", Boolean.TRUE);
+		else if (text.startsWith("false", pos))
+			return literal("false", Boolean.FALSE);
+		else if (text.startsWith("null", pos))
+			return literal("null", null);
+		else
+			return parseNumber();
+	}
+
+	private Object literal(String word, Object value)
+	{
+		pos += word.length();
+		return value;
+	}
+
+	private Map<String, Object> parseObject()
+	{
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		expect('{');
+		skipWhitespace();
+		if (peek() == '}')
+		{
+			pos++;
+			return map;
+		}
+		while (true)
+		{
+			skipWhitespace();
+			String key = parseString();
+			skipWhitespace();
+			expect(':');
+			map.put(key, parseValue());
+			skipWhitespace();
+			if (peek() == ',')
+			{
+				pos++;
+				continue;
+			}
+			expect('}');
+			return map;
+		}
+	}
+
+	private List<Object> parseArray()
+	{
+		List<Object> list = new ArrayList<Object>();
+		expect('[');
+		skipWhitespace();
+		if (peek() == ']')
+		{
+			pos++;
+			return list;
+		}
+		while (true)
+		{
+			list.add(parseValue());
+			skipWhitespace();
+			if (peek() == ',')
+			{
+				pos++;
+				continue;
+			}
+			expect(']');
+			return list;
+		}
+	}
+
+	private String parseString()
+	{
+		expect('"');
+		StringBuilder sb = new StringBuilder();
+		while (true)
+		{
+			if (pos >= text.length())
+				throw error("Unterminated string");
+			char c = text.charAt(pos++);
+			if (c == '"')
+				return sb.toString();
+			if (c == '\\')
+			{
+				if (pos >= text.length())
+					throw error("Unterminated string");
+				c = text.charAt(pos++);
+				switch (c)
+				{
+					case 'b': sb.append('\b'); break;
+					case 'f': sb.append('\f'); break;
+					case 'n': sb.append('\n'); break;
+					case 'r': sb.append('\r'); break;
+					case 't': sb.append('\t'); break;
+					case 'u':
+						if (pos + 4 > text.length())
+							throw error("Invalid unicode escape");
+						sb.append((char)Integer.parseInt(text.substring(pos, pos + 4), 16));
+						pos += 4;
+						break;
+					default: sb.append(c); break;  // '"', '\\' and '/'
+				}
+			}
+			else
+			{
+				sb.append(c);
+			}
+		}
+	}
+
+	private Double parseNumber()
+	{
+		final int start = pos;
+		while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0)
+			pos++;
+		if (start == pos)
+			throw error("Unexpected character '" + text.charAt(pos) + "'");
+		try
+		{
+			return Double.valueOf(text.substring(start, pos));
+		}
+		catch (NumberFormatException e)
+		{
+			throw error("Invalid number");
+		}
+	}
+
+	private char peek()
+	{
+		if (pos >= text.length())
+			throw error("Unexpected end of JSON text");
+		return text.charAt(pos);
+	}
+
+	private void expect(char c)
+	{
+		if (peek() != c)
+			throw error("Expected '" + c + "'");
+		pos++;
+	}
+
+	private void skipWhitespace()
+	{
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+			pos++;
+	}
+
+	private RuntimeException error(String message)
+	{
+		return new RuntimeException(message + " at position " + pos + " in JSON text");
+	}
+}
@@ -0,0 +1,67 @@
+package be.vib.imagej;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+// Cost of the ImageNormalizer: the histogram and percentile computation when it is created
+// (only done for 16 bit images), and the normalization of pixels to floats and back,
+// which the Java backend does for every tile.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class NormalizerBenchmark
+{
+	@Param({"512", "2048", "8192", "16384"})
+	public int imageSize;
+
+	@Param({"8", "16"})
+	public int bitDepth;
+
+	private ImagePlus imagePlus;
+	private ImageProcessor image;
+	private ImageNormalizer normalizer;
+
+	@Setup
+	public void setup()
+	{
+		image = SyntheticImages.newImage(imageSize, imageSize, bitDepth, 1);
+		imagePlus = new ImagePlus("benchmark", image);
+		normalizer = new ImageNormalizer(imagePlus);
+	}
+
+	@Benchmark
+	public ImageNormalizer histogramAndPercentiles()
+	{
+		return new ImageNormalizer(imagePlus);
+	}
+
+	@Benchmark
+	public float[] normalizeToArray()
+	{
+		return normalizer.normalizeToArray(image, false);
+	}
+
+	@Benchmark
+	public ImageProcessor normalizeAndDenormalize()
+	{
+		float[] pixels = normalizer.normalizeToArray(image, false);
+		return normalizer.denormalize(image, pixels, false);
+	}
+}
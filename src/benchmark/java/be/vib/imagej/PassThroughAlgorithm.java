@@ -0,0 +1,78 @@
+package be.vib.imagej;
+
+// A stand-in algorithm for the benchmarks. Its denoiser runs on the Java backend but leaves the
+// pixels untouched, so benchmarks that use it measure the host-side work around the denoising
+// (tiling, normalization, conversions, stitching, scheduling) and not the denoising itself.
+// It has no user interface panel, so it can be used without a display.
+public class PassThroughAlgorithm extends Algorithm
+{
+	private GaussianParams params;
+	private int tileSize;
+
+	public PassThroughAlgorithm(int tileSize)
+	{
+		super(Name.GAUSSIAN);
+		this.params = new GaussianParams();
+		this.tileSize = tileSize;
+	}
+
+	public PassThroughAlgorithm(int tileSize, float sigma)
+	{
+		super(Name.GAUSSIAN);
+		this.params = new GaussianParams(sigma);
+		this.tileSize = tileSize;
+	}
+
+	@Override
+	public String getReadableName()
+	{
+		return "Pass-through";
+	}
+
+	@Override
+	public DenoiseParams getParams()
+	{
+		return params;
+	}
+
+	@Override
+	public DenoiseParams getParamsCopy()
+	{
+		return new GaussianParams(params);
+	}
+
+	@Override
+	public Denoiser getDenoiserCopy()
+	{
+		return new PassThroughDenoiser(getParamsCopy(), tileSize);
+	}
+
+	@Override
+	public DenoiseParamsPanelBase getPanel()
+	{
+		return null;
+	}
+
+	private static class PassThroughDenoiser extends JavaDenoiser
+	{
+		private final int tileSize;
+
+		PassThroughDenoiser(DenoiseParams params, int tileSize)
+		{
+			super(params);
+			this.tileSize = tileSize;
+		}
+
+		@Override
+		protected float[] denoise(float[] pixels, int width, int height)
+		{
+			return pixels;
+		}
+
+		@Override
+		public int imageTileSize()
+		{
+			return tileSize;
+		}
+	}
+}
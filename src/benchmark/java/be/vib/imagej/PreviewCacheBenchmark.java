@@ -0,0 +1,117 @@
+package be.vib.imagej;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+// Cost of looking up denoised previews in the DenoisePreviewCache, as done by the wizard
+// on every change of a denoising parameter: creating the key (which snapshots the parameters),
+// and a lookup that hits or misses. Also the cost of inserting into a full cache, which evicts
+// the least recently used entry, and of hashing the noisy preview (done once per ROI).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true"})
+public class PreviewCacheBenchmark
+{
+	@Param({"10", "100", "1000"})
+	public int numEntries;
+
+	@Param({"512"})
+	public int previewSize;
+
+	private DenoisePreviewCache cache;      // holds all numEntries entries
+	private DenoisePreviewCache fullCache;  // holds all but one of the numEntries entries
+	private PassThroughAlgorithm[] algorithms;  // one for each cached entry, each with a different parameter value
+	private PassThroughAlgorithm missingAlgorithm;
+	private DenoisePreviewCacheValue value;
+	private ImageProcessor noisyPreview;
+	private ImageNormalizer normalizer;
+	private String imageHash;
+	private int next;
+	private int nextEvicted;
+
+	@Setup
+	public void setup()
+	{
+		BufferedImage preview = ImageUtils.createGrayscaleTestImage(previewSize, previewSize);
+		value = new DenoisePreviewCacheValue(preview, 0.05f, 0.3f);
+
+		noisyPreview = SyntheticImages.newImage(previewSize, previewSize, 16, 42);
+		normalizer = new ImageNormalizer(new ImagePlus("noisy preview", noisyPreview));
+		imageHash = DenoisePreviewCacheKey.hashImage(noisyPreview, normalizer);
+
+		// Capacity such that all entries fit.
+		cache = new DenoisePreviewCache(numEntries * value.getSizeInBytes());
+		algorithms = new PassThroughAlgorithm[numEntries];
+		for (int i = 0; i < numEntries; i++)
+		{
+			algorithms[i] = new PassThroughAlgorithm(1024, 0.01f * (i + 1));
+			cache.put(new DenoisePreviewCacheKey(imageHash, algorithms[i]), value);
+		}
+		missingAlgorithm = new PassThroughAlgorithm(1024, -1.0f);
+		next = 0;
+
+		// With room for one entry less, the first entry gets evicted when the last one is put.
+		fullCache = new DenoisePreviewCache((numEntries - 1) * value.getSizeInBytes());
+		for (int i = 0; i < numEntries; i++)
+			fullCache.put(new DenoisePreviewCacheKey(imageHash, algorithms[i]), value);
+		nextEvicted = 0;
+	}
+
+	private PassThroughAlgorithm nextAlgorithm()
+	{
+		next = (next + 1 == numEntries) ? 0 : next + 1;
+		return algorithms[next];
+	}
+
+	@Benchmark
+	public DenoisePreviewCacheKey createKey()
+	{
+		return new DenoisePreviewCacheKey(imageHash, nextAlgorithm());
+	}
+
+	@Benchmark
+	public String hashImage()
+	{
+		return DenoisePreviewCacheKey.hashImage(noisyPreview, normalizer);
+	}
+
+	@Benchmark
+	public DenoisePreviewCacheValue lookupHit()
+	{
+		return cache.get(new DenoisePreviewCacheKey(imageHash, nextAlgorithm()));
+	}
+
+	@Benchmark
+	public DenoisePreviewCacheValue lookupMiss()
+	{
+		return cache.get(new DenoisePreviewCacheKey(imageHash, missingAlgorithm));
+	}
+
+	@Benchmark
+	public DenoisePreviewCacheValue insertWithEviction()
+	{
+		// Putting the entries in round-robin order, the entry that is put is always the one that was
+		// evicted numEntries - 1 puts ago, and it evicts the next one in turn.
+		DenoisePreviewCacheKey key = new DenoisePreviewCacheKey(imageHash, algorithms[nextEvicted]);
+		nextEvicted = (nextEvicted + 1 == numEntries) ? 0 : nextEvicted + 1;
+		return fullCache.put(key, value);
+	}
+}
@@ -0,0 +1,124 @@
+package be.vib.imagej;
+
+import java.util.Random;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+// Deterministic synthetic test images for the benchmarks: a smooth pattern of blobs (a product of sines)
+// with additive uniform noise, roughly resembling a noisy EM image. The same size, bit depth and seed always
+// give the same pixels, so benchmark results and denoising quality can be compared between runs.
+//
+// For measuring denoising quality, newCleanPixels() returns a noise-free image with sharp edges as well:
+// dark and bright discs ("vesicles") on the smooth background.
+public class SyntheticImages
+{
+	private static final double PERIOD = 97.0;  // period of the blob pattern, in pixels
+	private static final double NOISE = 0.15;   // amplitude of the noise, relative to the full pixel range
+
+	// 16 bit pixel value = SHORT_OFFSET + SHORT_SCALE * value, for values in [0,1]
+	private static final int SHORT_OFFSET = 1000;
+	private static final float SHORT_SCALE = 12000;
+
+	// Returns a new width x height 8 or 16 bit/pixel grayscale image.
+	public static ImageProcessor newImage(int width, int height, int bitDepth, long seed)
+	{
+		return toImage(newPixels(width, height, seed), width, height, bitDepth);
+	}
+
+	// Quantizes the pixels in [0,1] to an 8 or 16 bit/pixel grayscale image.
+	// Like most EM detectors, 16 bit images do not use the full 16 bit range.
+	public static ImageProcessor toImage(float[] pixels, int width, int height, int bitDepth)
+	{
+		if (bitDepth == 8)
+		{
+			byte[] bytes = new byte[width * height];
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = (byte)Math.round(255 * clamp(pixels[i]));
+			return new ByteProcessor(width, height, bytes);
+		}
+		else if (bitDepth == 16)
+		{
+			short[] shorts = new short[width * height];
+			for (int i = 0; i < shorts.length; i++)
+				shorts[i] = (short)(SHORT_OFFSET + Math.round(SHORT_SCALE * clamp(pixels[i])));
+			return new ShortProcessor(width, height, shorts, null);
+		}
+		else
+		{
+			throw new RuntimeException("Only 8 bit/pixel and 16 bit/pixel grayscale images are supported.");
+		}
+	}
+
+	// Inverse of toImage(): returns the pixels of the image, mapped back to [0,1].
+	public static float[] toPixels(ImageProcessor image)
+	{
+		float[] pixels = ImageUtils.newFloatArrayFromImage(image);
+		final boolean is8Bit = (image.getBitDepth() == 8);
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = is8Bit ? pixels[i] / 255 : (pixels[i] - SHORT_OFFSET) / SHORT_SCALE;
+		return pixels;
+	}
+
+	private static float clamp(float value)
+	{
+		return Math.min(Math.max(value, 0.0f), 1.0f);
+	}
+
+	// Returns the pixels of a noise-free width x height image, in [0.1,0.9].
+	public static float[] newCleanPixels(int width, int height, long seed)
+	{
+		float[] pixels = new float[width * height];
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				pixels[y * width + x] = (float)(0.5 + 0.15 * Math.sin(2 * Math.PI * x / PERIOD) * Math.sin(2 * Math.PI * y / (0.7 * PERIOD)));
+
+		Random random = new Random(seed);
+		final int numDiscs = width * height / 4000;
+		for (int i = 0; i < numDiscs; i++)
+		{
+			final int cx = random.nextInt(width);
+			final int cy = random.nextInt(height);
+			final int radius = 3 + random.nextInt(18);
+			final float value = random.nextBoolean() ? 0.15f : 0.85f;
+			for (int y = Math.max(0, cy - radius); y <= Math.min(height - 1, cy + radius); y++)
+				for (int x = Math.max(0, cx - radius); x <= Math.min(width - 1, cx + radius); x++)
+					if ((x - cx) * (x - cx) + (y - cy) * (y - cy) <= radius * radius)
+						pixels[y * width + x] = value;
+		}
+
+		return pixels;
+	}
+
+	// Returns the pixels of the width x height pattern with noise, in [0,1].
+	public static float[] newPixels(int width, int height, long seed)
+	{
+		// The pattern is separable, so precompute it per row and per column.
+		float[] columnPattern = new float[width];
+		for (int x = 0; x < width; x++)
+			columnPattern[x] = (float)Math.sin(2 * Math.PI * x / PERIOD);
+
+		float[] rowPattern = new float[height];
+		for (int y = 0; y < height; y++)
+			rowPattern[y] = (float)Math.sin(2 * Math.PI * y / (0.7 * PERIOD));
+
+		float[] pixels = new float[width * height];
+		long state = seed * 0x9E3779B97F4A7C15L + 1;
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				// xorshift64: much cheaper than java.util.Random for the largest images
+				state ^= state << 13;
+				state ^= state >>> 7;
+				state ^= state << 17;
+				final float noise = (float)(NOISE * (((state >>> 40) / (double)(1 << 24)) - 0.5) * 2);
+
+				final float value = 0.5f + 0.3f * columnPattern[x] * rowPattern[y] + noise;
+				pixels[y * width + x] = clamp(value);
+			}
+		}
+		return pixels;
+	}
+}
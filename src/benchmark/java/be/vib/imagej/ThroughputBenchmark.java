@@ -0,0 +1,431 @@
+package be.vib.imagej;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+
+// Command-line end-to-end throughput benchmark. It denoises synthetic 8 and 16 bit EM-like stacks
+// (see SyntheticImages) with each denoising algorithm via the DenoiseEngine, exactly as the plugin does,
+// and reports for each algorithm and bit depth:
+// - the throughput in megapixels per second (median over the repeats),
+// - percentiles of the time needed to denoise a single tile,
+// - the peak Java heap use.
+//
+// The results can be written to a JSON file, and compared against an earlier result file (the baseline).
+// If the throughput of some algorithm dropped by more than the threshold, the benchmark exits with
+// status 1, so it can be used to catch performance regressions, for example from a build script.
+// The results also help estimating the hardware needed for the expected volume of new acquisitions.
+//
+// Example (run "ant throughput" for the classpath):
+//   java be.vib.imagej.ThroughputBenchmark --backend Java --workers 8 --size 4096 --slices 4
+//        --output results.json --baseline baseline.json --threshold 0.1
+public class ThroughputBenchmark
+{
+	private static final int EXIT_REGRESSION = 1;
+	private static final int EXIT_USAGE = 2;
+
+	private String backendName = null;  // null for the automatic backend choice
+	private int numWorkers = Runtime.getRuntime().availableProcessors();
+	private int tileSize = 0;  // 0 for the tile size preferred by each denoiser
+	private DenoiseEngine.Mode mode = null;  // null to choose it like the plugin does
+	private int imageSize = 2048;
+	private int numSlices = 4;
+	private int[] bitDepths = { 8, 16 };
+	private List<Algorithm.Name> algorithms = new ArrayList<Algorithm.Name>(Arrays.asList(Algorithm.Name.values()));
+	private int numWarmups = 1;
+	private int numRepeats = 3;
+	private String outputFile = null;
+	private String baselineFile = null;
+	private double threshold = 0.10;  // maximum allowed relative drop in throughput compared to the baseline
+
+	// The measurements for one algorithm on one stack
+	private static class Result
+	{
+		Algorithm.Name algorithm;
+		int bitDepth;
+		String backend;
+		DenoiseEngine.Mode mode;
+		double megapixelsPerSecond;
+		double[] tileLatencyPercentiles;  // in ms, for LATENCY_PERCENTILES
+		double maxTileLatency;  // in ms
+		int numTiles;
+		double peakHeapMB;
+	}
+
+	private static final int[] LATENCY_PERCENTILES = { 50, 90, 99 };
+
+	public static void main(String[] args)
+	{
+		ThroughputBenchmark benchmark = new ThroughputBenchmark();
+		try
+		{
+			benchmark.parseArguments(args);
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(EXIT_USAGE);
+		}
+
+		boolean regression = benchmark.run();
+		System.exit(regression ? EXIT_REGRESSION : 0);
+	}
+
+	private static void printUsage()
+	{
+		System.err.println("Usage: ThroughputBenchmark [options]");
+		System.err.println("  --backend NAME          denoising backend, e.g. Java or Quasar (default: automatic choice)");
+		System.err.println("  --workers N             number of workers in PARALLEL mode (default: number of processors)");
+		System.err.println("  --tile N                tile size in pixels (default: the tile size preferred by each algorithm)");
+		System.err.println("  --mode MODE             SEQUENTIAL, PIPELINED or PARALLEL (default: as in the plugin)");
+		System.err.println("  --size N                width and height of the synthetic images (default: 2048)");
+		System.err.println("  --slices N              number of slices in the synthetic stacks (default: 4)");
+		System.err.println("  --bitdepths LIST        comma separated bit depths, 8 and/or 16 (default: 8,16)");
+		System.err.println("  --algorithms LIST       comma separated algorithm names, e.g. GAUSSIAN,BLSGSM (default: all)");
+		System.err.println("  --warmups N             untimed runs per algorithm before the timed ones (default: 1)");
+		System.err.println("  --repeats N             timed runs per algorithm (default: 3)");
+		System.err.println("  --output FILE           write the results as JSON to FILE");
+		System.err.println("  --baseline FILE         compare the throughput against the results in FILE");
+		System.err.println("  --threshold FRACTION    maximum allowed drop in throughput versus the baseline (default: 0.1)");
+	}
+
+	private void parseArguments(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			final String option = args[i];
+			if (i + 1 >= args.length)
+				throw new RuntimeException("Missing value for option " + option);
+			final String value = args[++i];
+
+			switch (option)
+			{
+				case "--backend":
+					backendName = value.equalsIgnoreCase("auto") ? null : value;
+					break;
+				case "--workers":
+					numWorkers = parsePositiveInt(option, value);
+					break;
+				case "--tile":
+					tileSize = parsePositiveInt(option, value);
+					break;
+				case "--mode":
+					mode = DenoiseEngine.Mode.valueOf(value.toUpperCase(Locale.ROOT));
+					break;
+				case "--size":
+					imageSize = parsePositiveInt(option, value);
+					break;
+				case "--slices":
+					numSlices = parsePositiveInt(option, value);
+					break;
+				case "--bitdepths":
+					String[] depths = value.split(",");
+					bitDepths = new int[depths.length];
+					for (int d = 0; d < depths.length; d++)
+					{
+						bitDepths[d] = parsePositiveInt(option, depths[d].trim());
+						if (bitDepths[d] != 8 && bitDepths[d] != 16)
+							throw new RuntimeException("Only 8 and 16 bit images are supported.");
+					}
+					break;
+				case "--algorithms":
+					algorithms.clear();
+					for (String name : value.split(","))
+						algorithms.add(Algorithm.Name.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+					break;
+				case "--warmups":
+					numWarmups = Integer.parseInt(value);
+					break;
+				case "--repeats":
+					numRepeats = parsePositiveInt(option, value);
+					break;
+				case "--output":
+					outputFile = value;
+					break;
+				case "--baseline":
+					baselineFile = value;
+					break;
+				case "--threshold":
+					threshold = Double.parseDouble(value);
+					break;
+				default:
+					throw new RuntimeException("Unknown option " + option);
+			}
+		}
+	}
+
+	private static int parsePositiveInt(String option, String value)
+	{
+		final int n = Integer.parseInt(value);
+		if (n <= 0)
+			throw new RuntimeException("The value for option " + option + " must be positive.");
+		return n;
+	}
+
+	// Runs the benchmark, and returns true if a regression with respect to the baseline was found.
+	private boolean run()
+	{
+		if (backendName != null)
+			BenchmarkAlgorithm.selectBackend(backendName);
+
+		List<Result> results = new ArrayList<Result>();
+
+		for (int bitDepth : bitDepths)
+		{
+			ImagePlus imagePlus = newStack(bitDepth);
+			ImageNormalizer normalizer = new ImageNormalizer(imagePlus);
+			final float noiseEstimate = new NoiseEstimator(imagePlus.getStack().getProcessor(1), normalizer).call();
+
+			for (Algorithm.Name name : algorithms)
+			{
+				if (backendName != null && !DenoiseBackends.getBackend(backendName).supports(name))
+				{
+					System.out.println(name + " (" + bitDepth + " bit): skipped, not supported by backend " + backendName);
+					continue;
+				}
+
+				Result result = measure(name, imagePlus, normalizer, noiseEstimate);
+				results.add(result);
+				printResult(result);
+			}
+		}
+
+		if (outputFile != null)
+			writeResults(results, outputFile);
+
+		if (baselineFile != null)
+			return compareWithBaseline(results, baselineFile);
+
+		return false;
+	}
+
+	// Returns a synthetic EM-like stack. The seeds only depend on the slice number, so the stacks are
+	// the same from run to run.
+	private ImagePlus newStack(int bitDepth)
+	{
+		ImageStack stack = new ImageStack(imageSize, imageSize);
+		for (int slice = 1; slice <= numSlices; slice++)
+			stack.addSlice("", SyntheticImages.newImage(imageSize, imageSize, bitDepth, slice));
+		return new ImagePlus("benchmark " + bitDepth + " bit", stack);
+	}
+
+	private Result measure(Algorithm.Name name, ImagePlus imagePlus, ImageNormalizer normalizer, float noiseEstimate)
+	{
+		BenchmarkAlgorithm algorithm = new BenchmarkAlgorithm(name, DenoiseParams.newParams(name), tileSize);
+		algorithm.setDefaultParameters(noiseEstimate);
+
+		DenoiseEngine engine = algorithm.newEngine(mode, numWorkers);
+		DenoiseBackend backend = DenoiseBackends.getBackend(name);
+
+		ImageRange range = ImageRange.makeAllSlicesRange(imagePlus);
+
+		for (int i = 0; i < numWarmups; i++)
+			engine.denoise(imagePlus, normalizer, range, "warmup");
+		algorithm.takeTileLatencies();
+
+		System.gc();
+		resetPeakHeapUsage();
+
+		double[] seconds = new double[numRepeats];
+		for (int i = 0; i < numRepeats; i++)
+		{
+			final long start = System.nanoTime();
+			engine.denoise(imagePlus, normalizer, range, "benchmark");
+			seconds[i] = (System.nanoTime() - start) * 1e-9;
+		}
+
+		final double peakHeap = getPeakHeapUsage();
+
+		long[] latencies = algorithm.takeTileLatencies();
+		Arrays.sort(latencies);
+		Arrays.sort(seconds);
+
+		Result result = new Result();
+		result.algorithm = name;
+		result.bitDepth = imagePlus.getBitDepth();
+		result.backend = backend.getName();
+		result.mode = engine.getMode();
+		result.megapixelsPerSecond = (double)imageSize * imageSize * numSlices / seconds[numRepeats / 2] * 1e-6;
+		result.tileLatencyPercentiles = new double[LATENCY_PERCENTILES.length];
+		for (int p = 0; p < LATENCY_PERCENTILES.length; p++)
+			result.tileLatencyPercentiles[p] = percentile(latencies, LATENCY_PERCENTILES[p]) * 1e-6;
+		result.maxTileLatency = (latencies.length > 0) ? latencies[latencies.length - 1] * 1e-6 : Double.NaN;
+		result.numTiles = latencies.length;
+		result.peakHeapMB = peakHeap / (1024 * 1024);
+		return result;
+	}
+
+	// Nearest-rank percentile of the sorted values
+	private static double percentile(long[] sortedValues, int percentile)
+	{
+		if (sortedValues.length == 0)
+			return Double.NaN;
+		final int rank = (int)Math.ceil(percentile / 100.0 * sortedValues.length);
+		return sortedValues[Math.max(rank, 1) - 1];
+	}
+
+	private static void resetPeakHeapUsage()
+	{
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+		}
+	}
+
+	// Returns the sum of the peak use of the heap memory pools, in bytes.
+	// (The pools peak at different times, so this somewhat overestimates the actual peak.)
+	private static double getPeakHeapUsage()
+	{
+		double peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+
+	private static void printResult(Result r)
+	{
+		StringBuilder latencies = new StringBuilder();
+		for (int p = 0; p < LATENCY_PERCENTILES.length; p++)
+			latencies.append(String.format(Locale.ROOT, " p%d %.1f", LATENCY_PERCENTILES[p], r.tileLatencyPercentiles[p]));
+
+		System.out.println(String.format(Locale.ROOT, "%s (%d bit, %s, %s): %.2f MPix/s, tile latency [ms]%s max %.1f (%d tiles), peak heap %.0f MB",
+		                                 r.algorithm, r.bitDepth, r.backend, r.mode, r.megapixelsPerSecond, latencies, r.maxTileLatency, r.numTiles, r.peakHeapMB));
+	}
+
+	private void writeResults(List<Result> results, String filename)
+	{
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"config\": {\n");
+		json.append("    \"backend\": ").append(Json.quote(backendName != null ? backendName : "auto")).append(",\n");
+		json.append("    \"workers\": ").append(numWorkers).append(",\n");
+		json.append("    \"tileSize\": ").append(tileSize).append(",\n");
+		json.append("    \"imageSize\": ").append(imageSize).append(",\n");
+		json.append("    \"slices\": ").append(numSlices).append(",\n");
+		json.append("    \"repeats\": ").append(numRepeats).append(",\n");
+		json.append("    \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+		json.append("    \"maxHeapMB\": ").append(Runtime.getRuntime().maxMemory() / (1024 * 1024)).append(",\n");
+		json.append("    \"javaVersion\": ").append(Json.quote(System.getProperty("java.version"))).append("\n");
+		json.append("  },\n");
+		json.append("  \"results\": [");
+		for (int i = 0; i < results.size(); i++)
+		{
+			Result r = results.get(i);
+			json.append(i == 0 ? "\n" : ",\n");
+			json.append("    {\n");
+			json.append("      \"algorithm\": ").append(Json.quote(r.algorithm.toString())).append(",\n");
+			json.append("      \"bitDepth\": ").append(r.bitDepth).append(",\n");
+			json.append("      \"backend\": ").append(Json.quote(r.backend)).append(",\n");
+			json.append("      \"mode\": ").append(Json.quote(r.mode.toString())).append(",\n");
+			json.append("      \"megapixelsPerSecond\": ").append(Json.number(r.megapixelsPerSecond)).append(",\n");
+			json.append("      \"tileLatencyMs\": {");
+			for (int p = 0; p < LATENCY_PERCENTILES.length; p++)
+				json.append("\"p").append(LATENCY_PERCENTILES[p]).append("\": ").append(Json.number(r.tileLatencyPercentiles[p])).append(", ");
+			json.append("\"max\": ").append(Json.number(r.maxTileLatency)).append("},\n");
+			json.append("      \"tiles\": ").append(r.numTiles).append(",\n");
+			json.append("      \"peakHeapMB\": ").append(Json.number(r.peakHeapMB)).append("\n");
+			json.append("    }");
+		}
+		json.append("\n  ]\n}\n");
+
+		try
+		{
+			Files.write(Paths.get(filename), json.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Could not write benchmark results to " + filename, e);
+		}
+	}
+
+	// Compares the throughput of each algorithm and bit depth with the baseline results.
+	// Returns true if the throughput of any of them dropped by more than the threshold.
+	@SuppressWarnings("unchecked")
+	private boolean compareWithBaseline(List<Result> results, String filename)
+	{
+		Map<String, Object> baseline;
+		try
+		{
+			baseline = (Map<String, Object>)Json.parse(new String(Files.readAllBytes(Paths.get(filename)), StandardCharsets.UTF_8));
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Could not read baseline benchmark results from " + filename, e);
+		}
+
+		// Comparing runs with a different configuration is allowed (e.g. new hardware), but worth a warning.
+		Map<String, Object> config = (Map<String, Object>)baseline.get("config");
+		if (config != null)
+		{
+			warnIfDifferent(config, "backend", backendName != null ? backendName : "auto");
+			warnIfDifferent(config, "workers", (double)numWorkers);
+			warnIfDifferent(config, "tileSize", (double)tileSize);
+			warnIfDifferent(config, "imageSize", (double)imageSize);
+			warnIfDifferent(config, "slices", (double)numSlices);
+		}
+
+		List<Object> baselineResults = (List<Object>)baseline.get("results");
+		if (baselineResults == null)
+			throw new RuntimeException("No results in baseline file " + filename);
+
+		System.out.println(String.format(Locale.ROOT, "Comparison with baseline %s (threshold %.1f%%):", filename, 100 * threshold));
+
+		boolean regression = false;
+		for (Result r : results)
+		{
+			Map<String, Object> base = null;
+			for (Object o : baselineResults)
+			{
+				Map<String, Object> candidate = (Map<String, Object>)o;
+				if (r.algorithm.toString().equals(candidate.get("algorithm")) && ((Double)candidate.get("bitDepth")).intValue() == r.bitDepth)
+					base = candidate;
+			}
+
+			if (base == null || base.get("megapixelsPerSecond") == null)
+			{
+				System.out.println(String.format(Locale.ROOT, "  %s (%d bit): not in baseline", r.algorithm, r.bitDepth));
+				continue;
+			}
+
+			final double baseThroughput = (Double)base.get("megapixelsPerSecond");
+			final double change = r.megapixelsPerSecond / baseThroughput - 1;
+			final boolean slower = (change < -threshold);
+			regression |= slower;
+
+			System.out.println(String.format(Locale.ROOT, "  %s (%d bit): %.2f MPix/s vs %.2f MPix/s (%+.1f%%)%s",
+			                                 r.algorithm, r.bitDepth, r.megapixelsPerSecond, baseThroughput, 100 * change, slower ? "  REGRESSION" : ""));
+		}
+
+		return regression;
+	}
+
+	private static void warnIfDifferent(Map<String, Object> config, String key, Object value)
+	{
+		Object baselineValue = config.get(key);
+		if (baselineValue != null && !baselineValue.equals(value))
+			System.out.println("Warning: baseline " + key + " was " + format(baselineValue) + ", now " + format(value));
+	}
+
+	private static String format(Object value)
+	{
+		// JSON numbers are parsed as doubles, but all numbers in the configuration are integers.
+		return (value instanceof Double) ? Long.toString(((Double)value).longValue()) : value.toString();
+	}
+}
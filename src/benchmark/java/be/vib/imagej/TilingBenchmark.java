@@ -0,0 +1,71 @@
+package be.vib.imagej;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ij.process.ImageProcessor;
+
+// Cost of cutting a slice into tiles with margins (ImageTiler/ImageTile), and of removing the margins
+// again and stitching the tiles into a result slice, as done by the DenoiseEngine for every slice.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class TilingBenchmark
+{
+	@Param({"512", "2048", "8192", "16384"})
+	public int imageSize;
+
+	@Param({"8", "16"})
+	public int bitDepth;
+
+	@Param({"256", "1024", "2048"})
+	public int tileSize;
+
+	@Param({"16"})
+	public int margin;
+
+	private ImageProcessor image;
+	private ImageProcessor result;
+
+	@Setup
+	public void setup()
+	{
+		image = SyntheticImages.newImage(imageSize, imageSize, bitDepth, 1);
+		result = image.createProcessor(imageSize, imageSize);
+	}
+
+	@Benchmark
+	public void cropTiles(Blackhole blackhole)
+	{
+		ImageTiler tiler = new ImageTiler(image, tileSize, tileSize, margin);
+		for (ImageTile tile : tiler)
+			blackhole.consume(tile.getImageWithMargins());
+	}
+
+	@Benchmark
+	public ImageProcessor cropAndStitchTiles()
+	{
+		ImageTiler tiler = new ImageTiler(image, tileSize, tileSize, margin);
+		for (ImageTile tile : tiler)
+		{
+			ImageProcessor tileWithoutMargins = tile.removeMargins(tile.getImageWithMargins());
+			result.insert(tileWithoutMargins, tile.getXPositionWithoutMargins(), tile.getYPositionWithoutMargins());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,107 @@
+package be.vib.imagej;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Command-line check of the early stop of TotalVariationFilter with TotalVariationParams.defaultConvergenceTolerance.
+// On noisy 256 x 256 checkerboard images (dark and bright, for a range of noise levels and lambdas) it checks that
+// with iterationsMax iterations
+// - the iterations stop early, before iterationsMax,
+// - they stop after the same number of iterations for a dark and a bright version of the same image,
+// - the result is close to the converged result: on average within MAX_ERROR of it.
+// It exits with status 1 if any check fails.
+//
+// Example (run "ant checks" for the classpath):
+//   java be.vib.imagej.TotalVariationConvergenceCheck
+public class TotalVariationConvergenceCheck
+{
+	private static final int EXIT_FAILURE = 1;
+
+	private static final int SIZE = 256;
+	private static final int SQUARE_SIZE = 32;
+	private static final float CONTRAST = 0.1f;  // the squares are base +/- CONTRAST
+	private static final int CONVERGED_ITERATIONS = 2000;
+	private static final double MAX_ERROR = 0.02;  // 2% of the intensity range
+
+	private static final float[] BASES = { 0.2f, 0.8f };
+	private static final float[] NOISE_SIGMAS = { 0.01f, 0.05f, 0.1f, 0.2f };
+	private static final float[] LAMBDAS = { 0.05f, 0.5f, 1.0f };
+
+	public static void main(String[] args)
+	{
+		final float tolerance = TotalVariationParams.defaultConvergenceTolerance;
+
+		int numChecks = 0;
+		List<String> failures = new ArrayList<String>();
+
+		for (float noiseSigma : NOISE_SIGMAS)
+		{
+			for (float lambda : LAMBDAS)
+			{
+				int[] iterations = new int[BASES.length];
+				for (int b = 0; b < BASES.length; b++)
+				{
+					final String label = String.format(Locale.ROOT, "base %.1f, noise %.2f, lambda %.2f", BASES[b], noiseSigma, lambda);
+					final float[] noisy = newNoisyCheckerboard(BASES[b], noiseSigma);
+
+					TotalVariationFilter filter = new TotalVariationFilter(lambda, TotalVariationParams.iterationsMax, TotalVariationParams.alpha, tolerance);
+					final float[] stopped = filter.filter(noisy, SIZE, SIZE);
+					iterations[b] = filter.getIterationsDone();
+
+					final float[] converged = new TotalVariationFilter(lambda, CONVERGED_ITERATIONS, TotalVariationParams.alpha).filter(noisy, SIZE, SIZE);
+					final double error = meanAbsoluteDifference(stopped, converged);
+
+					System.out.println(String.format(Locale.ROOT, "%s: stopped after %d iterations, error %.4f", label, iterations[b], error));
+
+					numChecks += 2;
+					if (iterations[b] >= TotalVariationParams.iterationsMax)
+						failures.add(label + ": did not stop before " + TotalVariationParams.iterationsMax + " iterations");
+					if (!(error <= MAX_ERROR))
+						failures.add(String.format(Locale.ROOT, "%s: mean difference %.4f with the converged result exceeds %.4f", label, error, MAX_ERROR));
+				}
+
+				numChecks++;
+				if (iterations[0] != iterations[1])
+					failures.add(String.format(Locale.ROOT, "noise %.2f, lambda %.2f: stopped after %d iterations for base %.1f, but after %d for base %.1f",
+					                           noiseSigma, lambda, iterations[0], BASES[0], iterations[1], BASES[1]));
+			}
+		}
+
+		System.out.println();
+		if (failures.isEmpty())
+		{
+			System.out.println("All " + numChecks + " checks passed.");
+		}
+		else
+		{
+			System.out.println(failures.size() + " of " + numChecks + " checks failed:");
+			for (String failure : failures)
+				System.out.println("  " + failure);
+			System.exit(EXIT_FAILURE);
+		}
+	}
+
+	// A checkerboard of base +/- CONTRAST with Gaussian noise, for pixel values in [0,1]. The noise is the same for each base.
+	private static float[] newNoisyCheckerboard(float base, float noiseSigma)
+	{
+		Random random = new Random(1);
+		float[] pixels = new float[SIZE * SIZE];
+		for (int y = 0; y < SIZE; y++)
+			for (int x = 0; x < SIZE; x++)
+			{
+				final boolean light = ((x / SQUARE_SIZE + y / SQUARE_SIZE) % 2 == 0);
+				pixels[y * SIZE + x] = base + (light ? CONTRAST : -CONTRAST) + noiseSigma * (float)random.nextGaussian();
+			}
+		return pixels;
+	}
+
+	private static double meanAbsoluteDifference(float[] a, float[] b)
+	{
+		double sum = 0;
+		for (int i = 0; i < a.length; i++)
+			sum += Math.abs(a[i] - b[i]);
+		return sum / a.length;
+	}
+}
@@ -1,7 +1,8 @@
 package be.vib.imagej;
 
 // The Algorithm class groups three different facets of a denoising algorithm implementation:
-// - the denoiser itself, which is a wrapper around the Quasar implementation of the denoising algorithm
+// - the denoiser itself, which is created by the DenoiseBackend chosen for the algorithm (e.g. a wrapper around
+//   the Quasar implementation of the denoising algorithm, or a pure Java implementation)
 // - the parameters that influence the denoising algorithm
 // - the user interface that offers the user controls for specifying the parameters
 
@@ -44,7 +45,11 @@ public abstract class Algorithm
 
 	// Returns an image denoiser. Since the denoiser will be used as a task that will be executed asynchronously,
 	// a snapshot (deep copy) is taken of the the denoising parameters as they are at this point in time.
-    abstract public Denoiser getDenoiserCopy();
+	// The denoiser is provided by the fastest available backend that supports this algorithm (see DenoiseBackends).
+    public Denoiser getDenoiserCopy()
+    {
+    	return DenoiseBackends.createDenoiser(name, getParamsCopy());
+    }
     
     abstract public DenoiseParamsPanelBase getPanel();
 
@@ -30,12 +30,6 @@ public class AnisotropicDiffusionAlgorithm extends Algorithm
 	    return new AnisotropicDiffusionParams(params);
 	}
 	
-	@Override
-	public Denoiser getDenoiserCopy()
-	{
-		return new AnisotropicDiffusionDenoiser(new AnisotropicDiffusionParams(params));
-	}
-
 	@Override
     public DenoiseParamsPanelBase getPanel()
     {
@@ -8,31 +8,31 @@ public class AnisotropicDiffusionDenoiser extends Denoiser
 {
 	public AnisotropicDiffusionDenoiser(AnisotropicDiffusionParams params)
 	{
-		super(params);
+		super(params, QuasarBackend.getInstance());
 	}
 
 	@Override
 	public ImageProcessor call()
 	{
-		QFunction diffusion = new QFunction("denoise_anisotropic_diffusion(mat,int,scalar,scalar,string)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction diffusion = registry.function("denoise_anisotropic_diffusion(mat,int,scalar,scalar,string)");
 		
 		final boolean byteRange = false;  // normalize pixel values to/from [0,1] before/after denoising
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-		
-		AnisotropicDiffusionParams params = (AnisotropicDiffusionParams)this.params;
-		
-		QValue denoisedImageCube = diffusion.apply(noisyImageCube,
-				                                   new QValue(params.numIterations),
-				                                   new QValue(params.stepSize),
-				                                   new QValue(params.diffusionFactor),
-				                                   new QValue(params.diffusionFunction));
-		
-		noisyImageCube.dispose();
-
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-
-		denoisedImageCube.dispose();
 
-		return denoisedImage;
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
+			
+			AnisotropicDiffusionParams params = (AnisotropicDiffusionParams)this.params;
+			
+			QValue denoisedImageCube = arena.apply(diffusion,
+			                                       noisyImageCube,
+			                                       arena.value(params.numIterations),
+			                                       arena.value(params.stepSize),
+			                                       arena.value(params.diffusionFactor),
+			                                       arena.value(params.diffusionFunction));
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 }
\ No newline at end of file
@@ -36,6 +36,7 @@ class AnisotropicDiffusionParamsPanel extends DenoiseParamsPanelBase
 		diffusionFactorPair = new SliderFieldPair(0, 100, floatFormat, params.diffusionFactorMin, params.diffusionFactorMax);
 		diffusionFactorPair.setValue(params.diffusionFactor);
 		diffusionFactorPair.addPropertyChangeListener(e -> { params.diffusionFactor = diffusionFactorPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(diffusionFactorPair, value -> { AnisotropicDiffusionParams p = new AnisotropicDiffusionParams(params); p.diffusionFactor = value; return p; });
 		
 		JSlider diffusionFactorSlider = diffusionFactorPair.getSlider();
 		
@@ -50,6 +51,7 @@ class AnisotropicDiffusionParamsPanel extends DenoiseParamsPanelBase
 		stepSizePair = new SliderFieldPair(0, 100, floatFormat, AnisotropicDiffusionParams.stepSizeMin, AnisotropicDiffusionParams.stepSizeMax);
 		stepSizePair.setValue(params.stepSize);
 		stepSizePair.addPropertyChangeListener(e -> { params.stepSize = stepSizePair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(stepSizePair, value -> { AnisotropicDiffusionParams p = new AnisotropicDiffusionParams(params); p.stepSize = value; return p; });
 		
 		JSlider stepSizeSlider = stepSizePair.getSlider();
 		
@@ -61,6 +63,7 @@ class AnisotropicDiffusionParamsPanel extends DenoiseParamsPanelBase
 		iterationsPair = new SliderSpinnerPair(AnisotropicDiffusionParams.iterationsMin, AnisotropicDiffusionParams.iterationsMax);
 		iterationsPair.setValue(params.numIterations);
 		iterationsPair.addPropertyChangeListener(e -> { params.numIterations = iterationsPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(iterationsPair, value -> { AnisotropicDiffusionParams p = new AnisotropicDiffusionParams(params); p.numIterations = value; return p; });
 		
 		JSlider iterationsSlider = iterationsPair.getSlider();
 		
@@ -30,12 +30,6 @@ public class BLSGSMAlgorithm extends Algorithm
 	    return new BLSGSMParams(params);
 	}
 	
-	@Override
-	public Denoiser getDenoiserCopy()
-	{
-		return new BLSGSMDenoiser(new BLSGSMParams(params));
-	}
-
 	@Override
     public DenoiseParamsPanelBase getPanel()
     {
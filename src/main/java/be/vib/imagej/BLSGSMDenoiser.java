@@ -8,29 +8,29 @@ public class BLSGSMDenoiser extends Denoiser
 {
 	public BLSGSMDenoiser(BLSGSMParams params)
 	{
-		super(params);
+		super(params, QuasarBackend.getInstance());
 	}
 	
 	@Override
 	public ImageProcessor call()
 	{		
-		QFunction blsgsm = new QFunction("denoise_blsgsm(mat,int,scalar)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction blsgsm = registry.function("denoise_blsgsm(mat,int,scalar)");
 
 		final boolean byteRange = false;  // normalize pixel values to/from [0,1] before/after denoising
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-				
-		BLSGSMParams params = (BLSGSMParams)this.params;
-		
-		QValue denoisedImageCube = blsgsm.apply(noisyImageCube,
-							                    new QValue(params.scales),
-							                    new QValue(params.sigma));
-		
-		noisyImageCube.dispose();
 
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-
-		denoisedImageCube.dispose();
-
-		return denoisedImage;
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
+					
+			BLSGSMParams params = (BLSGSMParams)this.params;
+			
+			QValue denoisedImageCube = arena.apply(blsgsm,
+			                                       noisyImageCube,
+			                                       arena.value(params.scales),
+			                                       arena.value(params.sigma));
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 }
@@ -0,0 +1,361 @@
+package be.vib.imagej;
+
+import java.util.Random;
+
+// Pure-Java BLS-GSM denoising (Bayesian least squares estimation with a Gaussian scale mixture prior)
+// in the dual-tree complex wavelet domain, the CPU counterpart of denoise_blsgsm() in blsgsm.q.
+//   J. Portilla, V. Strela, M.J. Wainwright, E.P. Simoncelli, "Image denoising using scale mixtures
+//   of Gaussians in the wavelet domain", IEEE Transactions on Image Processing 12(11), 2003.
+//
+// Every detail band (real and imaginary parts of the complex coefficients, see DualTreeWavelet)
+// is denoised on its own, with 3x3 neighborhoods and the fast (4 component) Jeffreys prior.
+// The noise covariance of each band is estimated from the same transform of a white Gaussian noise image,
+// like in the Quasar code. The noise image is generated with a fixed seed, so results are reproducible.
+//
+// All the per-band work that does not depend on the pixel position (covariance estimation,
+// eigendecompositions, whitening transform, prior grid) is done once per band; the estimator then
+// runs over the band rows in parallel. The bands themselves are processed in parallel too.
+public class BLSGSMFilter
+{
+	private static final int WINDOW = 3;                   // local neighborhood is WINDOW x WINDOW coefficients
+	private static final int D = WINDOW * WINDOW;          // neighborhood size
+	private static final int CENTER = D / 2;               // index of the central coefficient in the neighborhood
+	private static final int K = 4;                        // number of mixture components of the prior
+	private static final double EIGENVALUE_MIN = 1e-2;     // eigenvalue correction threshold (as in blsgsm.q)
+	private static final long NOISE_SEED = 0x5eed;
+
+	// Jeffreys' non-informative prior for the hidden multiplier z, sampled at K points
+	private static final double[] Z = new double[K];
+	private static final double PZ = 1.0 / K;
+	static
+	{
+		double sum = 0;
+		for (int k = 0; k < K; k++)
+		{
+			Z[k] = Math.exp(-21.5 + 18.0 * k / (K - 1));
+			sum += Z[k] * PZ;
+		}
+		for (int k = 0; k < K; k++)
+			Z[k] /= sum;
+	}
+
+	private final DualTreeWavelet wavelet;
+	private final float sigma;
+
+	public BLSGSMFilter(int numScales, float sigma)
+	{
+		this.wavelet = new DualTreeWavelet(numScales);
+		this.sigma = sigma;
+	}
+
+	public float[] filter(float[] image, int width, int height)
+	{
+		final int w = wavelet.extendedSize(width);
+		final int h = wavelet.extendedSize(height);
+
+		final float[] extended = wavelet.extend(image, width, height);
+		final float[] noise = newNoiseImage(w * h);
+		final float[] sum = new float[w * h];
+		final float[][] trees = { new float[w * h], new float[w * h] };
+		final float[][] noiseTrees = { new float[w * h], new float[w * h] };
+
+		for (int[][] pair : DualTreeWavelet.TREE_PAIRS)
+		{
+			ParallelFor.run(4, 1, (start, end) -> {
+				for (int t = start; t < end; t++)
+				{
+					final float[] source = (t < 2) ? extended : noise;
+					final float[] tree = (t < 2) ? trees[t] : noiseTrees[t - 2];
+					System.arraycopy(source, 0, tree, 0, source.length);
+					wavelet.forward(tree, w, h, pair[t % 2][0], pair[t % 2][1]);
+				}
+			});
+
+			wavelet.rotatePair(trees[0], trees[1], w, h);
+			wavelet.rotatePair(noiseTrees[0], noiseTrees[1], w, h);
+
+			// Every (tree, scale, orientation) detail band
+			final int numBands = 2 * wavelet.getNumScales() * 3;
+			ParallelFor.run(numBands, 1, (start, end) -> {
+				for (int b = start; b < end; b++)
+				{
+					final int t = b % 2;
+					final int scale = b / 6;
+					final int orientation = (b / 2) % 3;
+					final int[] r = DualTreeWavelet.bandRectangle(w, h, scale, orientation);
+					denoiseBand(trees[t], noiseTrees[t], w, r[0], r[1], r[2], r[3]);
+				}
+			});
+
+			wavelet.rotatePair(trees[0], trees[1], w, h);
+
+			ParallelFor.run(2, 1, (start, end) -> {
+				for (int t = start; t < end; t++)
+					wavelet.inverse(trees[t], w, h, pair[t][0], pair[t][1]);
+			});
+
+			for (int i = 0; i < sum.length; i++)
+				sum[i] += trees[0][i] + trees[1][i];
+		}
+
+		// Average of the 4 trees
+		return wavelet.crop(sum, width, height, 0.25f);
+	}
+
+	private static float[] newNoiseImage(int n)
+	{
+		Random random = new Random(NOISE_SEED);
+		float[] noise = new float[n];
+		for (int i = 0; i < n; i++)
+			noise[i] = (float)random.nextGaussian();
+		return noise;
+	}
+
+	// Denoises, in place, the bw x bh band with top-left corner (x0, y0) of the given transform with row stride w.
+	// noiseData holds the same band for the transformed white noise image.
+	private void denoiseBand(float[] data, float[] noiseData, final int w, int x0, int y0, final int bw, final int bh)
+	{
+		// Copy of the noisy band: the estimator reads neighborhoods from it, and writes into data
+		final float[] x = extractBand(data, w, x0, y0, bw, bh);
+
+		final double[] noiseCovariance = covariance(extractBand(noiseData, w, x0, y0, bw, bh), bw, bh);
+		final double[] observedCovariance = covariance(x, bw, bh);
+
+		// C_n and C_x = C_y - C_n, the latter made positive definite
+		final double[] cn = new double[D * D];
+		final double[] cx = new double[D * D];
+		for (int i = 0; i < D * D; i++)
+		{
+			cn[i] = noiseCovariance[i] * sigma * sigma;
+			cx[i] = observedCovariance[i] - cn[i];
+		}
+		clampEigenvalues(cx, EIGENVALUE_MIN);
+
+		// Symmetric square root S of C_n, and its inverse
+		final double[] noiseVectors = new double[D * D];
+		final double[] noiseValues = new double[D];
+		SymmetricEigen.decompose(cn, D, noiseVectors, noiseValues);
+		final double floor = 1e-6 * Math.max(max(noiseValues), Double.MIN_NORMAL);
+		final double[] sqrtValues = new double[D];
+		final double[] invSqrtValues = new double[D];
+		for (int i = 0; i < D; i++)
+		{
+			sqrtValues[i] = Math.sqrt(Math.max(noiseValues[i], floor));
+			invSqrtValues[i] = 1.0 / sqrtValues[i];
+		}
+		final double[] s = compose(noiseVectors, sqrtValues);
+		final double[] sInv = compose(noiseVectors, invSqrtValues);
+
+		// S^-1 C_x S^-T = Q Lambda Q^T
+		final double[] q = new double[D * D];
+		final double[] lambda = new double[D];
+		SymmetricEigen.decompose(multiply(multiply(sInv, cx), sInv), D, q, lambda);
+		for (int i = 0; i < D; i++)
+			lambda[i] = Math.max(EIGENVALUE_MIN, lambda[i]);
+
+		// U = Q^T S^-1 decorrelates the noisy neighborhoods; only the central row of U^-1 = S Q is needed
+		final double[] u = multiply(transpose(q), sInv);
+		final double[] sq = multiply(s, q);
+
+		// Per mixture component: log det(z C_x + C_n), 1 / (z Lambda + 1), and the Wiener gains
+		// (folded with the central row of U^-1) of the estimate of the central coefficient.
+		final double[] logDet = new double[K];
+		final double[] inverse = new double[K * D];
+		final double[] gain = new double[K * D];
+		for (int k = 0; k < K; k++)
+		{
+			double[] cz = new double[D * D];
+			for (int i = 0; i < D * D; i++)
+				cz[i] = Z[k] * cx[i] + cn[i];
+			final double ld = 4 * D + logDeterminant(cz);
+			logDet[k] = Double.isNaN(ld) ? 0 : ld;
+
+			for (int i = 0; i < D; i++)
+			{
+				final double r = Z[k] * lambda[i];
+				inverse[k * D + i] = 1.0 / (r + 1);
+				gain[k * D + i] = sq[CENTER * D + i] * r / (r + 1);
+			}
+		}
+
+		ParallelFor.run(bh, (start, end) -> {
+			final double[] neighborhood = new double[D];
+			final double[] v = new double[D];
+			final double[] p = new double[K];
+
+			for (int by = start; by < end; by++)
+			{
+				for (int bx = 0; bx < bw; bx++)
+				{
+					// Neighborhood, with circular boundary conditions
+					for (int n = 0; n < D; n++)
+					{
+						final int ny = Math.floorMod(by + n / WINDOW - WINDOW / 2, bh);
+						final int nx = Math.floorMod(bx + n % WINDOW - WINDOW / 2, bw);
+						neighborhood[n] = x[ny * bw + nx];
+					}
+
+					for (int m = 0; m < D; m++)
+					{
+						double sum = 0;
+						for (int n = 0; n < D; n++)
+							sum += u[m * D + n] * neighborhood[n];
+						v[m] = sum;
+					}
+
+					// Likelihoods p(y|z_k) p(z_k)
+					double py = 0;
+					for (int k = 0; k < K; k++)
+					{
+						double exponent = logDet[k];
+						for (int i = 0; i < D; i++)
+							exponent += v[i] * v[i] * inverse[k * D + i];
+						p[k] = PZ * Math.exp(-0.5 * exponent);
+						py += p[k];
+					}
+
+					// Posterior mean of the central coefficient
+					double estimate = 0;
+					if (py > 0)
+					{
+						for (int k = 0; k < K; k++)
+						{
+							double value = 0;
+							for (int i = 0; i < D; i++)
+								value += gain[k * D + i] * v[i];
+							estimate += value * p[k] / py;
+						}
+					}
+
+					data[(y0 + by) * w + x0 + bx] = (float)estimate;
+				}
+			}
+		});
+	}
+
+	private static float[] extractBand(float[] data, int w, int x0, int y0, int bw, int bh)
+	{
+		float[] band = new float[bw * bh];
+		for (int y = 0; y < bh; y++)
+			System.arraycopy(data, (y0 + y) * w + x0, band, y * bw, bw);
+		return band;
+	}
+
+	// Returns the D x D covariance matrix of the WINDOW x WINDOW neighborhoods of the band,
+	// assuming spatial stationarity (compute_covmtx_spat_stationary() in blsgsm.q):
+	// C[m,n] is the circular autocorrelation of the band at the offset between neighbors m and n.
+	private static double[] covariance(final float[] band, final int bw, final int bh)
+	{
+		// Autocorrelation at offsets dy in [-(WINDOW-1), WINDOW-1], dx in [0, WINDOW-1]
+		final int rows = 2 * WINDOW - 1;
+		final double[] autocorrelation = new double[rows * WINDOW];
+
+		ParallelFor.run(bh, (start, end) -> {
+			double[] partial = new double[rows * WINDOW];
+			for (int y = start; y < end; y++)
+			{
+				for (int dy = -(WINDOW - 1); dy <= WINDOW - 1; dy++)
+				{
+					final int y2 = Math.floorMod(y + dy, bh);
+					for (int dx = 0; dx < WINDOW; dx++)
+					{
+						double sum = 0;
+						for (int x = 0; x < bw; x++)
+							sum += band[y * bw + x] * band[y2 * bw + (x + dx) % bw];
+						partial[(dy + WINDOW - 1) * WINDOW + dx] += sum;
+					}
+				}
+			}
+			synchronized (autocorrelation)
+			{
+				for (int i = 0; i < partial.length; i++)
+					autocorrelation[i] += partial[i];
+			}
+		});
+
+		final double numel = (double)bw * bh;
+		double[] c = new double[D * D];
+		for (int m = 0; m < D; m++)
+		{
+			for (int n = 0; n < D; n++)
+			{
+				int dy = m / WINDOW - n / WINDOW;
+				int dx = m % WINDOW - n % WINDOW;
+				if (dx < 0)
+				{
+					dy = -dy;
+					dx = -dx;
+				}
+				c[m * D + n] = autocorrelation[(dy + WINDOW - 1) * WINDOW + dx] / numel;
+			}
+		}
+		return c;
+	}
+
+	// Replaces the symmetric matrix a by V max(epsilon, Lambda) V^T, where a = V Lambda V^T.
+	private static void clampEigenvalues(double[] a, double epsilon)
+	{
+		final double[] vectors = new double[D * D];
+		final double[] values = new double[D];
+		SymmetricEigen.decompose(a, D, vectors, values);
+		for (int i = 0; i < D; i++)
+			values[i] = Math.max(epsilon, values[i]);
+		System.arraycopy(compose(vectors, values), 0, a, 0, D * D);
+	}
+
+	// Logarithm of the determinant of a symmetric positive definite matrix (NaN if it is not positive definite).
+	private static double logDeterminant(double[] a)
+	{
+		final double[] values = SymmetricEigen.eigenvalues(a, D);
+		double sum = 0;
+		for (int i = 0; i < D; i++)
+			sum += Math.log(values[i]);  // NaN for negative eigenvalues
+		return sum;
+	}
+
+	// Returns V diag(values) V^T
+	private static double[] compose(double[] vectors, double[] values)
+	{
+		double[] a = new double[D * D];
+		for (int i = 0; i < D; i++)
+			for (int j = 0; j < D; j++)
+			{
+				double sum = 0;
+				for (int k = 0; k < D; k++)
+					sum += vectors[i * D + k] * values[k] * vectors[j * D + k];
+				a[i * D + j] = sum;
+			}
+		return a;
+	}
+
+	private static double[] multiply(double[] a, double[] b)
+	{
+		double[] c = new double[D * D];
+		for (int i = 0; i < D; i++)
+			for (int j = 0; j < D; j++)
+			{
+				double sum = 0;
+				for (int k = 0; k < D; k++)
+					sum += a[i * D + k] * b[k * D + j];
+				c[i * D + j] = sum;
+			}
+		return c;
+	}
+
+	private static double[] transpose(double[] a)
+	{
+		double[] t = new double[D * D];
+		for (int i = 0; i < D; i++)
+			for (int j = 0; j < D; j++)
+				t[j * D + i] = a[i * D + j];
+		return t;
+	}
+
+	private static double max(double[] values)
+	{
+		double m = values[0];
+		for (double v : values)
+			m = Math.max(m, v);
+		return m;
+	}
+}
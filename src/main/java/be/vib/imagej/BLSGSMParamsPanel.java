@@ -31,6 +31,7 @@ class BLSGSMParamsPanel extends DenoiseParamsPanelBase
 		sigmaPair = new SliderFieldPair(0, 100, floatFormat, params.sigmaMin, params.sigmaMax);
 		sigmaPair.setValue(params.sigma);
 		sigmaPair.addPropertyChangeListener(e -> { params.sigma = sigmaPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(sigmaPair, value -> { BLSGSMParams p = new BLSGSMParams(params); p.sigma = value; return p; });
 		
 		JSlider sigmaSlider = sigmaPair.getSlider();
 		
@@ -45,6 +46,7 @@ class BLSGSMParamsPanel extends DenoiseParamsPanelBase
 		scalesPair = new SliderSpinnerPair(BLSGSMParams.scalesMin, BLSGSMParams.scalesMax);
 		scalesPair.setValue(params.scales);
 		scalesPair.addPropertyChangeListener(e -> { params.scales = scalesPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(scalesPair, value -> { BLSGSMParams p = new BLSGSMParams(params); p.scales = value; return p; });
 		
 		JSlider scalesSlider = scalesPair.getSlider();
 		
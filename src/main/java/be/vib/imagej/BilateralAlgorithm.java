@@ -30,12 +30,6 @@ public class BilateralAlgorithm extends Algorithm
 	    return new BilateralParams(params);
 	}
 	
-	@Override
-	public Denoiser getDenoiserCopy()
-	{
-		return new BilateralDenoiser(new BilateralParams(params));
-	}
-
 	@Override
     public DenoiseParamsPanelBase getPanel()
     {
@@ -8,30 +8,30 @@ public class BilateralDenoiser extends Denoiser
 {	
 	public BilateralDenoiser(BilateralParams params)
 	{
-		super(params);
+		super(params, QuasarBackend.getInstance());
 	}
 	
 	@Override
 	public ImageProcessor call()
 	{
-		QFunction bilateralFilter = new QFunction("bilateral_filter_denoise(cube,scalar,scalar,int)"); 
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction bilateralFilter = registry.function("bilateral_filter_denoise(cube,scalar,scalar,int)"); 
 				
 		final boolean byteRange = true;  // bilateral filter expects values in [0,255]
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
 
-		BilateralParams params = (BilateralParams)this.params;
-		
-		QValue denoisedImageCube = bilateralFilter.apply(noisyImageCube,
-				                                         new QValue(params.rangeSigma),
-				                                         new QValue(params.spatialSigma),
-				                                         new QValue(255));
-		
-		noisyImageCube.dispose();
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
 
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-
-		denoisedImageCube.dispose();
-
-		return denoisedImage;
+			BilateralParams params = (BilateralParams)this.params;
+			
+			QValue denoisedImageCube = arena.apply(bilateralFilter,
+			                                       noisyImageCube,
+			                                       arena.value(params.rangeSigma),
+			                                       arena.value(params.spatialSigma),
+			                                       arena.value(255));
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 }
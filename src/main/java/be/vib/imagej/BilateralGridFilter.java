@@ -0,0 +1,328 @@
+package be.vib.imagej;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// Pure-Java bilateral filter based on the bilateral grid:
+//   J. Chen, S. Paris, F. Durand, "Real-time edge-aware image processing with the bilateral grid",
+//   ACM Transactions on Graphics 26(3), 2007.
+//
+// The pixels are splatted (with trilinear interpolation) into a downsampled 3D grid with two spatial
+// axes and one intensity axis, the grid is blurred with a small separable kernel, and the result is
+// sliced out of the grid again (trilinear interpolation), followed by the usual normalization.
+// Since the grid is sampled proportionally to the sigmas, the cost per pixel does not grow with the
+// spatial sigma (it even decreases).
+//
+// For small sigmas however the grid has many more cells than the image has pixels (at rangeSigma = 1 it is
+// about 300 cells deep), and processing it would take far longer than a direct evaluation of the filter.
+// The filter therefore estimates the cost of both, and for small sigmas computes the bilateral filter directly,
+// over a window of radius ceil(3 * spatialSigma), with a lookup table for the range weights.
+// Either way the cost per pixel stays bounded.
+//
+// The weights are exp(-d^2 / (2 spatialSigma^2)) for a spatial distance d in pixels, and
+// exp(-r^2 / (2 rangeSigma^2)) for an intensity difference r, with intensities in [0,255]
+// (like the Quasar bilateral_filter_denoise() with T = 255). The sampling rate of the grid is chosen
+// such that the blur, the splatting and the slicing together have exactly these variances.
+// Near the image borders pixels outside the image simply do not contribute (instead of being mirrored).
+//
+// Note: for rangeSigma below 2 * 255 / (pi * sqrt(100)) = 16.2 the Quasar implementation does not compute
+// the same filter. Its trigonometric range kernel is then truncated (to 100 terms), and besides the Gaussian
+// of width rangeSigma it has spurious lobes of almost the same height at intensity differences of about
+// 31.4 * rangeSigma, 62.8 * rangeSigma, ... So Quasar also averages over edges of those heights, while this
+// filter (like the bilateral filter by definition) does not. For larger rangeSigmas both compute the same filter.
+//
+// To keep the memory use bounded, the grid is built and processed in horizontal strips
+// (with a small overlap for the blur); the strips are processed in parallel.
+public class BilateralGridFilter
+{
+	private static final float RANGE_MAX = 255.0f;
+
+	// The grid is blurred with the binomial kernel [1 4 6 4 1]/16, which has a variance of 1 grid cell^2.
+	// Splatting and slicing with linear interpolation each add a variance of 1/6 cell^2.
+	private static final int R = 2; // blur kernel radius
+	private static final float BLUR_VARIANCE = 1.0f + 2.0f / 6.0f;
+
+	// Approximate maximum number of floats in a grid strip (per buffer)
+	private static final int MAX_STRIP_FLOATS = 1 << 22;
+
+	// Minimum number of grid rows per strip. Each strip also processes 1 + 2R overlapping rows,
+	// so this keeps the overlap at most half of the work, even if a strip then exceeds MAX_STRIP_FLOATS.
+	private static final int MIN_ROWS_PER_STRIP = 2 * (1 + 2 * R);
+
+	// Relative cost of the grid per grid cell and per pixel (splatting and slicing), in units of the cost
+	// of one window pixel in the direct filter. Measured on a desktop CPU; only the order of magnitude matters.
+	private static final float GRID_COST_PER_CELL = 4.0f;
+	private static final float GRID_COST_PER_PIXEL = 20.0f;
+
+	// Resolution of the lookup table with the range weights for the direct filter, in entries per intensity level
+	private static final int RANGE_LUT_STEPS = 16;
+
+	private final float rangeSigma;
+	private final float spatialSigma;
+
+	private final float spatialSampling;  // grid cell size, in pixels
+	private final float rangeSampling;    // grid cell size, in intensity levels
+
+	public BilateralGridFilter(float rangeSigma, float spatialSigma)
+	{
+		assert(rangeSigma > 0 && spatialSigma > 0);
+		this.rangeSigma = rangeSigma;
+		this.spatialSigma = spatialSigma;
+		final float scale = (float)Math.sqrt(BLUR_VARIANCE);
+		this.spatialSampling = spatialSigma / scale;
+		this.rangeSampling = rangeSigma / scale;
+	}
+
+	// Returns true if the filter uses the bilateral grid, false if it evaluates the bilateral filter directly.
+	boolean usesGrid()
+	{
+		final float gridCellsPerPixel = gridDepth() / (spatialSampling * spatialSampling);
+		final int windowSize = 2 * windowRadius() + 1;
+		return GRID_COST_PER_CELL * gridCellsPerPixel + GRID_COST_PER_PIXEL < windowSize * windowSize;
+	}
+
+	private int gridDepth()
+	{
+		return (int)(RANGE_MAX / rangeSampling) + 2 + 2 * R;
+	}
+
+	private int windowRadius()
+	{
+		return (int)Math.ceil(3 * spatialSigma);
+	}
+
+	// Filters a width x height image with row-major pixel values in [0,255].
+	public float[] filter(final float[] in, final int width, final int height)
+	{
+		return usesGrid() ? filterGrid(in, width, height) : filterDirect(in, width, height);
+	}
+
+	private float[] filterGrid(final float[] in, final int width, final int height)
+	{
+		final float[] out = new float[in.length];
+
+		final int gridWidth = (int)((width - 1) / spatialSampling) + 2 + 2 * R;
+		final int gridDepth = gridDepth();
+		final int gridHeight = (int)((height - 1) / spatialSampling) + 1;  // number of grid rows that pixels are sliced from
+
+		final int floatsPerGridRow = 2 * gridWidth * gridDepth;
+		final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		final int rowsPerStrip = Math.min(gridHeight, Math.max(MIN_ROWS_PER_STRIP, Math.min((gridHeight + parallelism - 1) / parallelism, MAX_STRIP_FLOATS / floatsPerGridRow - 2 * R - 1)));
+		final int numStrips = (gridHeight + rowsPerStrip - 1) / rowsPerStrip;
+
+		ParallelFor.run(numStrips, 1, (start, end) -> {
+			final int stripSize = (rowsPerStrip + 1 + 2 * R) * floatsPerGridRow;
+			float[] grid = new float[stripSize];
+			float[] blurred = new float[stripSize];
+			for (int strip = start; strip < end; strip++)
+			{
+				final int firstRow = strip * rowsPerStrip;
+				final int lastRow = Math.min(firstRow + rowsPerStrip, gridHeight);  // exclusive
+				filterStrip(in, out, width, height, firstRow, lastRow, gridWidth, gridDepth, grid, blurred);
+			}
+		});
+
+		return out;
+	}
+
+	// Computes the output pixels whose (downsampled) y coordinate lies in grid rows [firstRow, lastRow).
+	// The local grid holds the global grid rows firstRow - R .. lastRow + R (inclusive): slicing also reads
+	// grid row lastRow, and blurring a row needs R rows on either side.
+	private void filterStrip(float[] in, float[] out, int width, int height, int firstRow, int lastRow,
+	                         int gridWidth, int gridDepth, float[] grid, float[] blurred)
+	{
+		final int numLocalRows = lastRow - firstRow + 1 + 2 * R;
+		final int rowOffset = firstRow - R;  // global row of local row 0
+		final int zStride = 2;               // each grid cell holds (weighted value sum, weight sum)
+		final int xStride = 2 * gridDepth;
+		final int yStride = 2 * gridDepth * gridWidth;
+		final int size = numLocalRows * yStride;
+
+		Arrays.fill(grid, 0, size, 0.0f);
+		Arrays.fill(blurred, 0, size, 0.0f);
+
+		// Splat all pixels that contribute to one of the local grid rows.
+		final int yFirst = Math.max(0, (int)Math.floor((rowOffset - 1) * spatialSampling));
+		final int yLast = Math.min(height - 1, (int)Math.ceil((rowOffset + numLocalRows) * spatialSampling));
+		for (int y = yFirst; y <= yLast; y++)
+		{
+			final float fy = y / spatialSampling;
+			final int iy = (int)fy;
+			final float ty = fy - iy;
+
+			for (int x = 0; x < width; x++)
+			{
+				final float v = clampRange(in[y * width + x]);
+
+				final float fx = x / spatialSampling + R;
+				final int ix = (int)fx;
+				final float tx = fx - ix;
+
+				final float fz = v / rangeSampling + R;
+				final int iz = (int)fz;
+				final float tz = fz - iz;
+
+				for (int dy = 0; dy <= 1; dy++)
+				{
+					final int row = iy + dy - rowOffset;
+					if (row < 0 || row >= numLocalRows)
+						continue;
+
+					final float wy = (dy == 0) ? 1 - ty : ty;
+					final int base = row * yStride + ix * xStride + iz * zStride;
+
+					splat(grid, base, v, wy * (1 - tx) * (1 - tz));
+					splat(grid, base + zStride, v, wy * (1 - tx) * tz);
+					splat(grid, base + xStride, v, wy * tx * (1 - tz));
+					splat(grid, base + xStride + zStride, v, wy * tx * tz);
+				}
+			}
+		}
+
+		// Blur along the range axis (grid -> blurred), then along x (blurred -> grid), for all local rows.
+		// Only cells at least R away from the x and z edges can be non-zero, so the kernel never reads outside the grid.
+		for (int row = 0; row < numLocalRows; row++)
+			for (int x = R; x < gridWidth - R; x++)
+				for (int z = R; z < gridDepth - R; z++)
+				{
+					final int i = row * yStride + x * xStride + z * zStride;
+					blur(grid, blurred, i, zStride);
+				}
+
+		for (int row = 0; row < numLocalRows; row++)
+			for (int x = R; x < gridWidth - R; x++)
+				for (int z = R; z < gridDepth - R; z++)
+				{
+					final int i = row * yStride + x * xStride + z * zStride;
+					blur(blurred, grid, i, xStride);
+				}
+
+		// Blur along y (grid -> blurred), only for the rows that get sliced.
+		for (int row = R; row < numLocalRows - R; row++)
+			for (int x = R; x < gridWidth - R; x++)
+				for (int z = R; z < gridDepth - R; z++)
+				{
+					final int i = row * yStride + x * xStride + z * zStride;
+					blur(grid, blurred, i, yStride);
+				}
+
+		// Slice the pixels whose grid row lies in [firstRow, lastRow).
+		final int ySliceFirst = Math.max(0, (int)Math.floor(firstRow * spatialSampling));
+		final int ySliceLast = Math.min(height - 1, (int)Math.ceil(lastRow * spatialSampling));
+		for (int y = ySliceFirst; y <= ySliceLast; y++)
+		{
+			final float fy = y / spatialSampling;
+			final int iy = (int)fy;
+			if (iy < firstRow || iy >= lastRow)
+				continue;
+
+			final float ty = fy - iy;
+			final int row = iy - rowOffset;
+
+			for (int x = 0; x < width; x++)
+			{
+				final float v = clampRange(in[y * width + x]);
+
+				final float fx = x / spatialSampling + R;
+				final int ix = (int)fx;
+				final float tx = fx - ix;
+
+				final float fz = v / rangeSampling + R;
+				final int iz = (int)fz;
+				final float tz = fz - iz;
+
+				final int base = row * yStride + ix * xStride + iz * zStride;
+
+				float valueSum = 0;
+				float weightSum = 0;
+				for (int dy = 0; dy <= 1; dy++)
+					for (int dx = 0; dx <= 1; dx++)
+						for (int dz = 0; dz <= 1; dz++)
+						{
+							final float w = ((dy == 0) ? 1 - ty : ty) * ((dx == 0) ? 1 - tx : tx) * ((dz == 0) ? 1 - tz : tz);
+							final int i = base + dy * yStride + dx * xStride + dz * zStride;
+							valueSum += w * blurred[i];
+							weightSum += w * blurred[i + 1];
+						}
+
+				out[y * width + x] = (weightSum > 0) ? valueSum / weightSum : v;
+			}
+		}
+	}
+
+	// Evaluates the bilateral filter directly: each output pixel is the weighted average of the pixels in the window
+	// of radius windowRadius() around it. Rows are processed in parallel.
+	private float[] filterDirect(final float[] in, final int width, final int height)
+	{
+		final float[] out = new float[in.length];
+
+		final int r = windowRadius();
+		final int size = 2 * r + 1;
+
+		final float[] spatialWeights = new float[size * size];
+		for (int dy = -r; dy <= r; dy++)
+			for (int dx = -r; dx <= r; dx++)
+				spatialWeights[(dy + r) * size + (dx + r)] = (float)Math.exp(-(dx * dx + dy * dy) / (2.0 * spatialSigma * spatialSigma));
+
+		// Range weights for intensity differences 0, 1/RANGE_LUT_STEPS, 2/RANGE_LUT_STEPS, ..., RANGE_MAX
+		final float[] rangeWeights = new float[(int)RANGE_MAX * RANGE_LUT_STEPS + 1];
+		for (int i = 0; i < rangeWeights.length; i++)
+		{
+			final double d = i / (double)RANGE_LUT_STEPS;
+			rangeWeights[i] = (float)Math.exp(-(d * d) / (2.0 * rangeSigma * rangeSigma));
+		}
+
+		ParallelFor.run(height, (start, end) -> {
+			for (int y = start; y < end; y++)
+			{
+				final int y0 = Math.max(0, y - r);
+				final int y1 = Math.min(height - 1, y + r);
+				for (int x = 0; x < width; x++)
+				{
+					final int x0 = Math.max(0, x - r);
+					final int x1 = Math.min(width - 1, x + r);
+					final float v = clampRange(in[y * width + x]);
+
+					float valueSum = 0;
+					float weightSum = 0;
+					for (int yy = y0; yy <= y1; yy++)
+					{
+						final int spatialRow = (yy - y + r) * size + r - x;
+						for (int xx = x0; xx <= x1; xx++)
+						{
+							final float u = clampRange(in[yy * width + xx]);
+							final float w = spatialWeights[spatialRow + xx] * rangeWeights[(int)(Math.abs(u - v) * RANGE_LUT_STEPS + 0.5f)];
+							valueSum += w * u;
+							weightSum += w;
+						}
+					}
+
+					out[y * width + x] = valueSum / weightSum;  // weightSum > 0, the center pixel has weight 1
+				}
+			}
+		});
+
+		return out;
+	}
+
+	private static float clampRange(float v)
+	{
+		return (v < 0) ? 0 : ((v > RANGE_MAX) ? RANGE_MAX : v);
+	}
+
+	private static void splat(float[] grid, int i, float v, float w)
+	{
+		grid[i] += w * v;
+		grid[i + 1] += w;
+	}
+
+	// Blurs the (value, weight) cell at index i with the kernel [1 4 6 4 1]/16 along the axis with the given stride.
+	private static void blur(float[] src, float[] dst, int i, int stride)
+	{
+		for (int c = 0; c < 2; c++)
+		{
+			final int j = i + c;
+			dst[j] = (src[j - 2 * stride] + 4 * src[j - stride] + 6 * src[j] + 4 * src[j + stride] + src[j + 2 * stride]) * (1.0f / 16.0f);
+		}
+	}
+}
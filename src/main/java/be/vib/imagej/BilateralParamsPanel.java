@@ -32,6 +32,7 @@ class BilateralParamsPanel extends DenoiseParamsPanelBase
 		spatialSigmaPair = new SliderFieldPair(0, 100, floatFormat, params.spatialSigmaMin, params.spatialSigmaMax);
 		spatialSigmaPair.setValue(params.spatialSigma);
 		spatialSigmaPair.addPropertyChangeListener(e -> { params.spatialSigma = spatialSigmaPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(spatialSigmaPair, value -> { BilateralParams p = new BilateralParams(params); p.spatialSigma = value; return p; });
 		
 		JSlider spatialSigmaSlider = spatialSigmaPair.getSlider();
 		
@@ -46,6 +47,7 @@ class BilateralParamsPanel extends DenoiseParamsPanelBase
 		rangeSigmaPair = new SliderFieldPair(0, 100, floatFormat, params.rangeSigmaMin, params.rangeSigmaMax);
 		rangeSigmaPair.setValue(params.rangeSigma);
 		rangeSigmaPair.addPropertyChangeListener(e -> { params.rangeSigma = rangeSigmaPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(rangeSigmaPair, value -> { BilateralParams p = new BilateralParams(params); p.rangeSigma = value; return p; });
 		
 		JSlider rangeSigmaSlider = rangeSigmaPair.getSlider();
 		
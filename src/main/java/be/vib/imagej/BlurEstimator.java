@@ -1,16 +1,19 @@
 package be.vib.imagej;
 
+import java.util.Arrays;
 import java.util.concurrent.Callable;
 
-import be.vib.bits.QFunction;
-import be.vib.bits.QUtils;
-import be.vib.bits.QValue;
 import ij.process.ImageProcessor;
 
-// Java wrapper around the Quasar blurMetric() function for 
-// estimating the amount of blur in an image.
+// Estimates the amount of blur in an image, with a pure-Java port of the blurMetric() function
+// in blur_metric.q (which itself is a port of the blurMetric MATLAB implementation):
+//   F. Crete-Roffet, T. Dolmiere, P. Ladret, M. Nicolas, "The Blur Effect: Perception and Estimation
+//   with a New No-Reference Perceptual Blur Metric", SPIE Electronic Imaging, 2007.
+// The metric no longer needs the Quasar thread, so call() can be invoked directly on any thread.
 public class BlurEstimator implements Callable<Float>
 {
+	private static final int BLUR_LENGTH = 9;  // length of the 1D re-blur (box) filters
+	
 	private ImageProcessor image;
 	
 	BlurEstimator(ImageProcessor image)
@@ -19,20 +22,112 @@ public class BlurEstimator implements Callable<Float>
 	}
 
 	@Override
-	public Float call() throws Exception
+	public Float call()
+	{
+		// No need to scale the pixel values to [0, 1]: the metric is a ratio of sums of differences.
+		float[] pixels = ImageUtils.newFloatArrayFromImage(image);
+		return blurMetric(pixels, image.getWidth(), image.getHeight());
+	}
+	
+	// Returns the blur metric (between 0 and 1, higher is blurrier) of the width x height row-major image.
+	//
+	// The image is re-blurred with a horizontal and a vertical box filter of length 9 (with mirrored boundaries),
+	// and the variation of the neighboring pixel differences is compared between the image and its re-blurred versions.
+	// The difference between two neighboring pixels of a box filtered image only depends on the two pixels
+	// that enter and leave the box, so everything is computed in one streaming pass over the image,
+	// without intermediate images.
+	public static float blurMetric(final float[] pixels, final int width, final int height)
 	{
-		QValue imageCube = ImageUtils.newCubeFromImage(image);
+		// Sums over the interior pixels: { S_D_Ver, S_V_Ver, S_D_Hor, S_V_Hor } in the Quasar code
+		final double[] sums = new double[4];
 		
-		float r = ImageUtils.bitRange(image);
+		final int before = BLUR_LENGTH / 2;       // box filter taps before the center pixel
+		final int after = BLUR_LENGTH - before;   // box filter taps after the center pixel, plus one
+		final float scale = 1.0f / BLUR_LENGTH;
 		
-		QUtils.inplaceDivide(imageCube, r);  // scale pixels values from [0, 255] or [0, 65535] down to [0, 1]
+		// Mirrored column indices of the pixels that leave and enter the box when moving from column x to x + 1
+		// (only needed near the left and right image borders)
+		final int[] leaving = new int[width];
+		final int[] entering = new int[width];
+		for (int x = 0; x < width; x++)
+		{
+			leaving[x] = ImageUtils.mirrorIndex(x - before, width);
+			entering[x] = ImageUtils.mirrorIndex(x + after, width);
+		}
 		
-		QFunction estimateBlur = new QFunction("blurMetric(mat)");			
-		QValue blur = estimateBlur.apply(imageCube);
+		// Columns x in [1, width - 1) for which the box does not need mirroring
+		final int interiorStart = Math.max(1, before);
+		final int interiorEnd = Math.max(interiorStart, width - after);
 		
-		imageCube.dispose();
+		ParallelFor.run(Math.max(0, height - 2), (start, end) -> {
+			final float[] rowSums = new float[4];
+			double sumDVer = 0, sumVVer = 0, sumDHor = 0, sumVHor = 0;
+			for (int y = start + 1; y < end + 1; y++)
+			{
+				final int row = y * width;
+				final int nextRow = (y + 1) * width;
+				final int leavingRow = ImageUtils.mirrorIndex(y - before, height) * width;
+				final int enteringRow = ImageUtils.mirrorIndex(y + after, height) * width;
+				
+				// Per-row sums in float (a simple loop the JIT can vectorize), accumulated in double
+				float dVer = 0, vVer = 0, dHor = 0, vHor = 0;
+				for (int x = interiorStart; x < interiorEnd; x++)
+				{
+					final float p = pixels[row + x];
+					
+					// Variation along the rows
+					final float dF = Math.abs(p - pixels[row + x + 1]);
+					final float dB = Math.abs(pixels[row + x + after] - pixels[row + x - before]) * scale;
+					dVer += dF;
+					vVer += Math.max(0.0f, dF - dB);
+					
+					// Variation along the columns
+					final float dFc = Math.abs(p - pixels[nextRow + x]);
+					final float dBc = Math.abs(pixels[enteringRow + x] - pixels[leavingRow + x]) * scale;
+					dHor += dFc;
+					vHor += Math.max(0.0f, dFc - dBc);
+				}
+				
+				Arrays.fill(rowSums, 0.0f);
+				addBorderColumns(pixels, row, nextRow, leavingRow, enteringRow, leaving, entering, 1, Math.min(interiorStart, width - 1), scale, rowSums);
+				addBorderColumns(pixels, row, nextRow, leavingRow, enteringRow, leaving, entering, interiorEnd, width - 1, scale, rowSums);
+				
+				sumDVer += dVer + rowSums[0];
+				sumVVer += vVer + rowSums[1];
+				sumDHor += dHor + rowSums[2];
+				sumVHor += vHor + rowSums[3];
+			}
+			synchronized (sums)
+			{
+				sums[0] += sumDVer;
+				sums[1] += sumVVer;
+				sums[2] += sumDHor;
+				sums[3] += sumVHor;
+			}
+		});
 		
-		return blur.getFloat();		
+		final double blurVer = (sums[0] - sums[1]) / sums[0];
+		final double blurHor = (sums[2] - sums[3]) / sums[2];
+		return (float)Math.max(blurVer, blurHor);
+	}
+	
+	// Same as the interior loop in blurMetric(), for columns x0 .. x1-1 where the horizontal box filter needs mirroring.
+	private static void addBorderColumns(float[] pixels, int row, int nextRow, int leavingRow, int enteringRow,
+	                                     int[] leaving, int[] entering, int x0, int x1, float scale, float[] rowSums)
+	{
+		for (int x = x0; x < x1; x++)
+		{
+			final float p = pixels[row + x];
+			
+			final float dF = Math.abs(p - pixels[row + x + 1]);
+			final float dB = Math.abs(pixels[row + entering[x]] - pixels[row + leaving[x]]) * scale;
+			rowSums[0] += dF;
+			rowSums[1] += Math.max(0.0f, dF - dB);
+			
+			final float dFc = Math.abs(p - pixels[nextRow + x]);
+			final float dBc = Math.abs(pixels[enteringRow + x] - pixels[leavingRow + x]) * scale;
+			rowSums[2] += dFc;
+			rowSums[3] += Math.max(0.0f, dFc - dBc);
+		}
 	}
-
 }
@@ -0,0 +1,34 @@
+package be.vib.imagej;
+
+import java.util.concurrent.CancellationException;
+
+// Cooperative cancellation for the long running loops of the pure-Java denoisers.
+//
+// A denoising task is cancelled by interrupting the thread that runs it (e.g. via Future.cancel(true),
+// as the PreviewScheduler does for superseded previews). The denoisers check for this at cancellation points,
+// for example between non-local means search offsets or between total variation iterations, and then abandon
+// their work by throwing a CancellationException.
+//
+// Since much of the work runs on fork-join pool threads, which are not the thread that was interrupted,
+// the CancellationPoint remembers the calling thread; create it before the parallel loop and check it inside:
+//   CancellationPoint cancellation = new CancellationPoint();
+//   ParallelFor.run(n, (start, end) -> { for (int i = start; i < end; i++) { cancellation.check(); ... } });
+//
+// The Quasar denoisers have no cancellation points: a Quasar function call always runs to completion.
+public class CancellationPoint
+{
+	private final Thread thread;
+
+	public CancellationPoint()
+	{
+		this.thread = Thread.currentThread();
+	}
+
+	// Throws a CancellationException if the thread that created this cancellation point was interrupted.
+	// The interrupted status of that thread is left unchanged.
+	public void check()
+	{
+		if (thread.isInterrupted())
+			throw new CancellationException("Denoising was cancelled");
+	}
+}
@@ -0,0 +1,211 @@
+package be.vib.imagej;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// 2D DCT-II and its inverse (DCT-III), computed with FFTs (J. Makhoul, "A fast cosine transform in one
+// and two dimensions", IEEE Trans. ASSP 28(1), 1980).
+//
+// The DCT-II diagonalizes symmetric convolution kernels with "mirror" boundary handling (pixel -1 is pixel 0,
+// like ImageUtils.mirrorIndex): if y is x convolved with a symmetric kernel h, then
+//   dct(y)[k] = dct(x)[k] * symbol(h)[k],  with symbol(h)[k] = h[0] + 2 sum_j h[j] cos(pi k j / n)  (per dimension)
+// which makes it the transform of choice for solving linear systems with such operators.
+//
+// Plans are cached per image size (use Dct2D.getPlan(width, height)) and can be shared between threads.
+public class Dct2D
+{
+	private static final int MAX_CACHED_PLANS = 64;
+	private static final ConcurrentHashMap<Long, Dct2D> plans = new ConcurrentHashMap<>();
+
+	private final int width;
+	private final int height;
+	private final Dct1D rowDct;
+	private final Dct1D columnDct;
+
+	public static Dct2D getPlan(int width, int height)
+	{
+		if (plans.size() > MAX_CACHED_PLANS)
+			plans.clear();
+
+		return plans.computeIfAbsent(((long)width << 32) | height, key -> new Dct2D(width, height));
+	}
+
+	private Dct2D(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		this.rowDct = new Dct1D(width);
+		this.columnDct = new Dct1D(height);
+	}
+
+	// In-place forward 2D DCT-II (unnormalized) of the width x height row-major data.
+	public void forward(float[] data)
+	{
+		transform(data, false);
+	}
+
+	// In-place inverse of forward().
+	public void inverse(float[] data)
+	{
+		transform(data, true);
+	}
+
+	// Returns the DCT-II symbol of a symmetric 1D kernel (of odd length, centered) for signals of length n.
+	public static double[] symbol(float[] kernel, int n)
+	{
+		final int radius = kernel.length / 2;
+		double[] s = new double[n];
+		for (int k = 0; k < n; k++)
+		{
+			double v = kernel[radius];
+			for (int j = 1; j <= radius; j++)
+				v += 2 * kernel[radius + j] * Math.cos(Math.PI * k * j / n);
+			s[k] = v;
+		}
+		return s;
+	}
+
+	private void transform(final float[] data, final boolean inverse)
+	{
+		assert(data.length == width * height);
+
+		// Rows, two at a time (see Dct1D)
+		ParallelFor.run((height + 1) / 2, (start, end) -> {
+			double[] line1 = new double[width];
+			double[] line2 = new double[width];
+			double[] re = new double[width];
+			double[] im = new double[width];
+			for (int pair = start; pair < end; pair++)
+			{
+				final int y1 = 2 * pair;
+				final int y2 = y1 + 1;
+				final boolean two = (y2 < height);
+				for (int x = 0; x < width; x++)
+				{
+					line1[x] = data[y1 * width + x];
+					line2[x] = two ? data[y2 * width + x] : 0;
+				}
+				rowDct.transform(line1, line2, re, im, inverse);
+				for (int x = 0; x < width; x++)
+				{
+					data[y1 * width + x] = (float)line1[x];
+					if (two)
+						data[y2 * width + x] = (float)line2[x];
+				}
+			}
+		});
+
+		// Columns, two at a time
+		ParallelFor.run((width + 1) / 2, (start, end) -> {
+			double[] line1 = new double[height];
+			double[] line2 = new double[height];
+			double[] re = new double[height];
+			double[] im = new double[height];
+			for (int pair = start; pair < end; pair++)
+			{
+				final int x1 = 2 * pair;
+				final int x2 = x1 + 1;
+				final boolean two = (x2 < width);
+				for (int y = 0; y < height; y++)
+				{
+					line1[y] = data[y * width + x1];
+					line2[y] = two ? data[y * width + x2] : 0;
+				}
+				columnDct.transform(line1, line2, re, im, inverse);
+				for (int y = 0; y < height; y++)
+				{
+					data[y * width + x1] = (float)line1[y];
+					if (two)
+						data[y * width + x2] = (float)line2[y];
+				}
+			}
+		});
+	}
+
+	// 1D DCT-II of length n via a complex FFT of length n. Since the FFT input (forward) or output (inverse)
+	// of each line is real, two lines are transformed with a single complex FFT: one as the real part,
+	// the other as the imaginary part.
+	private static class Dct1D
+	{
+		private final int n;
+		private final Fft fft;
+		private final double[] cos;  // cos(pi k / (2n))
+		private final double[] sin;  // sin(pi k / (2n))
+
+		Dct1D(int n)
+		{
+			this.n = n;
+			this.fft = Fft.getPlan(n);
+			this.cos = new double[n];
+			this.sin = new double[n];
+			for (int k = 0; k < n; k++)
+			{
+				cos[k] = Math.cos(Math.PI * k / (2.0 * n));
+				sin[k] = Math.sin(Math.PI * k / (2.0 * n));
+			}
+		}
+
+		// Transforms the lines x1 and x2 in place; re and im are scratch buffers of length n.
+		void transform(double[] x1, double[] x2, double[] re, double[] im, boolean inverse)
+		{
+			if (!inverse)
+			{
+				// v = (x[0], x[2], x[4], ..., x[5], x[3], x[1]);  X[k] = Re(exp(-i pi k / 2n) V[k])
+				for (int i = 0; 2 * i < n; i++)
+				{
+					re[i] = x1[2 * i];
+					im[i] = x2[2 * i];
+				}
+				for (int i = 0; 2 * i + 1 < n; i++)
+				{
+					re[n - 1 - i] = x1[2 * i + 1];
+					im[n - 1 - i] = x2[2 * i + 1];
+				}
+
+				fft.transform(re, im, false);
+
+				// Z = V1 + i V2:  V1[k] = (Z[k] + conj(Z[n-k])) / 2,  V2[k] = (Z[k] - conj(Z[n-k])) / 2i
+				for (int k = 0; k < n; k++)
+				{
+					final int nk = (k == 0) ? 0 : n - k;
+					final double v1r = 0.5 * (re[k] + re[nk]);
+					final double v1i = 0.5 * (im[k] - im[nk]);
+					final double v2r = 0.5 * (im[k] + im[nk]);
+					final double v2i = -0.5 * (re[k] - re[nk]);
+					x1[k] = v1r * cos[k] + v1i * sin[k];
+					x2[k] = v2r * cos[k] + v2i * sin[k];
+				}
+			}
+			else
+			{
+				// V[k] = exp(i pi k / 2n) (X[k] - i X[n-k]), with X[n] = 0;  v = ifft(V), then undo the reordering.
+				// Both v1 and v2 are real, so ifft(V1 + i V2) = v1 + i v2.
+				for (int k = 0; k < n; k++)
+				{
+					final double a1 = x1[k];
+					final double b1 = (k == 0) ? 0 : -x1[n - k];
+					final double a2 = x2[k];
+					final double b2 = (k == 0) ? 0 : -x2[n - k];
+					final double v1r = a1 * cos[k] - b1 * sin[k];
+					final double v1i = a1 * sin[k] + b1 * cos[k];
+					final double v2r = a2 * cos[k] - b2 * sin[k];
+					final double v2i = a2 * sin[k] + b2 * cos[k];
+					re[k] = v1r - v2i;
+					im[k] = v1i + v2r;
+				}
+
+				fft.transform(re, im, true);
+
+				for (int i = 0; 2 * i < n; i++)
+				{
+					x1[2 * i] = re[i] / n;
+					x2[2 * i] = im[i] / n;
+				}
+				for (int i = 0; 2 * i + 1 < n; i++)
+				{
+					x1[2 * i + 1] = re[n - 1 - i] / n;
+					x2[2 * i + 1] = im[n - 1 - i] / n;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package be.vib.imagej;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+// A DenoiseBackend provides the actual computations behind the denoising algorithms.
+// It sits between the Algorithm / DenoiseParams layer (which describes *what* needs to be done)
+// and the code that does the number crunching (for example Quasar on the graphics card, or plain Java on the CPU).
+//
+// Each backend creates Denoisers for the algorithms it supports, and knows how its denoisers must be run
+// (for example, Quasar denoisers must run on the Quasar thread).
+//
+// The backends built into the plugin are registered in DenoiseBackends. Additional backends can be
+// provided by other jars via the standard java.util.ServiceLoader mechanism.
+public interface DenoiseBackend
+{
+	// A short, unique, human readable name for the backend, e.g. "Quasar" or "Java".
+	String getName();
+
+	// Returns true if the backend can be used right now (e.g. its runtime was found and initialized).
+	boolean isAvailable();
+
+	// A rough indication of the speed of the backend. If several available backends support the same algorithm,
+	// the one with the highest speed rank is used (unless the user explicitly asked for a particular backend).
+	int getSpeedRank();
+
+	// Returns true if this backend has an implementation of the given algorithm.
+	boolean supports(Algorithm.Name algorithm);
+
+	// Returns a denoiser for the given algorithm. The params must be of the type that corresponds
+	// to the algorithm, e.g. GaussianParams for Algorithm.Name.GAUSSIAN.
+	Denoiser createDenoiser(Algorithm.Name algorithm, DenoiseParams params);
+
+	// Runs a task (typically one of this backend's denoisers) in the way this backend requires,
+	// and waits for its result. Exceptions thrown by the task are wrapped in an ExecutionException.
+	// If the calling thread is interrupted, execute() stops waiting and throws an InterruptedException,
+	// or the task stops early at one of its cancellation points (see CancellationPoint).
+	<T> T execute(Callable<T> task) throws InterruptedException, ExecutionException;
+
+	// Returns true if different denoisers of this backend can run concurrently on different threads.
+	// If not, the backend serializes their execution internally.
+	boolean supportsConcurrentDenoising();
+
+	// Returns true if a running denoiser stops soon after the thread that called execute() is interrupted.
+	// If not, an interrupted denoiser keeps the backend busy until it has finished, so speculative work
+	// (such as prefetching previews) would delay the work the user is waiting for.
+	boolean supportsCancellation();
+}
@@ -0,0 +1,111 @@
+package be.vib.imagej;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+// Registry of the available denoising backends.
+//
+// For each denoising algorithm the backend is chosen at runtime: among the backends that are available
+// and that support the algorithm, the one with the highest speed rank wins. The user can force a particular
+// backend by name, either via setPreferredBackend() (e.g. from a script) or via the Java system property
+// be.vib.denoisem.backend (e.g. -Dbe.vib.denoisem.backend=Java on a machine without a graphics card).
+// If the preferred backend is not available or does not support the algorithm, we fall back to the automatic choice.
+public class DenoiseBackends
+{
+	public static final String BACKEND_PROPERTY = "be.vib.denoisem.backend";
+
+	private static final List<DenoiseBackend> backends = loadBackends();
+
+	private static volatile String preferredBackend = System.getProperty(BACKEND_PROPERTY);
+
+	private DenoiseBackends()
+	{
+	}
+
+	private static List<DenoiseBackend> loadBackends()
+	{
+		List<DenoiseBackend> list = new ArrayList<DenoiseBackend>();
+
+		// Our built-in backends
+		list.add(QuasarBackend.getInstance());
+		list.add(JavaBackend.getInstance());
+
+		// Backends contributed by other jars, listed in their META-INF/services/be.vib.imagej.DenoiseBackend
+		for (DenoiseBackend backend : ServiceLoader.load(DenoiseBackend.class, DenoiseBackends.class.getClassLoader()))
+		{
+			list.add(backend);
+		}
+
+		return list;
+	}
+
+	public static List<DenoiseBackend> getBackends()
+	{
+		return new ArrayList<DenoiseBackend>(backends);
+	}
+
+	// Returns the backend with the given name, or null if there is no such backend.
+	public static DenoiseBackend getBackend(String name)
+	{
+		for (DenoiseBackend backend : backends)
+		{
+			if (backend.getName().equalsIgnoreCase(name))
+				return backend;
+		}
+		return null;
+	}
+
+	public static String getPreferredBackend()
+	{
+		return preferredBackend;
+	}
+
+	// Set the name of the backend to use whenever possible; null restores the automatic choice.
+	public static void setPreferredBackend(String name)
+	{
+		preferredBackend = name;
+	}
+
+	// Returns true if some available backend supports the given algorithm.
+	public static boolean isSupported(Algorithm.Name algorithm)
+	{
+		return findBackend(algorithm) != null;
+	}
+
+	// Returns the backend that will be used for the given algorithm.
+	// Throws a RuntimeException if no available backend supports the algorithm.
+	public static DenoiseBackend getBackend(Algorithm.Name algorithm)
+	{
+		DenoiseBackend backend = findBackend(algorithm);
+		if (backend == null)
+			throw new RuntimeException("No denoising backend available for algorithm " + algorithm + ". Please check that Quasar is installed and initialized.");
+		return backend;
+	}
+
+	// Returns a denoiser for the given algorithm, from the backend chosen for it.
+	public static Denoiser createDenoiser(Algorithm.Name algorithm, DenoiseParams params)
+	{
+		DenoiseBackend backend = getBackend(algorithm);
+		return backend.createDenoiser(algorithm, params.forBackend(backend));
+	}
+
+	private static DenoiseBackend findBackend(Algorithm.Name algorithm)
+	{
+		String preferred = preferredBackend;
+		if (preferred != null)
+		{
+			DenoiseBackend backend = getBackend(preferred);
+			if (backend != null && backend.isAvailable() && backend.supports(algorithm))
+				return backend;
+		}
+
+		DenoiseBackend best = null;
+		for (DenoiseBackend backend : backends)
+		{
+			if (backend.isAvailable() && backend.supports(algorithm) && (best == null || backend.getSpeedRank() > best.getSpeedRank()))
+				best = backend;
+		}
+		return best;
+	}
+}
@@ -3,9 +3,15 @@ package be.vib.imagej;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import be.vib.bits.QExecutor;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.process.ByteProcessor;
@@ -25,14 +31,140 @@ import ij.process.ShortProcessor;
 // the denoising calculations and that provide progress feedback.
 public class DenoiseEngine
 {
-	private Denoiser denoiser;
+	// The engine mode determines how the work on the image tiles is scheduled.
+	// - SEQUENTIAL: each tile is cropped from the noisy image, denoised, and inserted into the
+	//   denoised image before work on the next tile starts.
+	// - PIPELINED: cropping the tiles, denoising them and stitching the denoised tiles together
+	//   run as three concurrent stages connected by small bounded queues. While the denoiser is busy
+	//   with one tile, the next tile is already being prepared and the previous one stitched, so the
+	//   denoiser does not sit idle waiting for host-side work.
+	// - PARALLEL: a number of workers, each with its own copy of the denoiser, pull tiles from a single
+	//   shared queue that covers all slices in the range. There is no barrier at the end of a slice:
+	//   an idle worker simply takes the next tile, even if it belongs to the next slice, and each slice
+	//   is assembled as soon as its last tile is denoised. This mode needs an Algorithm to create the
+	//   denoiser copies; an engine created for a single Denoiser uses only one worker.
+	public enum Mode
+	{
+		SEQUENTIAL,
+		PIPELINED,
+		PARALLEL
+	};
+
+	// Maximum number of tiles waiting in between two pipeline stages.
+	// Small, since it only needs to absorb timing differences between the stages
+	// and every queued tile holds a copy of the image pixels.
+	private static final int PIPELINE_QUEUE_SIZE = 2;
+
+	private Algorithm algorithm;  // used for creating the denoisers when denoising starts; null if the engine was created for a single denoiser
+	private Denoiser denoiser;    // the single denoiser; null if the engine was created for an algorithm
+	private Mode mode;
+	private int numWorkers;  // number of workers in PARALLEL mode
 	
 	public DenoiseEngine(Denoiser denoiser)
 	{
+		this.algorithm = null;
 		this.denoiser = denoiser;
+		this.mode = Mode.SEQUENTIAL;
+		this.numWorkers = 1;
+	}
+
+	// Note: the engine takes a snapshot of the algorithm parameters (and of the backend that is chosen for it)
+	// at the start of each denoise(). Changes to the parameters while the engine is busy do not affect the result.
+	public DenoiseEngine(Algorithm algorithm)
+	{
+		this.algorithm = algorithm;
+		this.denoiser = null;
+		this.mode = Mode.SEQUENTIAL;
+		this.numWorkers = Runtime.getRuntime().availableProcessors();
+	}
+
+	public Mode getMode()
+	{
+		return mode;
+	}
+
+	public void setMode(Mode mode)
+	{
+		this.mode = mode;
+	}
+
+	public int getNumWorkers()
+	{
+		return numWorkers;
+	}
+
+	// Sets the number of workers used in PARALLEL mode.
+	public void setNumWorkers(int numWorkers)
+	{
+		assert(numWorkers >= 1);
+		this.numWorkers = numWorkers;
 	}
 	
 	public ImagePlus denoise(ImagePlus noisyImagePlus, ImageNormalizer normalizer, ImageRange range, String title)
+	{
+		final Denoiser[] denoisers = createDenoisers((mode == Mode.PARALLEL) ? numWorkers : 1);
+
+		ImageStack denoisedStack;
+		switch (mode)
+		{
+			case PIPELINED:
+				denoisedStack = denoisePipelined(denoisers[0], noisyImagePlus, normalizer, range);
+				break;
+			case PARALLEL:
+				denoisedStack = denoiseParallel(denoisers, noisyImagePlus, normalizer, range);
+				break;
+			default:
+				denoisedStack = denoiseSequential(denoisers[0], noisyImagePlus, normalizer, range);
+				break;
+		}
+
+		if (isCancelled() || denoisedStack == null)
+			return null;
+
+		title = ij.WindowManager.makeUniqueName(title);
+
+		ImagePlus denoisedImagePlus = new ImagePlus(title, denoisedStack);
+
+		// Make sure the display range of our denoised result is the same as the noisy input.
+		// Otherwise the denoised image may appear too dark or bright compared to the noisy version
+		// even though the pixel values themselves are correct.
+		ImageUtils.CopyDisplayRange(noisyImagePlus.getProcessor(), denoisedImagePlus.getProcessor());
+
+		// Add denoise parameters as properties to the denoised image.
+		// In the end we will probably want to store them as OME XML.
+		// For now use ordinary properties.
+		// (These are the parameters of the snapshot that all tiles were denoised with.)
+		String info = getConcatenatedDenoisingParameters(denoisers[0].getParams());
+		denoisedImagePlus.setProperty("Info", info);
+
+		return denoisedImagePlus;
+	}
+
+	// Returns the denoisers for one run of the engine. For an engine created for an algorithm these are
+	// fresh copies, all taken at the same time: if the parameters or the backend chosen for the algorithm changed
+	// while the copies were being taken (e.g. the user moved a slider, or Quasar finished initializing),
+	// the copies are taken again, so all tiles are denoised with the same parameters on the same backend.
+	private Denoiser[] createDenoisers(int count)
+	{
+		if (algorithm == null)
+			return new Denoiser[] { denoiser };
+
+		while (true)
+		{
+			Denoiser[] denoisers = new Denoiser[count];
+			boolean consistent = true;
+			for (int i = 0; i < count; i++)
+			{
+				denoisers[i] = algorithm.getDenoiserCopy();
+				consistent = consistent && denoisers[i].getParams().equals(denoisers[0].getParams()) && (denoisers[i].getBackend() == denoisers[0].getBackend());
+			}
+
+			if (consistent)
+				return denoisers;
+		}
+	}
+
+	private ImageStack denoiseSequential(Denoiser denoiser, ImagePlus noisyImagePlus, ImageNormalizer normalizer, ImageRange range)
 	{
 		final int width = noisyImagePlus.getWidth();
 		final int height = noisyImagePlus.getHeight();
@@ -51,7 +183,7 @@ public class DenoiseEngine
 				continue;
 			
 			ImageProcessor noisyImage = noisyStack.getProcessor(slice);
-			ImageProcessor denoisedImage = (noisyImage instanceof ByteProcessor) ? new ByteProcessor(width, height) : new ShortProcessor(width, height); // blank image, will be filled below
+			ImageProcessor denoisedImage = newBlankImage(noisyImage); // will be filled below
 			
 			ImageTiler tiler = new ImageTiler(noisyImage, tileSize, tileSize, margin);
 			for (ImageTile tile : tiler)
@@ -66,11 +198,10 @@ public class DenoiseEngine
 				try
 				{
 					denoiser.setImage(noisyTileImp, normalizer);
-					ImageProcessor denoisedTileImp = QExecutor.getInstance().submit(denoiser).get(); // TODO: check what happens to quasar::exception_t if thrown from C++ during the denoiser task.
+					ImageProcessor denoisedTileImp = denoiser.getBackend().execute(denoiser);
 
 					// Remove tile margins
-					denoisedTileImp.setRoi(tile.getLeftMargin(), tile.getTopMargin(), tile.getWidthWithoutMargins(), tile.getHeightWithoutMargins());
-					denoisedTileImp = denoisedTileImp.crop();
+					denoisedTileImp = tile.removeMargins(denoisedTileImp);
 					
 					// Put denoised tile at the correct position in the result image
 					denoisedImage.insert(denoisedTileImp, tile.getXPositionWithoutMargins(), tile.getYPositionWithoutMargins());
@@ -89,25 +220,352 @@ public class DenoiseEngine
 			denoisedStack.addSlice("", denoisedImage);			
 		}
 		
+		return denoisedStack;
+	}
+
+	// A tile traveling through the stages of the pipelined engine.
+	private static class TileJob
+	{
+		final ImageTile tile;
+		final ImageProcessor denoisedSlice;  // the denoised slice that this tile needs to be inserted into
+		final boolean lastTileOfSlice;
+		ImageProcessor denoisedTile;  // filled in by the denoising stage; null if denoising failed or was cancelled
+
+		TileJob(ImageTile tile, ImageProcessor denoisedSlice, boolean lastTileOfSlice)
+		{
+			this.tile = tile;
+			this.denoisedSlice = denoisedSlice;
+			this.lastTileOfSlice = lastTileOfSlice;
+			this.denoisedTile = null;
+		}
+	}
+
+	// Marker put in a pipeline queue to indicate that no more tiles will follow.
+	private static final TileJob END_OF_TILES = new TileJob(null, null, false);
+
+	// Denoises the slices in the range with three concurrent stages:
+	// 1. preparation: a background thread crops the tiles (with margins) from the noisy slices;
+	// 2. denoising: the calling thread hands the tiles one by one to the denoiser (via its backend);
+	// 3. stitching: a second background thread removes the tile margins, inserts the denoised tiles
+	//    into the result slices, assembles the denoised stack and reports progress.
+	// The bounded queues between the stages keep memory use in check if one stage is much faster
+	// than the others.
+	//
+	// Note: the normalization of the tile pixels and their upload to the graphics card still happen in
+	// Denoiser.call(), since Quasar requires that its values are created on the Quasar thread.
+	// This mode is most useful for backends that cannot run several denoisers concurrently, such as Quasar.
+	private ImageStack denoisePipelined(Denoiser denoiser, ImagePlus noisyImagePlus, ImageNormalizer normalizer, ImageRange range)
+	{
+		final int width = noisyImagePlus.getWidth();
+		final int height = noisyImagePlus.getHeight();
+
+		final int tileSize = denoiser.imageTileSize();
+		final int margin = denoiser.imageMargin();
+
+		final ImageStack noisyStack = noisyImagePlus.getStack();
+
+		final ImageStack denoisedStack = new ImageStack(width, height);
+
+		final BlockingQueue<TileJob> tilesToDenoise = new ArrayBlockingQueue<TileJob>(PIPELINE_QUEUE_SIZE);
+		final BlockingQueue<TileJob> tilesToStitch = new ArrayBlockingQueue<TileJob>(PIPELINE_QUEUE_SIZE);
+
+		final int numSlices = range.getLast() - range.getFirst() + 1;
+
+		ExecutorService stages = Executors.newFixedThreadPool(2);
+
+		Runnable preparation = () -> {
+			try
+			{
+				for (int slice = range.getFirst(); slice <= range.getLast() && !isCancelled(); slice++)
+				{
+					ImageProcessor noisyImage = noisyStack.getProcessor(slice);
+					ImageProcessor denoisedImage = newBlankImage(noisyImage); // will be filled by the stitching stage
+
+					ImageTiler tiler = new ImageTiler(noisyImage, tileSize, tileSize, margin);
+					final int numTiles = tiler.getNumTiles();
+					int tileNr = 0;
+					for (ImageTile tile : tiler)
+					{
+						if (isCancelled())
+							break;
+
+						tileNr++;
+						tilesToDenoise.put(new TileJob(tile, denoisedImage, tileNr == numTiles));
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+			finally
+			{
+				putUninterruptibly(tilesToDenoise, END_OF_TILES);
+			}
+		};
+
+		final int numTiles = ImageTiler.getNumTiles(width, height, tileSize, tileSize) * numSlices;
+
+		Runnable stitching = () -> {
+			int tileNr = 0;
+			for (TileJob job = takeUninterruptibly(tilesToStitch); job != END_OF_TILES; job = takeUninterruptibly(tilesToStitch))
+			{
+				if (job.denoisedTile != null)
+				{
+					// Remove tile margins and put the denoised tile at the correct position in the result image
+					ImageProcessor denoisedTileImp = job.tile.removeMargins(job.denoisedTile);
+					job.denoisedSlice.insert(denoisedTileImp, job.tile.getXPositionWithoutMargins(), job.tile.getYPositionWithoutMargins());
+				}
+
+				if (job.lastTileOfSlice)
+					denoisedStack.addSlice("", job.denoisedSlice);
+
+				// Progress feedback
+				tileNr++;
+				publish((100 * tileNr) / numTiles);
+			}
+		};
+
+		Future<?> preparationDone = stages.submit(preparation);
+		Future<?> stitchingDone = stages.submit(stitching);
+
+		try
+		{
+			// The denoising stage runs on the calling thread. It keeps taking tiles until the preparation stage
+			// signals that there are no more, even after cancellation, so the preparation stage never blocks forever.
+			for (TileJob job = takeUninterruptibly(tilesToDenoise); job != END_OF_TILES; job = takeUninterruptibly(tilesToDenoise))
+			{
+				if (!isCancelled())
+				{
+					try
+					{
+						denoiser.setImage(job.tile.getImageWithMargins(), normalizer);
+						job.denoisedTile = denoiser.getBackend().execute(denoiser);
+					}
+					catch (ExecutionException | InterruptedException e)
+					{
+						e.printStackTrace();
+					}
+				}
+
+				putUninterruptibly(tilesToStitch, job);
+			}
+		}
+		finally
+		{
+			putUninterruptibly(tilesToStitch, END_OF_TILES);
+		}
+
+		try
+		{
+			preparationDone.get();
+			stitchingDone.get();
+		}
+		catch (ExecutionException | InterruptedException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+		finally
+		{
+			stages.shutdown();
+		}
+
+		return denoisedStack;
+	}
+
+	// A slice that the PARALLEL engine assembles from denoised tiles, which may arrive in any order.
+	private static class SliceAssembly
+	{
+		private ImageTiler tiler;  // tiler over the noisy slice; released once all tiles are denoised
+		private final ImageProcessor denoisedImage;
+		private int tilesRemaining;
+
+		SliceAssembly(ImageProcessor noisyImage, int tileSize, int margin)
+		{
+			this.tiler = new ImageTiler(noisyImage, tileSize, tileSize, margin);
+			this.denoisedImage = newBlankImage(noisyImage);
+			this.tilesRemaining = tiler.getNumTiles();
+		}
+
+		// Cropping a tile temporarily changes the ROI of the noisy slice,
+		// so the workers must crop tiles of the same slice one at a time.
+		synchronized ImageTile getTile(int tileIndex)
+		{
+			return tiler.getTile(tileIndex);
+		}
+
+		// Inserts a denoised tile (or skips it if denoisedTileWithMargins is null because denoising failed).
+		// Returns true if this was the last tile that was still missing from the slice.
+		synchronized boolean insert(ImageTile tile, ImageProcessor denoisedTileWithMargins)
+		{
+			if (denoisedTileWithMargins != null)
+			{
+				ImageProcessor denoisedTileImp = tile.removeMargins(denoisedTileWithMargins);
+				denoisedImage.insert(denoisedTileImp, tile.getXPositionWithoutMargins(), tile.getYPositionWithoutMargins());
+			}
+
+			tilesRemaining--;
+			if (tilesRemaining == 0)
+				tiler = null;  // the noisy slice is no longer needed
+
+			return tilesRemaining == 0;
+		}
+	}
+
+	// Denoises the slices in the range with a number of workers that each have their own denoiser (one of denoisers).
+	// All tiles of all slices in the range are numbered consecutively, and the workers pull the next
+	// tile number from a single shared counter. This keeps all workers busy until the very last tile,
+	// irrespective of slice boundaries or of the (smaller) tiles along the image edges taking less time.
+	// Slices are fetched from the noisy stack when their first tile is needed, and assembled as their
+	// tiles complete.
+	//
+	// Note: with a backend that does not support concurrent denoising (Quasar) the denoising calls of all
+	// workers are still executed one at a time, but tile cropping and stitching then overlap with the denoising.
+	// With the Java backend the workers really denoise in parallel.
+	//
+	// If denoising a tile fails, the other workers are interrupted and stop after their current tile, and null is returned.
+	private ImageStack denoiseParallel(Denoiser[] denoisers, ImagePlus noisyImagePlus, ImageNormalizer normalizer, ImageRange range)
+	{
+		final Denoiser denoiser = denoisers[0];
+
+		final int width = noisyImagePlus.getWidth();
+		final int height = noisyImagePlus.getHeight();
+
+		final int tileSize = denoiser.imageTileSize();
+		final int margin = denoiser.imageMargin();
+
+		final ImageStack noisyStack = noisyImagePlus.getStack();
+
+		final int numSlices = range.getLast() - range.getFirst() + 1;
+		final int tilesPerSlice = ImageTiler.getNumTiles(width, height, tileSize, tileSize);
+		final int numTiles = tilesPerSlice * numSlices;
+
+		final SliceAssembly[] slices = new SliceAssembly[numSlices];
+
+		final AtomicInteger nextTile = new AtomicInteger(0);
+		final AtomicInteger numTilesDone = new AtomicInteger(0);
+		final AtomicBoolean failed = new AtomicBoolean(false);
+
+		final int workers = Math.max(1, Math.min(denoisers.length, numTiles));
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+
+		Future<?>[] workersDone = new Future<?>[workers];
+		for (int w = 0; w < workers; w++)
+		{
+			final Denoiser workerDenoiser = denoisers[w];
+
+			workersDone[w] = executor.submit(() -> {
+				try
+				{
+					for (int tileNr = nextTile.getAndIncrement(); tileNr < numTiles && !isCancelled() && !failed.get(); tileNr = nextTile.getAndIncrement())
+					{
+						final int sliceIdx = tileNr / tilesPerSlice;
+
+						SliceAssembly slice;
+						synchronized (slices)
+						{
+							if (slices[sliceIdx] == null)
+								slices[sliceIdx] = new SliceAssembly(noisyStack.getProcessor(range.getFirst() + sliceIdx), tileSize, margin);
+							slice = slices[sliceIdx];
+						}
+
+						ImageTile tile = slice.getTile(tileNr % tilesPerSlice);
+
+						ImageProcessor denoisedTileImp = null;
+						try
+						{
+							workerDenoiser.setImage(tile.getImageWithMargins(), normalizer);
+							denoisedTileImp = workerDenoiser.getBackend().execute(workerDenoiser);
+						}
+						catch (ExecutionException e)
+						{
+							throw new RuntimeException(e);  // fail the whole run, rather than return an image with missing tiles
+						}
+						catch (InterruptedException e)
+						{
+							if (!failed.get())  // after a failure the other workers get interrupted, that is expected
+								e.printStackTrace();
+						}
+
+						slice.insert(tile, denoisedTileImp);
+
+						// Progress feedback
+						publish((100 * numTilesDone.incrementAndGet()) / numTiles);
+					}
+				}
+				catch (RuntimeException | Error e)
+				{
+					failed.set(true);  // stops the other workers after their current tile
+					throw e;
+				}
+			});
+		}
+
+		try
+		{
+			for (Future<?> workerDone : workersDone)
+				workerDone.get();
+		}
+		catch (ExecutionException | InterruptedException e)
+		{
+			e.printStackTrace();
+			failed.set(true);
+			executor.shutdownNow();  // also interrupts the denoising in progress, where the backend supports that
+			return null;
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
 		if (isCancelled())
 			return null;
 		
-		title = ij.WindowManager.makeUniqueName(title);
+		ImageStack denoisedStack = new ImageStack(width, height);
+		for (SliceAssembly slice : slices)
+			denoisedStack.addSlice("", slice.denoisedImage);
 		
-		ImagePlus denoisedImagePlus = new ImagePlus(title, denoisedStack);
+		return denoisedStack;
+	}
 
-		// Make sure the display range of our denoised result is the same as the noisy input.
-		// Otherwise the denoised image may appear too dark or bright compared to the noisy version
-		// even though the pixel values themselves are correct.
-		ImageUtils.CopyDisplayRange(noisyImagePlus.getProcessor(), denoisedImagePlus.getProcessor());
+	private static ImageProcessor newBlankImage(ImageProcessor image)
+	{
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		return (image instanceof ByteProcessor) ? new ByteProcessor(width, height) : new ShortProcessor(width, height);
+	}
 		
-		// Add denoise parameters as properties to the denoised image.
-		// In the end we will probably want to store them as OME XML.
-		// For now use ordinary properties.
-		String info = getConcatenatedDenoisingParameters(denoiser.getParams());
-		denoisedImagePlus.setProperty("Info", info);
+	private static TileJob takeUninterruptibly(BlockingQueue<TileJob> queue)
+	{
+		while (true)
+		{
+			try
+			{
+				return queue.take();
+			}
+			catch (InterruptedException e)
+			{
+				// Keep waiting: the pipeline stages must always drain their input queue, otherwise the stage feeding them could block forever.
+			}
+		}
+	}
 
-		return denoisedImagePlus;
+	private static void putUninterruptibly(BlockingQueue<TileJob> queue, TileJob job)
+	{
+		while (true)
+		{
+			try
+			{
+				queue.put(job);
+				return;
+			}
+			catch (InterruptedException e)
+			{
+				// Keep trying, see takeUninterruptibly()
+			}
+		}
 	}
 	
 	public void publish(Integer... chunks)
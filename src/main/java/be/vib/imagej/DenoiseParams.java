@@ -16,4 +16,37 @@ public abstract class DenoiseParams
     // noiseEstimate is an estimate for the standard deviation of the noise in the image,
     // assuming the image pixel intensities are in the range [0, 1].
 	public abstract void setDefaultParameters(float noiseEstimate);
+
+	// Returns the default parameters of the given algorithm.
+	public static DenoiseParams newParams(Algorithm.Name name)
+	{
+		switch (name)
+		{
+			case GAUSSIAN:
+				return new GaussianParams();
+			case BILATERAL:
+				return new BilateralParams();
+			case BLSGSM:
+				return new BLSGSMParams();
+			case WAVELET_THRESHOLDING:
+				return new WaveletThresholdingParams();
+			case ANISOTROPIC_DIFFUSION:
+				return new AnisotropicDiffusionParams();
+			case NONLOCALMEANS:
+				return new NonLocalMeansParams();
+			case TIKHONOV:
+				return new TikhonovParams();
+			case TOTAL_VARIATION:
+				return new TotalVariationParams();
+			default:
+				throw new RuntimeException("Unsupported denoising algorithm " + name);
+		}
+	}
+
+	// Returns the parameters as the given backend uses them: either these params, or a copy without the parameters
+	// that the backend ignores, so that those do not end up in preview cache keys or in the denoised image's info.
+	public DenoiseParams forBackend(DenoiseBackend backend)
+	{
+		return this;
+	}
 }
@@ -2,12 +2,18 @@ package be.vib.imagej;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.swing.JPanel;
 
 public abstract class DenoiseParamsPanelBase extends JPanel
 {
 	private ArrayList<DenoiseParamsChangeEventListener> listeners = new ArrayList<DenoiseParamsChangeEventListener>();
+	
+	// For each parameter slider: a function that returns the parameters for one slider step down and up.
+	private ArrayList<Supplier<List<DenoiseParams>>> neighbours = new ArrayList<Supplier<List<DenoiseParams>>>();
 
 	public synchronized void addEventListener(DenoiseParamsChangeEventListener listener)
 	{
@@ -32,4 +38,39 @@ public abstract class DenoiseParamsPanelBase extends JPanel
 	
 	// Update the panel's widgets so they reflect the current parameter values.
 	abstract public void updatePanelFromParams();
+	
+	// Returns copies of the current parameters, with one parameter changed by one step of its slider (down or up).
+	// These are the parameters the user will most likely try next, so the denoising algorithm page computes their
+	// previews speculatively while the user is looking at the current one. Sliders that are disabled are skipped.
+	// Must be called on the Java EDT.
+	public List<DenoiseParams> getNeighbouringParams()
+	{
+		List<DenoiseParams> params = new ArrayList<DenoiseParams>();
+		for (Supplier<List<DenoiseParams>> neighbour : neighbours)
+			params.addAll(neighbour.get());
+		return params;
+	}
+	
+	// Registers a parameter slider for getNeighbouringParams(). withValue must return a copy of the current parameters,
+	// with the slider's parameter set to the given value.
+	protected void addNeighbours(SliderFieldPair pair, Function<Float, DenoiseParams> withValue)
+	{
+		neighbours.add(() -> neighbours(pair.getSlider().isEnabled(), pair.getNeighbouringValues(), withValue));
+	}
+	
+	protected void addNeighbours(SliderSpinnerPair pair, Function<Integer, DenoiseParams> withValue)
+	{
+		neighbours.add(() -> neighbours(pair.getSlider().isEnabled(), pair.getNeighbouringValues(), withValue));
+	}
+	
+	private static <T> List<DenoiseParams> neighbours(boolean enabled, List<T> values, Function<T, DenoiseParams> withValue)
+	{
+		List<DenoiseParams> params = new ArrayList<DenoiseParams>();
+		if (enabled)
+		{
+			for (T value : values)
+				params.add(withValue.apply(value));
+		}
+		return params;
+	}
 }
\ No newline at end of file
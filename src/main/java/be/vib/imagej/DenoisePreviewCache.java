@@ -1,21 +1,165 @@
 package be.vib.imagej;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
-public class DenoisePreviewCache extends LinkedHashMap<DenoisePreviewCacheKey, DenoisePreviewCacheValue>
+// A cache with denoised previews, for quick feedback when the user returns to parameter settings
+// that were previewed before.
+//
+// The cache is bounded by the memory used by its values (rather than by the number of values, since
+// a preview of a large region-of-interest takes much more memory than one of a small region).
+// When it is full, the least recently used previews are evicted.
+//
+// Optionally the cache has a second, persistent tier on disk (a DenoisePreviewDiskCache). Previews that are
+// not in memory are then looked up on disk, and new previews are also stored on disk, so they survive the Fiji session.
+//
+// The cache is thread-safe: it is used from the preview worker thread, as well as from the Java EDT.
+// Hit, miss and eviction counts are kept for tuning purposes (see getStatistics()).
+public class DenoisePreviewCache
 {
-    private int capacity;
- 
-    public DenoisePreviewCache(final int capacity)
-    {
-        super(16, 0.75f, true);
-        this.capacity = capacity;
-    }
- 
-    @Override
-    protected boolean removeEldestEntry(final Map.Entry<DenoisePreviewCacheKey, DenoisePreviewCacheValue> eldest)
-    {
-        return size() >= capacity;
-    }
-}
\ No newline at end of file
+	private final long capacityInBytes;
+	private long sizeInBytes = 0;
+
+	private final DenoisePreviewDiskCache diskCache;  // null if there is no disk tier
+
+	private final LinkedHashMap<DenoisePreviewCacheKey, DenoisePreviewCacheValue> map = new LinkedHashMap<DenoisePreviewCacheKey, DenoisePreviewCacheValue>(16, 0.75f, true);  // access-ordered
+
+	private long numHits = 0;
+	private long numMisses = 0;
+	private long numEvictions = 0;
+
+	public DenoisePreviewCache(long capacityInBytes)
+	{
+		this(capacityInBytes, null);
+	}
+
+	public DenoisePreviewCache(long capacityInBytes, DenoisePreviewDiskCache diskCache)
+	{
+		this.capacityInBytes = capacityInBytes;
+		this.diskCache = diskCache;
+	}
+
+	// Returns the cached value for the key, or null if there is none.
+	// A value that is found in the disk tier is also added to the memory tier.
+	public DenoisePreviewCacheValue get(DenoisePreviewCacheKey key)
+	{
+		synchronized (this)
+		{
+			DenoisePreviewCacheValue value = map.get(key);
+			if (value != null)
+			{
+				numHits++;
+				return value;
+			}
+			numMisses++;
+		}
+
+		if (diskCache == null)
+			return null;
+
+		// Note: no need to hold our lock during disk I/O, the disk cache is thread-safe itself.
+		DenoisePreviewCacheValue value = diskCache.get(key);
+		if (value != null)
+			putInMemory(key, value);
+		return value;
+	}
+
+	// Returns true if the cache (memory or disk tier) has a value for the key. Does not count as a hit or miss,
+	// and does not make the value more recently used.
+	public boolean contains(DenoisePreviewCacheKey key)
+	{
+		synchronized (this)
+		{
+			if (map.containsKey(key))
+				return true;
+		}
+		return (diskCache != null) && diskCache.contains(key);
+	}
+
+	// Adds the value to the cache (and to its disk tier, if any), evicting the least recently used values
+	// if needed to stay within the capacity. Returns the value that was previously cached in memory for the key,
+	// or null if there was none. A value bigger than the whole cache is not cached in memory.
+	public DenoisePreviewCacheValue put(DenoisePreviewCacheKey key, DenoisePreviewCacheValue value)
+	{
+		DenoisePreviewCacheValue old = putInMemory(key, value);
+		if (diskCache != null)
+			diskCache.put(key, value);
+		return old;
+	}
+
+	private synchronized DenoisePreviewCacheValue putInMemory(DenoisePreviewCacheKey key, DenoisePreviewCacheValue value)
+	{
+		if (value.getSizeInBytes() > capacityInBytes)
+			return null;
+
+		DenoisePreviewCacheValue old = map.put(key, value);
+		if (old != null)
+			sizeInBytes -= old.getSizeInBytes();
+		sizeInBytes += value.getSizeInBytes();
+
+		Iterator<Map.Entry<DenoisePreviewCacheKey, DenoisePreviewCacheValue>> it = map.entrySet().iterator();
+		while (sizeInBytes > capacityInBytes && it.hasNext())
+		{
+			Map.Entry<DenoisePreviewCacheKey, DenoisePreviewCacheValue> eldest = it.next();
+			if (eldest.getKey() == key)
+				continue; // never evict what we just added
+			sizeInBytes -= eldest.getValue().getSizeInBytes();
+			it.remove();
+			numEvictions++;
+		}
+
+		return old;
+	}
+
+	// Clears the memory tier. The disk tier is left as it is.
+	public synchronized void clear()
+	{
+		map.clear();
+		sizeInBytes = 0;
+	}
+
+	public DenoisePreviewDiskCache getDiskCache()
+	{
+		return diskCache;
+	}
+
+	public synchronized int size()
+	{
+		return map.size();
+	}
+
+	public synchronized long getSizeInBytes()
+	{
+		return sizeInBytes;
+	}
+
+	public long getCapacityInBytes()
+	{
+		return capacityInBytes;
+	}
+
+	public synchronized long getNumHits()
+	{
+		return numHits;
+	}
+
+	public synchronized long getNumMisses()
+	{
+		return numMisses;
+	}
+
+	public synchronized long getNumEvictions()
+	{
+		return numEvictions;
+	}
+
+	public synchronized String getStatistics()
+	{
+		final long numLookups = numHits + numMisses;
+		return String.format("Preview cache: %d previews, %.1f of %.1f MB, %d hits, %d misses (%.0f%% hit rate), %d evictions",
+		                     map.size(), sizeInBytes / 1048576.0, capacityInBytes / 1048576.0,
+		                     numHits, numMisses, (numLookups > 0) ? 100.0 * numHits / numLookups : 0.0, numEvictions) +
+		       ((diskCache != null) ? "\n" + diskCache.getStatistics() : "");
+	}
+}
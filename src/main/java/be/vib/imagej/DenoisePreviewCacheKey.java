@@ -1,29 +1,140 @@
 package be.vib.imagej;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import ij.process.ImageProcessor;
+
 // Class representing a "key" for looking up values in our cache with denoising previews:
-// a key is the combination of a specific denoising algorithm and its parameters.
+// a key is the combination of the noisy preview image (identified by a hash of its content),
+// a specific denoising algorithm and its parameters, and the backend that calculates the preview
+// (different backends may produce slightly different results).
+//
+// Since the image is identified by its content, switching back to a region-of-interest (or image)
+// that was used before finds the previews that were calculated for it then.
 public class DenoisePreviewCacheKey
 {
+	private String imageHash;
 	private Algorithm.Name name;
-	private Object params;
-	
-	public DenoisePreviewCacheKey(Algorithm algorithm)
+	private DenoiseParams params;
+	private String backend;
+
+	public DenoisePreviewCacheKey(String imageHash, Algorithm algorithm)
 	{
-		this.name = algorithm.getName();
-		this.params = algorithm.getParamsCopy();
+		this(imageHash, algorithm.getName(), algorithm.getParamsCopy());
 	}
 	
+	// Note: the key keeps a reference to params, so they must not be modified afterwards.
+	public DenoisePreviewCacheKey(String imageHash, Algorithm.Name name, DenoiseParams params)
+	{
+		DenoiseBackend backend = DenoiseBackends.getBackend(name);
+		this.imageHash = imageHash;
+		this.name = name;
+		this.params = params.forBackend(backend);  // parameters the backend ignores do not lead to a different preview
+		this.backend = backend.getName();
+	}
+
+	public String getImageHash()
+	{
+		return imageHash;
+	}
+
+	public Algorithm.Name getAlgorithmName()
+	{
+		return name;
+	}
+
+	public DenoiseParams getParams()
+	{
+		return params;
+	}
+
+	public String getBackendName()
+	{
+		return backend;
+	}
+
+	// Returns a string that identifies this key across Fiji sessions, for the DenoisePreviewDiskCache.
+	// Besides the key itself, it includes the plugin version, since a different version may calculate
+	// a different preview for the same parameters.
+	public String getDiskKey()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("image=").append(imageHash).append('\n');
+		sb.append("backend=").append(backend).append(' ').append(QuasarModuleCache.getPluginVersion()).append('\n');
+		sb.append("algorithm=").append(name).append('\n');
+
+		Properties props = params.getParameterList();
+		for (String property : new TreeSet<String>(props.stringPropertyNames()))  // sorted, for a reproducible key
+			sb.append(property).append('=').append(props.getProperty(property)).append('\n');
+
+		return sb.toString();
+	}
+
 	@Override
 	public boolean equals(Object obj)
 	{
 		DenoisePreviewCacheKey other = (DenoisePreviewCacheKey)obj;
-		
-		return (obj instanceof DenoisePreviewCacheKey) && (name == other.name) && params.equals(other.params);
+
+		return (obj instanceof DenoisePreviewCacheKey) && imageHash.equals(other.imageHash) && (name == other.name) && params.equals(other.params) && backend.equals(other.backend);
 	}
-	
+
 	@Override
 	public int hashCode()
 	{
-		return name.hashCode() ^ params.hashCode();
+		return imageHash.hashCode() ^ name.hashCode() ^ params.hashCode() ^ backend.hashCode();
+	}
+
+	// Returns a hash (hexadecimal SHA-256) of everything about the noisy preview that determines its denoised preview:
+	// its pixels, the normalization of its pixel values (which, for 16-bit images, depends on the whole image)
+	// and its display range (which determines the conversion of the denoised preview to 8 bits for display).
+	public static String hashImage(ImageProcessor image, ImageNormalizer normalizer)
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e); // every Java platform is required to support SHA-256
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(image.getWidth());
+		header.putInt(image.getHeight());
+		header.putInt(image.getBitDepth());
+		header.putInt(normalizer.imageIs8Bit ? 1 : 0);
+		header.putInt(normalizer.loPercentile);
+		header.putInt(normalizer.hiPercentile);
+		header.putDouble(image.getMin());
+		header.putDouble(image.getMax());
+		digest.update(header.array());
+
+		Object pixels = image.getPixels();
+		if (pixels instanceof byte[])
+		{
+			digest.update((byte[])pixels);
+		}
+		else if (pixels instanceof short[])
+		{
+			short[] shorts = (short[])pixels;
+			ByteBuffer buffer = ByteBuffer.allocate(2 * shorts.length).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.asShortBuffer().put(shorts);
+			digest.update(buffer.array());
+		}
+		else
+		{
+			throw new RuntimeException("Unsupported preview image type " + image.getClass().getSimpleName());
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest())
+			sb.append(String.format("%02x", b));
+		return sb.toString();
 	}
-}
\ No newline at end of file
+}
@@ -1,19 +1,101 @@
 package be.vib.imagej;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
 
 // Class representing a "value" in our cache with denoising previews:
 // the denoised image and an estimate of its noise and blur levels.
+//
+// The denoised image is stored compactly, as its 8-bit samples (one byte per pixel) and, for indexed
+// images, the lookup table, and not as a BufferedImage. Since getDenoisedPreview() returns a new
+// BufferedImage each time, the cached pixels can never be modified via the user interface.
 public class DenoisePreviewCacheValue
 {
-	public BufferedImage denoisedPreview;
-	public float noiseEstimate;
-	public float blurEstimate;
-	
+	private final byte[] pixels;
+	private final IndexColorModel lut;  // null for a grayscale image
+	private final int width;
+	private final int height;
+	public final float noiseEstimate;
+	public final float blurEstimate;
+
 	public DenoisePreviewCacheValue(BufferedImage denoisedPreview, float noiseEstimate, float blurEstimate)
 	{
-		this.denoisedPreview = denoisedPreview;
+		this(toBytes(denoisedPreview), getLut(denoisedPreview), denoisedPreview.getWidth(), denoisedPreview.getHeight(), noiseEstimate, blurEstimate);
+	}
+
+	public DenoisePreviewCacheValue(byte[] pixels, IndexColorModel lut, int width, int height, float noiseEstimate, float blurEstimate)
+	{
+		assert(pixels.length == width * height);
+		this.pixels = pixels;
+		this.lut = lut;
+		this.width = width;
+		this.height = height;
 		this.noiseEstimate = noiseEstimate;
 		this.blurEstimate = blurEstimate;
 	}
+
+	// Returns a new 8-bit image (indexed or grayscale, like the original) with the denoised preview.
+	public BufferedImage getDenoisedPreview()
+	{
+		if (lut == null)
+			return ImageUtils.createGrayscaleBufferedImage(pixels.clone(), width, height);
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, lut);
+		image.getRaster().setDataElements(0, 0, width, height, pixels.clone());
+		return image;
+	}
+
+	// The 8-bit samples of the denoised preview (a reference, not a copy).
+	public byte[] getPixels()
+	{
+		return pixels;
+	}
+
+	// The lookup table of the denoised preview, or null if it is a grayscale image.
+	public IndexColorModel getLut()
+	{
+		return lut;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	// An estimate of the memory used by this value.
+	public long getSizeInBytes()
+	{
+		final int overhead = 64; // object headers, fields, array length
+		final int lutSize = (lut == null) ? 0 : 4 * lut.getMapSize() + overhead;  // IndexColorModel keeps the colors as ints
+		return pixels.length + lutSize + overhead;
+	}
+
+	// Returns the 8-bit samples of an image as produced by ImageProcessor.getBufferedImage(): either
+	// a grayscale image (16-bit images, already scaled to the display range), or an indexed image whose
+	// lookup table implements the display range and the color table of the ImageJ image (8-bit images).
+	private static byte[] toBytes(BufferedImage image)
+	{
+		Raster raster = image.getRaster();
+		assert(raster.getNumBands() == 1);
+
+		final int w = image.getWidth();
+		final int h = image.getHeight();
+		int[] samples = raster.getSamples(0, 0, w, h, 0, (int[])null);
+
+		byte[] bytes = new byte[w * h];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte)samples[i];
+		return bytes;
+	}
+
+	private static IndexColorModel getLut(BufferedImage image)
+	{
+		return (image.getColorModel() instanceof IndexColorModel) ? (IndexColorModel)image.getColorModel() : null;
+	}
 }
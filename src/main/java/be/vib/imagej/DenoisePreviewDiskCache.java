@@ -0,0 +1,292 @@
+package be.vib.imagej;
+
+import java.awt.image.IndexColorModel;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// A persistent, on-disk second tier for the DenoisePreviewCache. Users often tune the parameters for the same
+// reference regions-of-interest on the same datasets day after day; with this cache the previews they saw
+// in an earlier Fiji session are read from disk instead of being denoised again.
+//
+// Each preview (with its noise and blur estimates) is stored in its own compressed file, named after a hash
+// of its key (see DenoisePreviewCacheKey.getDiskKey()): the content of the noisy preview, the algorithm,
+// its parameters, and the backend and plugin version that calculated it. The full key is also stored in the file,
+// and checked when reading, so a hash collision or a corrupt file simply counts as a miss.
+//
+// The total size of the files is bounded. When it is exceeded, the least recently used files are deleted.
+// Recency is tracked via the file modification time, which is updated whenever a preview is read.
+//
+// The cache folder is <user home>/.denoisem/previews (see QuasarModuleCache.getCacheRoot()).
+// All methods are thread-safe. I/O errors are reported on the console and otherwise treated as cache misses:
+// the disk cache is an optimization, it must never break the previews.
+public class DenoisePreviewDiskCache
+{
+	private static final int MAGIC = 0x44454e50;  // "DENP"
+	private static final int FORMAT_VERSION = 2;  // 2: lookup table of indexed previews
+	private static final String EXTENSION = ".preview";
+
+	private final File dir;
+	private final long capacityInBytes;
+
+	private LinkedHashMap<String, Long> files = null;  // file name -> file size, least recently used first; null until the folder was scanned
+	private long sizeInBytes = 0;
+
+	private long numHits = 0;
+	private long numMisses = 0;
+
+	public DenoisePreviewDiskCache(File dir, long capacityInBytes)
+	{
+		this.dir = dir;
+		this.capacityInBytes = capacityInBytes;
+	}
+
+	public static File getDefaultDir()
+	{
+		return new File(QuasarModuleCache.getCacheRoot(), "previews");
+	}
+
+	// Returns the preview stored for the given key, or null if there is none.
+	public synchronized DenoisePreviewCacheValue get(DenoisePreviewCacheKey key)
+	{
+		scanIfNeeded();
+
+		final String diskKey = key.getDiskKey();
+		final String fileName = fileName(diskKey);
+		if (!files.containsKey(fileName))
+		{
+			numMisses++;
+			return null;
+		}
+
+		File file = new File(dir, fileName);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file)))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(diskKey))
+			{
+				numMisses++;
+				return null;
+			}
+
+			final int width = in.readInt();
+			final int height = in.readInt();
+			final float noiseEstimate = in.readFloat();
+			final float blurEstimate = in.readFloat();
+			byte[] pixels = new byte[width * height];
+			in.readFully(pixels);
+			IndexColorModel lut = readLut(in);
+
+			files.get(fileName); // make it the most recently used
+			file.setLastModified(System.currentTimeMillis());
+
+			numHits++;
+			return new DenoisePreviewCacheValue(pixels, lut, width, height, noiseEstimate, blurEstimate);
+		}
+		catch (IOException e)
+		{
+			System.out.println("Failed to read cached preview " + file + ": " + e);
+			remove(fileName);
+			numMisses++;
+			return null;
+		}
+	}
+
+	// Returns true if there is a file for the given key. Does not count as a hit or miss, and does not read the file.
+	public synchronized boolean contains(DenoisePreviewCacheKey key)
+	{
+		scanIfNeeded();
+		return files.containsKey(fileName(key.getDiskKey()));
+	}
+
+	// Stores the preview for the given key, evicting the least recently used previews if needed.
+	public synchronized void put(DenoisePreviewCacheKey key, DenoisePreviewCacheValue value)
+	{
+		scanIfNeeded();
+
+		final String diskKey = key.getDiskKey();
+		final String fileName = fileName(diskKey);
+		if (files.containsKey(fileName))
+			return;
+
+		File file = new File(dir, fileName);
+		try
+		{
+			Files.createDirectories(dir.toPath());
+
+			// Write a temporary file first and then rename it, so other threads or Fiji instances never see a partial file.
+			// (Plain file streams are used since, unlike NIO channels, they are not closed if the preview thread gets interrupted.)
+			Path tempFile = Files.createTempFile(dir.toPath(), "preview", ".tmp");
+			try
+			{
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile.toFile())))))
+				{
+					out.writeInt(MAGIC);
+					out.writeInt(FORMAT_VERSION);
+					out.writeUTF(diskKey);
+					out.writeInt(value.getWidth());
+					out.writeInt(value.getHeight());
+					out.writeFloat(value.noiseEstimate);
+					out.writeFloat(value.blurEstimate);
+					out.write(value.getPixels());
+					writeLut(out, value.getLut());
+				}
+				Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally
+			{
+				Files.deleteIfExists(tempFile);
+			}
+
+			final long size = file.length();
+			files.put(fileName, size);
+			sizeInBytes += size;
+			evict();
+		}
+		catch (IOException e)
+		{
+			System.out.println("Failed to write cached preview " + file + ": " + e);
+		}
+	}
+
+	// Deletes all cached previews.
+	public synchronized void clear()
+	{
+		scanIfNeeded();
+		for (String fileName : files.keySet())
+			new File(dir, fileName).delete();
+		files.clear();
+		sizeInBytes = 0;
+	}
+
+	public synchronized long getSizeInBytes()
+	{
+		scanIfNeeded();
+		return sizeInBytes;
+	}
+
+	public synchronized long getNumHits()
+	{
+		return numHits;
+	}
+
+	public synchronized long getNumMisses()
+	{
+		return numMisses;
+	}
+
+	public synchronized String getStatistics()
+	{
+		scanIfNeeded();
+		return String.format("Preview disk cache: %d previews, %.1f of %.1f MB, %d hits, %d misses (%s)",
+		                     files.size(), sizeInBytes / 1048576.0, capacityInBytes / 1048576.0, numHits, numMisses, dir);
+	}
+
+	// On first use, build the index of the files in the cache folder, least recently used first.
+	private void scanIfNeeded()
+	{
+		if (files != null)
+			return;
+
+		files = new LinkedHashMap<String, Long>(16, 0.75f, true);  // access-ordered
+		sizeInBytes = 0;
+
+		File[] list = dir.listFiles((d, name) -> name.endsWith(EXTENSION));
+		if (list == null)
+			return;  // no cache folder yet
+
+		Arrays.sort(list, Comparator.comparingLong(File::lastModified));
+		for (File file : list)
+		{
+			final long size = file.length();
+			files.put(file.getName(), size);
+			sizeInBytes += size;
+		}
+		evict();
+	}
+
+	private void evict()
+	{
+		Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+		while (sizeInBytes > capacityInBytes && it.hasNext())
+		{
+			Map.Entry<String, Long> eldest = it.next();
+			new File(dir, eldest.getKey()).delete();
+			sizeInBytes -= eldest.getValue();
+			it.remove();
+		}
+	}
+
+	// A lookup table is stored as its size (0 for a grayscale preview) followed by its red, green and blue components.
+	private static void writeLut(DataOutputStream out, IndexColorModel lut) throws IOException
+	{
+		final int size = (lut == null) ? 0 : lut.getMapSize();
+		out.writeShort(size);
+		if (size == 0)
+			return;
+
+		byte[] component = new byte[size];
+		lut.getReds(component);
+		out.write(component);
+		lut.getGreens(component);
+		out.write(component);
+		lut.getBlues(component);
+		out.write(component);
+	}
+
+	private static IndexColorModel readLut(DataInputStream in) throws IOException
+	{
+		final int size = in.readUnsignedShort();
+		if (size == 0)
+			return null;
+		if (size > 256)
+			throw new IOException("Invalid lookup table size " + size);
+
+		byte[] reds = new byte[size];
+		byte[] greens = new byte[size];
+		byte[] blues = new byte[size];
+		in.readFully(reds);
+		in.readFully(greens);
+		in.readFully(blues);
+		return new IndexColorModel(8, size, reds, greens, blues);
+	}
+
+	private void remove(String fileName)
+	{
+		Long size = files.remove(fileName);
+		if (size != null)
+			sizeInBytes -= size;
+		new File(dir, fileName).delete();
+	}
+
+	private static String fileName(String diskKey)
+	{
+		try
+		{
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(diskKey.getBytes("UTF-8")))
+				sb.append(String.format("%02x", b));
+			return sb.append(EXTENSION).toString();
+		}
+		catch (NoSuchAlgorithmException | IOException e)
+		{
+			throw new RuntimeException(e); // every Java platform is required to support SHA-256 and UTF-8
+		}
+	}
+}
@@ -25,7 +25,12 @@ public class DenoiseSwingWorker extends SwingWorker<ImagePlus, Integer>
 	{
 		SwingDenoiseEngine(Algorithm algorithm)
 		{
-			super(algorithm.getDenoiserCopy());
+			super(algorithm);
+			
+			// If the backend can denoise several tiles at once (e.g. on the CPU cores), use parallel workers.
+			// Otherwise (e.g. Quasar) at least overlap tile cropping and stitching with the denoising.
+			boolean concurrent = DenoiseBackends.getBackend(algorithm.getName()).supportsConcurrentDenoising();
+			setMode(concurrent ? Mode.PARALLEL : Mode.PIPELINED);
 		}
 		
 		@Override 
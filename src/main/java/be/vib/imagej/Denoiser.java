@@ -9,12 +9,14 @@ public abstract class Denoiser implements Callable<ImageProcessor>
 	protected ImageProcessor image; // original, noisy source image
 	protected ImageNormalizer normalizer;
 	protected DenoiseParams params;
+	protected DenoiseBackend backend; // the backend this denoiser belongs to; it knows how (e.g. on which thread) the denoiser must be run
 	
-	public Denoiser(DenoiseParams params)
+	public Denoiser(DenoiseParams params, DenoiseBackend backend)
 	{
 		this.image = null;
 		this.normalizer = null;
 		this.params = params;
+		this.backend = backend;
 	}
 	
 	public DenoiseParams getParams()
@@ -22,13 +24,26 @@ public abstract class Denoiser implements Callable<ImageProcessor>
 		return params;
 	}
 	
+	public DenoiseBackend getBackend()
+	{
+		return backend;
+	}
+	
 	public void setImage(ImageProcessor image, ImageNormalizer normalizer)
 	{
 		this.image = image;
 		this.normalizer = normalizer;
 	}
 
-	// Important: call() *must* be run on the Quasar thread!
+	// Returns true if denoising the current image with otherParams (for the same algorithm) gives the same result
+	// as with this denoiser's params, for example because they only differ in a parameter that this implementation
+	// does not use. The preview page uses this to skip prefetching previews that equal the current one.
+	public boolean givesSameResult(DenoiseParams otherParams)
+	{
+		return params.equals(otherParams);
+	}
+
+	// Important: call() *must* be run via getBackend().execute() (for Quasar denoisers this means on the Quasar thread)!
 	// Returns a denoised version of the original image.
 	// Its width and height will be the same as in the original image.
 	@Override
@@ -0,0 +1,257 @@
+package be.vib.imagej;
+
+import java.util.Arrays;
+
+// Pure-Java 2D dual-tree complex wavelet transform, used by the Java wavelet thresholding and BLS-GSM denoisers.
+//
+// The dual-tree transform consists of 4 separable, critically sampled, orthonormal wavelet transforms
+// ("trees"), one for each combination of the two filter banks along the rows and along the columns.
+// The first scale uses Farras' filters, the other scales use Selesnick's dual-tree filters (dualfilt1)
+//   I.W. Selesnick, R.G. Baraniuk, N.G. Kingsbury, "The dual-tree complex wavelet transform",
+//   IEEE Signal Processing Magazine 22(6), 2005.
+// The detail coefficients of the trees (1,1) and (2,2), and of (1,2) and (2,1), combined pairwise
+// (sum and difference, divided by sqrt 2; see rotatePair()) are the real and imaginary parts of the
+// complex wavelet coefficients.
+//
+// Each tree is transformed in place, in the usual Mallat layout: after the transform the top-left
+// (width >> numScales) x (height >> numScales) block holds the low-pass band, the rest are detail bands.
+// Image sizes must be a multiple of 2^numScales (see extend()). The rows and columns are transformed in parallel.
+public class DualTreeWavelet
+{
+	private static final double SQRT1_2 = Math.sqrt(0.5);
+
+	// The tree pairs that form complex coefficients: { { row filter bank, column filter bank } x 2 }
+	public static final int[][][] TREE_PAIRS = { { { 0, 0 }, { 1, 1 } }, { { 0, 1 }, { 1, 0 } } };
+
+	// Low-pass analysis filters of the first scale, for tree 1 and tree 2 (Farras)
+	private static final double[][] FIRST_SCALE_LOWPASS = {
+		{  0.0, -0.08838834764832, 0.08838834764832, 0.69587998903400, 0.69587998903400, 0.08838834764832, -0.08838834764832, 0.01122679215254, 0.01122679215254, 0.0 },
+		{  0.01122679215254, 0.01122679215254, -0.08838834764832, 0.08838834764832, 0.69587998903400, 0.69587998903400, 0.08838834764832, -0.08838834764832, 0.0, 0.0 } };
+
+	// Low-pass analysis filters of the other scales, for tree 1 and tree 2 (Selesnick's dualfilt1)
+	private static final double[][] OTHER_SCALES_LOWPASS = {
+		{ 0.03516384, 0.0, -0.08832942, 0.23389032, 0.76027237, 0.58751830, 0.0, -0.11430184, 0.0, 0.0 },
+		{ 0.0, 0.0, -0.11430184, 0.0, 0.58751830, 0.76027237, 0.23389032, -0.08832942, 0.0, 0.03516384 } };
+
+	// [scale > 0 ? 1 : 0][tree][0 = low-pass, 1 = high-pass]
+	private static final double[][][][] FILTERS = {
+		{ filterBank(FIRST_SCALE_LOWPASS[0]), filterBank(FIRST_SCALE_LOWPASS[1]) },
+		{ filterBank(OTHER_SCALES_LOWPASS[0]), filterBank(OTHER_SCALES_LOWPASS[1]) } };
+
+	private final int numScales;
+
+	public DualTreeWavelet(int numScales)
+	{
+		this.numScales = numScales;
+	}
+
+	public int getNumScales()
+	{
+		return numScales;
+	}
+
+	// Returns n rounded up to a multiple of 2^numScales.
+	public int extendedSize(int n)
+	{
+		final int multiple = 1 << numScales;
+		return (n + multiple - 1) / multiple * multiple;
+	}
+
+	// Returns the image mirror extended to extendedSize(width) x extendedSize(height), with the original image
+	// centered in it (like power_of_two_extension() in the Quasar code).
+	public float[] extend(float[] image, int width, int height)
+	{
+		final int w = extendedSize(width);
+		final int h = extendedSize(height);
+		final int left = (w - width) / 2;
+		final int top = (h - height) / 2;
+
+		float[] extended = new float[w * h];
+		for (int y = 0; y < h; y++)
+		{
+			final int row = ImageUtils.mirrorIndex(y - top, height) * width;
+			for (int x = 0; x < w; x++)
+				extended[y * w + x] = image[row + ImageUtils.mirrorIndex(x - left, width)];
+		}
+		return extended;
+	}
+
+	// Inverse of extend(): returns the width x height center part of the extended image, multiplied by scale.
+	public float[] crop(float[] extended, int width, int height, float scale)
+	{
+		final int w = extendedSize(width);
+		final int h = extendedSize(height);
+		final int left = (w - width) / 2;
+		final int top = (h - height) / 2;
+
+		float[] image = new float[width * height];
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				image[y * width + x] = scale * extended[(y + top) * w + x + left];
+		return image;
+	}
+
+	// Returns the position and size { x, y, width, height } of a detail band in the Mallat layout
+	// of a w x h transform. scale is 0 (finest) .. numScales-1, orientation is 0, 1 or 2
+	// (high-pass along the rows, along the columns, or both).
+	public static int[] bandRectangle(int w, int h, int scale, int orientation)
+	{
+		final int bw = w >> (scale + 1);
+		final int bh = h >> (scale + 1);
+		switch (orientation)
+		{
+			case 0:  return new int[] { bw, 0, bw, bh };
+			case 1:  return new int[] { 0, bh, bw, bh };
+			default: return new int[] { bw, bh, bw, bh };
+		}
+	}
+
+	// Replaces the detail coefficients (a, b) of a tree pair by ((a + b) / sqrt 2, (a - b) / sqrt 2):
+	// the real and imaginary parts of the complex coefficients. Since this is its own inverse,
+	// calling it again restores the tree coefficients.
+	public void rotatePair(final float[] a, final float[] b, final int w, final int h)
+	{
+		final int lowpassWidth = w >> numScales;
+		final int lowpassHeight = h >> numScales;
+
+		ParallelFor.run(h, (start, end) -> {
+			for (int y = start; y < end; y++)
+			{
+				final int firstX = (y < lowpassHeight) ? lowpassWidth : 0;
+				for (int i = y * w + firstX; i < (y + 1) * w; i++)
+				{
+					final float sum = (float)((a[i] + b[i]) * SQRT1_2);
+					final float difference = (float)((a[i] - b[i]) * SQRT1_2);
+					a[i] = sum;
+					b[i] = difference;
+				}
+			}
+		});
+	}
+
+	// In-place forward transform of one tree: numScales levels of separable analysis (rows, then columns)
+	// on the low-pass band of the previous level.
+	public void forward(final float[] data, final int w, final int h, final int rowTree, final int columnTree)
+	{
+		for (int scale = 0; scale < numScales; scale++)
+		{
+			final double[][] rowFilters = FILTERS[Math.min(scale, 1)][rowTree];
+			final double[][] columnFilters = FILTERS[Math.min(scale, 1)][columnTree];
+			final int cw = w >> scale;
+			final int ch = h >> scale;
+
+			ParallelFor.run(ch, (start, end) -> {
+				double[] line = new double[cw];
+				double[] out = new double[cw];
+				for (int y = start; y < end; y++)
+				{
+					for (int x = 0; x < cw; x++)
+						line[x] = data[y * w + x];
+					analyze(line, out, cw, rowFilters);
+					for (int x = 0; x < cw; x++)
+						data[y * w + x] = (float)out[x];
+				}
+			});
+
+			ParallelFor.run(cw, (start, end) -> {
+				double[] line = new double[ch];
+				double[] out = new double[ch];
+				for (int x = start; x < end; x++)
+				{
+					for (int y = 0; y < ch; y++)
+						line[y] = data[y * w + x];
+					analyze(line, out, ch, columnFilters);
+					for (int y = 0; y < ch; y++)
+						data[y * w + x] = (float)out[y];
+				}
+			});
+		}
+	}
+
+	// In-place inverse of forward().
+	public void inverse(final float[] data, final int w, final int h, final int rowTree, final int columnTree)
+	{
+		for (int scale = numScales - 1; scale >= 0; scale--)
+		{
+			final double[][] rowFilters = FILTERS[Math.min(scale, 1)][rowTree];
+			final double[][] columnFilters = FILTERS[Math.min(scale, 1)][columnTree];
+			final int cw = w >> scale;
+			final int ch = h >> scale;
+
+			ParallelFor.run(cw, (start, end) -> {
+				double[] line = new double[ch];
+				double[] out = new double[ch];
+				for (int x = start; x < end; x++)
+				{
+					for (int y = 0; y < ch; y++)
+						line[y] = data[y * w + x];
+					synthesize(line, out, ch, columnFilters);
+					for (int y = 0; y < ch; y++)
+						data[y * w + x] = (float)out[y];
+				}
+			});
+
+			ParallelFor.run(ch, (start, end) -> {
+				double[] line = new double[cw];
+				double[] out = new double[cw];
+				for (int y = start; y < end; y++)
+				{
+					for (int x = 0; x < cw; x++)
+						line[x] = data[y * w + x];
+					synthesize(line, out, cw, rowFilters);
+					for (int x = 0; x < cw; x++)
+						data[y * w + x] = (float)out[x];
+				}
+			});
+		}
+	}
+
+	// One level of periodic orthonormal wavelet analysis of x (length n, even):
+	// low-pass coefficients go to out[0 .. n/2-1], high-pass coefficients to out[n/2 .. n-1].
+	private static void analyze(double[] x, double[] out, int n, double[][] filters)
+	{
+		final double[] lo = filters[0];
+		final double[] hi = filters[1];
+		final int half = n / 2;
+
+		for (int i = 0; i < half; i++)
+		{
+			double l = 0, hh = 0;
+			for (int k = 0; k < lo.length; k++)
+			{
+				final double v = x[(2 * i + k) % n];
+				l += lo[k] * v;
+				hh += hi[k] * v;
+			}
+			out[i] = l;
+			out[half + i] = hh;
+		}
+	}
+
+	// Inverse of analyze(): since the filter bank is orthonormal, synthesis is the adjoint of the analysis.
+	private static void synthesize(double[] coefficients, double[] out, int n, double[][] filters)
+	{
+		final double[] lo = filters[0];
+		final double[] hi = filters[1];
+		final int half = n / 2;
+
+		Arrays.fill(out, 0, n, 0.0);
+		for (int i = 0; i < half; i++)
+		{
+			final double l = coefficients[i];
+			final double hh = coefficients[half + i];
+			for (int k = 0; k < lo.length; k++)
+				out[(2 * i + k) % n] += lo[k] * l + hi[k] * hh;
+		}
+	}
+
+	// Returns { lowpass, highpass } with highpass[k] = (-1)^k lowpass[N-1-k], the orthonormal (quadrature mirror) counterpart.
+	private static double[][] filterBank(double[] lowpass)
+	{
+		final int n = lowpass.length;
+		double[] highpass = new double[n];
+		for (int k = 0; k < n; k++)
+			highpass[k] = ((k % 2 == 0) ? 1 : -1) * lowpass[n - 1 - k];
+		return new double[][] { lowpass, highpass };
+	}
+}
@@ -0,0 +1,446 @@
+package be.vib.imagej;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-place complex FFT of arbitrary length, on separate arrays of real and imaginary parts.
+//
+// Lengths whose prime factors are all small use a mixed-radix Stockham autosort algorithm
+// (decimation in frequency, with specialized radix 2, 3, 4 and 5 butterflies and a generic butterfly
+// for other small primes). Lengths with a large prime factor use Bluestein's algorithm on top of
+// a power-of-two FFT.
+//
+// Plans (factorization, twiddle factors and roots of unity per stage, chirps) are cached per length and can be
+// shared by several threads: use Fft.getPlan(n). The work buffers are kept per thread and only grow, so once a
+// thread has transformed the largest length it needs, its transforms no longer allocate.
+// For 2D transforms of real images see Fft2D.
+public class Fft
+{
+	private static final int MAX_GENERIC_RADIX = 64;  // larger prime factors are handled with Bluestein's algorithm
+
+	private static final int MAX_CACHED_PLANS = 64;
+	private static final ConcurrentHashMap<Integer, Fft> plans = new ConcurrentHashMap<>();
+
+	// Per-thread scratch buffers: { re, im, butterfly re, butterfly im } for the Stockham stages (the last two for
+	// the inputs of a generic radix butterfly), and { re, im } for Bluestein's convolution
+	private static final ThreadLocal<double[][]> stockhamScratch = ThreadLocal.withInitial(() -> new double[][] { new double[0], new double[0], new double[MAX_GENERIC_RADIX], new double[MAX_GENERIC_RADIX] });
+	private static final ThreadLocal<double[][]> bluesteinScratch = ThreadLocal.withInitial(() -> new double[2][0]);
+
+	private final int n;
+
+	// Mixed radix: the radix of each stage, and its twiddle factors w^(p k) (w = exp(-2 pi i / len), with len the
+	// length of the sub-transforms in that stage) for p < len / radix, 0 < k < radix, stored at [p * (radix - 1) + k - 1]
+	private final int[] radices;
+	private final double[][] twiddleRe;
+	private final double[][] twiddleIm;
+	private final double[][] rootsRe;  // for generic radix stages: exp(-2 pi i t / radix), t < radix; null for the other stages
+	private final double[][] rootsIm;
+
+	// Bluestein: chirp w[k] = exp(-i pi k^2 / n), and the FFT of the (conjugate) chirp filter
+	private final Fft pow2;
+	private final double[] chirpRe, chirpIm;
+	private final double[] filterRe, filterIm;
+
+	public static Fft getPlan(int n)
+	{
+		if (plans.size() > MAX_CACHED_PLANS)
+			plans.clear();
+
+		// Not computeIfAbsent(): creating a Bluestein plan recursively requests a power-of-two plan.
+		Fft plan = plans.get(n);
+		if (plan == null)
+		{
+			plan = new Fft(n);
+			Fft existing = plans.putIfAbsent(n, plan);
+			if (existing != null)
+				plan = existing;
+		}
+		return plan;
+	}
+
+	private Fft(int n)
+	{
+		assert(n > 0);
+		this.n = n;
+
+		int[] factors = factorize(n);
+		if (factors != null)
+		{
+			radices = factors;
+			twiddleRe = new double[radices.length][];
+			twiddleIm = new double[radices.length][];
+			rootsRe = new double[radices.length][];
+			rootsIm = new double[radices.length][];
+			int len = n;
+			for (int s = 0; s < radices.length; s++)
+			{
+				final int r = radices[s];
+				final int m = len / r;
+				twiddleRe[s] = new double[m * (r - 1)];
+				twiddleIm[s] = new double[m * (r - 1)];
+				for (int p = 0; p < m; p++)
+					for (int k = 1; k < r; k++)
+					{
+						final double angle = -2 * Math.PI * (((long)p * k) % len) / len;
+						twiddleRe[s][p * (r - 1) + k - 1] = Math.cos(angle);
+						twiddleIm[s][p * (r - 1) + k - 1] = Math.sin(angle);
+					}
+				if (r > 5)
+				{
+					rootsRe[s] = new double[r];
+					rootsIm[s] = new double[r];
+					for (int t = 0; t < r; t++)
+					{
+						rootsRe[s][t] = Math.cos(-2 * Math.PI * t / r);
+						rootsIm[s][t] = Math.sin(-2 * Math.PI * t / r);
+					}
+				}
+				len = m;
+			}
+			pow2 = null;
+			chirpRe = chirpIm = filterRe = filterIm = null;
+		}
+		else
+		{
+			radices = null;
+			twiddleRe = twiddleIm = null;
+			rootsRe = rootsIm = null;
+
+			int m = 1;
+			while (m < 2 * n - 1)
+				m *= 2;
+			pow2 = getPlan(m);
+
+			chirpRe = new double[n];
+			chirpIm = new double[n];
+			for (int k = 0; k < n; k++)
+			{
+				final long k2 = ((long)k * k) % (2L * n);  // keeps the angle accurate for large k
+				final double angle = -Math.PI * k2 / n;
+				chirpRe[k] = Math.cos(angle);
+				chirpIm[k] = Math.sin(angle);
+			}
+
+			filterRe = new double[m];
+			filterIm = new double[m];
+			filterRe[0] = chirpRe[0];
+			filterIm[0] = -chirpIm[0];
+			for (int k = 1; k < n; k++)
+			{
+				filterRe[k] = filterRe[m - k] = chirpRe[k];
+				filterIm[k] = filterIm[m - k] = -chirpIm[k];
+			}
+			pow2.transform(filterRe, filterIm, false);
+		}
+	}
+
+	public int length()
+	{
+		return n;
+	}
+
+	// Computes the (unnormalized) forward FFT, or the inverse FFT without the 1/n factor, of (re, im) in place.
+	public void transform(double[] re, double[] im, boolean inverse)
+	{
+		if (inverse)
+		{
+			// ifft(x) = conj(fft(conj(x)))
+			for (int i = 0; i < n; i++)
+				im[i] = -im[i];
+			transform(re, im, false);
+			for (int i = 0; i < n; i++)
+				im[i] = -im[i];
+		}
+		else if (radices != null)
+		{
+			stockham(re, im);
+		}
+		else
+		{
+			bluestein(re, im);
+		}
+	}
+
+	// Returns the radices (4s first, then 2, 3, 5, 7, ...) whose product is n,
+	// or null if n has a prime factor larger than MAX_GENERIC_RADIX.
+	private static int[] factorize(int n)
+	{
+		List<Integer> factors = new ArrayList<>();
+		while (n % 4 == 0)
+		{
+			factors.add(4);
+			n /= 4;
+		}
+		for (int p = 2; n > 1; p++)
+		{
+			if (p > MAX_GENERIC_RADIX)
+				return null;
+			while (n % p == 0)
+			{
+				factors.add(p);
+				n /= p;
+			}
+		}
+		return factors.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	// Stockham autosort FFT: stage s splits the sub-transforms of length len (there are `stride` interleaved ones)
+	// into radix sub-transforms of length m = len / radix, alternating between (re, im) and the scratch buffers.
+	private void stockham(double[] re, double[] im)
+	{
+		double[][] scratch = stockhamScratch.get();
+		if (scratch[0].length < n)
+		{
+			scratch = new double[][] { new double[n], new double[n], scratch[2], scratch[3] };
+			stockhamScratch.set(scratch);
+		}
+
+		double[] xr = re, xi = im;
+		double[] yr = scratch[0], yi = scratch[1];
+
+		int len = n;
+		int stride = 1;
+		for (int s = 0; s < radices.length; s++)
+		{
+			final int r = radices[s];
+			final int m = len / r;
+			switch (r)
+			{
+				case 2:  radix2(xr, xi, yr, yi, m, stride, twiddleRe[s], twiddleIm[s]); break;
+				case 3:  radix3(xr, xi, yr, yi, m, stride, twiddleRe[s], twiddleIm[s]); break;
+				case 4:  radix4(xr, xi, yr, yi, m, stride, twiddleRe[s], twiddleIm[s]); break;
+				case 5:  radix5(xr, xi, yr, yi, m, stride, twiddleRe[s], twiddleIm[s]); break;
+				default: radixGeneric(r, xr, xi, yr, yi, m, stride, twiddleRe[s], twiddleIm[s], rootsRe[s], rootsIm[s], scratch[2], scratch[3]); break;
+			}
+
+			double[] t = xr; xr = yr; yr = t;
+			t = xi; xi = yi; yi = t;
+			len = m;
+			stride *= r;
+		}
+
+		if (xr != re)
+		{
+			System.arraycopy(xr, 0, re, 0, n);
+			System.arraycopy(xi, 0, im, 0, n);
+		}
+	}
+
+	// In all radix stages: input element j of butterfly (p, q) is x[q + stride (p + j m)],
+	// output element k goes to y[q + stride (radix p + k)], multiplied by the twiddle factor w^(p k).
+
+	private static void radix2(double[] xr, double[] xi, double[] yr, double[] yi, int m, int stride, double[] wr, double[] wi)
+	{
+		for (int p = 0; p < m; p++)
+		{
+			final double w1r = wr[p], w1i = wi[p];
+			for (int q = 0; q < stride; q++)
+			{
+				final int i0 = q + stride * p;
+				final int i1 = i0 + stride * m;
+				final double ar = xr[i0], ai = xi[i0];
+				final double br = xr[i1], bi = xi[i1];
+				final int o = q + stride * 2 * p;
+				yr[o] = ar + br;
+				yi[o] = ai + bi;
+				final double dr = ar - br, di = ai - bi;
+				yr[o + stride] = dr * w1r - di * w1i;
+				yi[o + stride] = dr * w1i + di * w1r;
+			}
+		}
+	}
+
+	private static void radix3(double[] xr, double[] xi, double[] yr, double[] yi, int m, int stride, double[] wr, double[] wi)
+	{
+		final double c = -0.5;
+		final double s = -Math.sqrt(3) / 2;  // sin(-2 pi / 3)
+		for (int p = 0; p < m; p++)
+		{
+			final double w1r = wr[2 * p], w1i = wi[2 * p];
+			final double w2r = wr[2 * p + 1], w2i = wi[2 * p + 1];
+			for (int q = 0; q < stride; q++)
+			{
+				final int i0 = q + stride * p;
+				final int i1 = i0 + stride * m;
+				final int i2 = i1 + stride * m;
+				final double ar = xr[i0], ai = xi[i0];
+				final double sr = xr[i1] + xr[i2], si = xi[i1] + xi[i2];
+				final double dr = xr[i1] - xr[i2], di = xi[i1] - xi[i2];
+				final double tr = ar + c * sr, ti = ai + c * si;
+				final double ur = -s * di, ui = s * dr;   // i s (x1 - x2)
+				final int o = q + stride * 3 * p;
+				yr[o] = ar + sr;
+				yi[o] = ai + si;
+				final double y1r = tr + ur, y1i = ti + ui;
+				final double y2r = tr - ur, y2i = ti - ui;
+				yr[o + stride] = y1r * w1r - y1i * w1i;
+				yi[o + stride] = y1r * w1i + y1i * w1r;
+				yr[o + 2 * stride] = y2r * w2r - y2i * w2i;
+				yi[o + 2 * stride] = y2r * w2i + y2i * w2r;
+			}
+		}
+	}
+
+	private static void radix4(double[] xr, double[] xi, double[] yr, double[] yi, int m, int stride, double[] wr, double[] wi)
+	{
+		for (int p = 0; p < m; p++)
+		{
+			final double w1r = wr[3 * p], w1i = wi[3 * p];
+			final double w2r = wr[3 * p + 1], w2i = wi[3 * p + 1];
+			final double w3r = wr[3 * p + 2], w3i = wi[3 * p + 2];
+			for (int q = 0; q < stride; q++)
+			{
+				final int i0 = q + stride * p;
+				final int i1 = i0 + stride * m;
+				final int i2 = i1 + stride * m;
+				final int i3 = i2 + stride * m;
+				final double s02r = xr[i0] + xr[i2], s02i = xi[i0] + xi[i2];
+				final double d02r = xr[i0] - xr[i2], d02i = xi[i0] - xi[i2];
+				final double s13r = xr[i1] + xr[i3], s13i = xi[i1] + xi[i3];
+				final double d13r = xr[i1] - xr[i3], d13i = xi[i1] - xi[i3];
+				final int o = q + stride * 4 * p;
+				yr[o] = s02r + s13r;
+				yi[o] = s02i + s13i;
+				// y1 = d02 - i d13, y2 = s02 - s13, y3 = d02 + i d13
+				final double y1r = d02r + d13i, y1i = d02i - d13r;
+				final double y2r = s02r - s13r, y2i = s02i - s13i;
+				final double y3r = d02r - d13i, y3i = d02i + d13r;
+				yr[o + stride] = y1r * w1r - y1i * w1i;
+				yi[o + stride] = y1r * w1i + y1i * w1r;
+				yr[o + 2 * stride] = y2r * w2r - y2i * w2i;
+				yi[o + 2 * stride] = y2r * w2i + y2i * w2r;
+				yr[o + 3 * stride] = y3r * w3r - y3i * w3i;
+				yi[o + 3 * stride] = y3r * w3i + y3i * w3r;
+			}
+		}
+	}
+
+	private static void radix5(double[] xr, double[] xi, double[] yr, double[] yi, int m, int stride, double[] wr, double[] wi)
+	{
+		final double c1 = Math.cos(2 * Math.PI / 5), c2 = Math.cos(4 * Math.PI / 5);
+		final double s1 = -Math.sin(2 * Math.PI / 5), s2 = -Math.sin(4 * Math.PI / 5);
+		for (int p = 0; p < m; p++)
+		{
+			for (int q = 0; q < stride; q++)
+			{
+				final int i0 = q + stride * p;
+				final int i1 = i0 + stride * m;
+				final int i2 = i1 + stride * m;
+				final int i3 = i2 + stride * m;
+				final int i4 = i3 + stride * m;
+				final double ar = xr[i0], ai = xi[i0];
+				final double s14r = xr[i1] + xr[i4], s14i = xi[i1] + xi[i4];
+				final double d14r = xr[i1] - xr[i4], d14i = xi[i1] - xi[i4];
+				final double s23r = xr[i2] + xr[i3], s23i = xi[i2] + xi[i3];
+				final double d23r = xr[i2] - xr[i3], d23i = xi[i2] - xi[i3];
+
+				final double t1r = ar + c1 * s14r + c2 * s23r, t1i = ai + c1 * s14i + c2 * s23i;
+				final double t2r = ar + c2 * s14r + c1 * s23r, t2i = ai + c2 * s14i + c1 * s23i;
+				// i (s1 d14 + s2 d23) and i (s2 d14 - s1 d23)
+				final double u1r = -(s1 * d14i + s2 * d23i), u1i = s1 * d14r + s2 * d23r;
+				final double u2r = -(s2 * d14i - s1 * d23i), u2i = s2 * d14r - s1 * d23r;
+
+				final int o = q + stride * 5 * p;
+				yr[o] = ar + s14r + s23r;
+				yi[o] = ai + s14i + s23i;
+				twiddle(yr, yi, o + stride, t1r + u1r, t1i + u1i, wr[4 * p], wi[4 * p]);
+				twiddle(yr, yi, o + 2 * stride, t2r + u2r, t2i + u2i, wr[4 * p + 1], wi[4 * p + 1]);
+				twiddle(yr, yi, o + 3 * stride, t2r - u2r, t2i - u2i, wr[4 * p + 2], wi[4 * p + 2]);
+				twiddle(yr, yi, o + 4 * stride, t1r - u1r, t1i - u1i, wr[4 * p + 3], wi[4 * p + 3]);
+			}
+		}
+	}
+
+	// Generic radix r butterfly: a direct DFT of length r (O(r^2)), for small prime radices.
+	// cos, sin are the real and imaginary parts of the r-th roots of unity; ar, ai are scratch buffers of at least r elements.
+	private static void radixGeneric(int r, double[] xr, double[] xi, double[] yr, double[] yi, int m, int stride, double[] wr, double[] wi,
+	                                 double[] cos, double[] sin, double[] ar, double[] ai)
+	{
+		for (int p = 0; p < m; p++)
+		{
+			for (int q = 0; q < stride; q++)
+			{
+				for (int j = 0; j < r; j++)
+				{
+					ar[j] = xr[q + stride * (p + j * m)];
+					ai[j] = xi[q + stride * (p + j * m)];
+				}
+
+				final int o = q + stride * r * p;
+				for (int k = 0; k < r; k++)
+				{
+					double sr = 0, si = 0;
+					for (int j = 0, t = 0; j < r; j++)
+					{
+						sr += ar[j] * cos[t] - ai[j] * sin[t];
+						si += ar[j] * sin[t] + ai[j] * cos[t];
+						t += k;
+						if (t >= r)
+							t -= r;
+					}
+					if (k == 0)
+					{
+						yr[o] = sr;
+						yi[o] = si;
+					}
+					else
+					{
+						twiddle(yr, yi, o + k * stride, sr, si, wr[p * (r - 1) + k - 1], wi[p * (r - 1) + k - 1]);
+					}
+				}
+			}
+		}
+	}
+
+	// y[o] = (ar + i ai) (wr + i wi)
+	private static void twiddle(double[] yr, double[] yi, int o, double ar, double ai, double wr, double wi)
+	{
+		yr[o] = ar * wr - ai * wi;
+		yi[o] = ar * wi + ai * wr;
+	}
+
+	private void bluestein(double[] re, double[] im)
+	{
+		final int m = pow2.length();
+		double[][] scratch = bluesteinScratch.get();
+		if (scratch[0].length < m)
+		{
+			scratch = new double[][] { new double[m], new double[m] };
+			bluesteinScratch.set(scratch);
+		}
+		final double[] aRe = scratch[0];
+		final double[] aIm = scratch[1];
+
+		for (int k = 0; k < n; k++)
+		{
+			aRe[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+			aIm[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+		}
+		for (int k = n; k < m; k++)
+		{
+			aRe[k] = 0;
+			aIm[k] = 0;
+		}
+
+		pow2.transform(aRe, aIm, false);
+
+		for (int k = 0; k < m; k++)
+		{
+			final double r = aRe[k] * filterRe[k] - aIm[k] * filterIm[k];
+			final double i = aRe[k] * filterIm[k] + aIm[k] * filterRe[k];
+			aRe[k] = r;
+			aIm[k] = i;
+		}
+
+		pow2.transform(aRe, aIm, true);
+
+		for (int k = 0; k < n; k++)
+		{
+			final double r = aRe[k] / m;
+			final double i = aIm[k] / m;
+			re[k] = r * chirpRe[k] - i * chirpIm[k];
+			im[k] = r * chirpIm[k] + i * chirpRe[k];
+		}
+	}
+}
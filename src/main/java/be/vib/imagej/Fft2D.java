@@ -0,0 +1,168 @@
+package be.vib.imagej;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// 2D FFT of real images: the forward transform returns the non-redundant half of the (Hermitian symmetric)
+// spectrum, spectrumWidth() = width / 2 + 1 columns by height rows, in separate row-major arrays of
+// real and imaginary parts; the inverse transform maps such a half spectrum back to a real image.
+//
+// The row transforms handle two real rows with one complex FFT (one row as the real part, the other as
+// the imaginary part, separated afterwards using the symmetry of real spectra), so only half of the complex
+// row FFTs are needed. The row and column passes run in parallel on the fork-join pool; the 1D transforms
+// are mixed-radix FFTs (see Fft) that work in place with per-thread scratch buffers.
+//
+// Plans are cached per image size (use Fft2D.getPlan(width, height)) and can be shared between threads.
+//
+// Note: none of the filters uses Fft2D yet. The Java Tikhonov and non-local means deconvolution assume mirror
+// boundaries, which the DCT diagonalizes (see Dct2D), and blur with a small separable kernel, for which spatial
+// filtering is cheaper. Fft2D is meant for future Fourier-domain filters with periodic boundaries or large kernels.
+// Its correctness is checked by Fft2DCheck.
+public class Fft2D
+{
+	private static final int MAX_CACHED_PLANS = 64;
+	private static final ConcurrentHashMap<Long, Fft2D> plans = new ConcurrentHashMap<>();
+
+	private final int width;
+	private final int height;
+	private final int spectrumWidth;
+	private final Fft rowFft;
+	private final Fft columnFft;
+
+	public static Fft2D getPlan(int width, int height)
+	{
+		if (plans.size() > MAX_CACHED_PLANS)
+			plans.clear();
+
+		return plans.computeIfAbsent(((long)width << 32) | height, key -> new Fft2D(width, height));
+	}
+
+	private Fft2D(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		this.spectrumWidth = width / 2 + 1;
+		this.rowFft = Fft.getPlan(width);
+		this.columnFft = Fft.getPlan(height);
+	}
+
+	public int spectrumWidth()
+	{
+		return spectrumWidth;
+	}
+
+	// Size of the re and im arrays of a half spectrum
+	public int spectrumSize()
+	{
+		return spectrumWidth * height;
+	}
+
+	// Forward (unnormalized) FFT of the width x height real image into the half spectrum (re, im).
+	public void forward(final float[] image, final double[] re, final double[] im)
+	{
+		assert(image.length == width * height && re.length >= spectrumSize() && im.length >= spectrumSize());
+
+		// Rows, two at a time
+		ParallelFor.run((height + 1) / 2, (start, end) -> {
+			double[] zr = new double[width];
+			double[] zi = new double[width];
+			for (int pair = start; pair < end; pair++)
+			{
+				final int a = 2 * pair;
+				final int b = a + 1;
+				for (int x = 0; x < width; x++)
+				{
+					zr[x] = image[a * width + x];
+					zi[x] = (b < height) ? image[b * width + x] : 0;
+				}
+
+				rowFft.transform(zr, zi, false);
+
+				// Z = A + i B with A, B the spectra of the real rows a and b:
+				// A[k] = (Z[k] + conj(Z[-k])) / 2,  B[k] = (Z[k] - conj(Z[-k])) / 2i
+				for (int k = 0; k < spectrumWidth; k++)
+				{
+					final int nk = (k == 0) ? 0 : width - k;
+					re[a * spectrumWidth + k] = 0.5 * (zr[k] + zr[nk]);
+					im[a * spectrumWidth + k] = 0.5 * (zi[k] - zi[nk]);
+					if (b < height)
+					{
+						re[b * spectrumWidth + k] = 0.5 * (zi[k] + zi[nk]);
+						im[b * spectrumWidth + k] = -0.5 * (zr[k] - zr[nk]);
+					}
+				}
+			}
+		});
+
+		columns(re, im, false);
+	}
+
+	// Inverse of forward(), including the 1 / (width height) normalization.
+	// The half spectrum (re, im) is used as scratch space and overwritten.
+	public void inverse(final double[] re, final double[] im, final float[] image)
+	{
+		assert(image.length == width * height && re.length >= spectrumSize() && im.length >= spectrumSize());
+
+		columns(re, im, true);
+
+		final double scale = 1.0 / ((double)width * height);
+
+		// Rows, two at a time: Z = A + i B, with the full spectra of rows a and b recovered from their halves
+		// (X[-k] = conj(X[k])), transforms back to z = a + i b.
+		ParallelFor.run((height + 1) / 2, (start, end) -> {
+			double[] zr = new double[width];
+			double[] zi = new double[width];
+			for (int pair = start; pair < end; pair++)
+			{
+				final int a = 2 * pair;
+				final int b = a + 1;
+				for (int k = 0; k < width; k++)
+				{
+					final boolean lower = (k < spectrumWidth);
+					final int h = lower ? k : width - k;
+					final double sign = lower ? 1 : -1;  // conjugate for the upper half
+
+					final double ar = re[a * spectrumWidth + h];
+					final double ai = sign * im[a * spectrumWidth + h];
+					final double br = (b < height) ? re[b * spectrumWidth + h] : 0;
+					final double bi = (b < height) ? sign * im[b * spectrumWidth + h] : 0;
+					zr[k] = ar - bi;
+					zi[k] = ai + br;
+				}
+
+				rowFft.transform(zr, zi, true);
+
+				for (int x = 0; x < width; x++)
+				{
+					image[a * width + x] = (float)(zr[x] * scale);
+					if (b < height)
+						image[b * width + x] = (float)(zi[x] * scale);
+				}
+			}
+		});
+	}
+
+	// In-place 1D FFTs of the spectrumWidth columns of the half spectrum.
+	private void columns(final double[] re, final double[] im, final boolean inverse)
+	{
+		ParallelFor.run(spectrumWidth, (start, end) -> {
+			double[] cr = new double[height];
+			double[] ci = new double[height];
+			for (int x = start; x < end; x++)
+			{
+				for (int y = 0; y < height; y++)
+				{
+					cr[y] = re[y * spectrumWidth + x];
+					ci[y] = im[y * spectrumWidth + x];
+				}
+
+				columnFft.transform(cr, ci, inverse);
+
+				for (int y = 0; y < height; y++)
+				{
+					re[y * spectrumWidth + x] = cr[y];
+					im[y * spectrumWidth + x] = ci[y];
+				}
+			}
+		});
+	}
+}
@@ -30,12 +30,6 @@ public class GaussianAlgorithm extends Algorithm
 	    return new GaussianParams(params);
 	}
 	
-	@Override
-	public Denoiser getDenoiserCopy()
-	{
-		return new GaussianDenoiser(new GaussianParams(params));
-	}
-
 	@Override
     public DenoiseParamsPanelBase getPanel()
     {
@@ -8,31 +8,30 @@ public class GaussianDenoiser extends Denoiser
 {
 	public GaussianDenoiser(GaussianParams params)
 	{
-		super(params);
+		super(params, QuasarBackend.getInstance());
 	}
 	
 	@Override
 	public ImageProcessor call()
 	{		
-		QFunction gaussian = new QFunction("gaussian_filter(mat,scalar,int,string)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction gaussian = registry.function("gaussian_filter(mat,scalar,int,string)");
 		
 		final boolean byteRange = false; // normalize to/from [0,1]
 		
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-		
-		GaussianParams params = (GaussianParams)this.params;
-
-		QValue denoisedImageCube = gaussian.apply(noisyImageCube,
-							                      new QValue(params.sigma),
-							                      new QValue(0),
-							                      new QValue("mirror"));
-		
-		noisyImageCube.dispose();
-
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-		
-		denoisedImageCube.dispose();
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
+			
+			GaussianParams params = (GaussianParams)this.params;
 
-		return denoisedImage;
+			QValue denoisedImageCube = arena.apply(gaussian,
+			                                       noisyImageCube,
+			                                       arena.value(params.sigma),
+			                                       arena.value(0),
+			                                       arena.value("mirror"));
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 }
@@ -0,0 +1,222 @@
+package be.vib.imagej;
+
+// Pure-Java 2D Gaussian low-pass filter with mirror boundary handling, equivalent to Quasar's
+// gaussian_filter(img, sigma, 0, "mirror").
+//
+// The filter is separable: first all rows are filtered, then all columns.
+// For sigma >= RECURSIVE_SIGMA_MIN the 1D filtering uses the third order recursive (IIR) approximation
+// of the Gaussian by Young and van Vliet:
+//   I.T. Young, L.J. van Vliet, "Recursive implementation of the Gaussian filter",
+//   Signal Processing 44 (1995), pp. 139-151.
+// Its cost per pixel is independent of sigma. For smaller sigmas, where the recursive approximation
+// is less accurate, a direct convolution with the sampled Gaussian is used instead; its kernel then
+// has at most 2 * ceil(3 * RECURSIVE_SIGMA_MIN) + 1 taps, so the cost per pixel is bounded as well.
+//
+// Boundaries are handled by mirroring the image (half-sample symmetric: pixel -1 is pixel 0, -2 is 1, ...).
+// Rows are filtered in parallel, and columns are filtered in parallel strips of adjacent columns
+// so that the column pass also walks through memory row by row.
+public class GaussianFilter
+{
+	private static final float RECURSIVE_SIGMA_MIN = 3.0f;
+	private static final int COLUMN_STRIP_WIDTH = 64;
+
+	private final float sigma;
+
+	// Coefficients of the recursive filter (only used if sigma >= RECURSIVE_SIGMA_MIN)
+	private final float B, b1, b2, b3;
+	private final int pad;  // number of mirrored samples added on each side to let the recursive filter settle
+
+	// The normalized 1D kernel for direct convolution (only used for small sigmas, or for a fixed kernel size)
+	private final float[] kernel;
+
+	public GaussianFilter(float sigma)
+	{
+		assert(sigma > 0);
+		this.sigma = sigma;
+
+		if (sigma >= RECURSIVE_SIGMA_MIN)
+		{
+			final double q = 0.98711 * sigma - 0.96330;  // Young and van Vliet's q for sigma >= 2.5
+			final double q2 = q * q;
+			final double q3 = q2 * q;
+			final double b0 = 1.57825 + 2.44413 * q + 1.4281 * q2 + 0.422205 * q3;
+			b1 = (float)((2.44413 * q + 2.85619 * q2 + 1.26661 * q3) / b0);
+			b2 = (float)(-(1.4281 * q2 + 1.26661 * q3) / b0);
+			b3 = (float)(0.422205 * q3 / b0);
+			B = 1.0f - (b1 + b2 + b3);
+			pad = (int)Math.ceil(4 * sigma) + 3;
+			kernel = null;
+		}
+		else
+		{
+			B = b1 = b2 = b3 = 0;
+			pad = 0;
+			kernel = sampledGaussian(sigma, (int)Math.ceil(3 * sigma));
+		}
+	}
+
+	// Creates a filter that convolves with the normalized, sampled Gaussian of kernelSize x kernelSize pixels
+	// (kernelSize odd), like the blur kernel fgaussian(kernelSize, sigma) of the Quasar deconvolution code.
+	public GaussianFilter(int kernelSize, float sigma)
+	{
+		assert(kernelSize % 2 == 1 && sigma > 0);
+		this.sigma = sigma;
+		B = b1 = b2 = b3 = 0;
+		pad = 0;
+		kernel = sampledGaussian(sigma, kernelSize / 2);
+	}
+
+	// Returns the normalized 1D kernel if the filter is a direct convolution, or null if it is recursive.
+	float[] getKernel()
+	{
+		return kernel;
+	}
+
+	private boolean isRecursive()
+	{
+		return kernel == null;
+	}
+
+	private static float[] sampledGaussian(float sigma, int radius)
+	{
+		radius = Math.max(1, radius);
+		float[] k = new float[2 * radius + 1];
+		double sum = 0;
+		for (int i = -radius; i <= radius; i++)
+		{
+			k[i + radius] = (float)Math.exp(-(i * i) / (2.0 * sigma * sigma));
+			sum += k[i + radius];
+		}
+		for (int i = 0; i < k.length; i++)
+			k[i] /= sum;
+		return k;
+	}
+
+	// Filters the width x height image in (row-major) and stores the result in out.
+	// in and out may be the same array.
+	public void filter(float[] in, float[] out, int width, int height)
+	{
+		// Horizontal pass, in parallel over the rows
+		ParallelFor.run(height, (start, end) -> {
+			float[] src = new float[width + 2 * Math.max(pad, kernelRadius())];
+			float[] dst = new float[src.length];
+			for (int y = start; y < end; y++)
+				filterLine(in, y * width, 1, width, out, src, dst);
+		});
+
+		// Vertical pass, in parallel over strips of columns
+		final int numStrips = (width + COLUMN_STRIP_WIDTH - 1) / COLUMN_STRIP_WIDTH;
+		ParallelFor.run(numStrips, 1, (start, end) -> {
+			float[] src = new float[(height + 2 * Math.max(pad, kernelRadius())) * COLUMN_STRIP_WIDTH];
+			float[] dst = new float[src.length];
+			for (int strip = start; strip < end; strip++)
+			{
+				final int x0 = strip * COLUMN_STRIP_WIDTH;
+				final int stripWidth = Math.min(COLUMN_STRIP_WIDTH, width - x0);
+				filterColumns(out, x0, stripWidth, width, height, src, dst);
+			}
+		});
+	}
+
+	public float[] filter(float[] in, int width, int height)
+	{
+		float[] out = new float[in.length];
+		filter(in, out, width, height);
+		return out;
+	}
+
+	private int kernelRadius()
+	{
+		return (kernel != null) ? kernel.length / 2 : 0;
+	}
+
+	// Filters the n samples in[offset + i * stride] into out[offset + i * stride].
+	// src and dst are scratch buffers of sufficient length.
+	private void filterLine(float[] in, int offset, int stride, int n, float[] out, float[] src, float[] dst)
+	{
+		final int ext = isRecursive() ? pad : kernelRadius();
+		final int len = n + 2 * ext;
+
+		for (int i = 0; i < len; i++)
+			src[i] = in[offset + ImageUtils.mirrorIndex(i - ext, n) * stride];
+
+		if (isRecursive())
+		{
+			recursive(src, dst, len, 1);
+			for (int i = 0; i < n; i++)
+				out[offset + i * stride] = dst[i + ext];
+		}
+		else
+		{
+			for (int i = 0; i < n; i++)
+			{
+				float sum = 0;
+				for (int k = 0; k < kernel.length; k++)
+					sum += kernel[k] * src[i + k];
+				out[offset + i * stride] = sum;
+			}
+		}
+	}
+
+	// Filters the columns x0 .. x0+stripWidth-1 of the image in place, processing the
+	// (mirror extended) columns of the strip simultaneously, row by row.
+	private void filterColumns(float[] image, int x0, int stripWidth, int width, int height, float[] src, float[] dst)
+	{
+		final int ext = isRecursive() ? pad : kernelRadius();
+		final int len = height + 2 * ext;
+
+		for (int i = 0; i < len; i++)
+			System.arraycopy(image, ImageUtils.mirrorIndex(i - ext, height) * width + x0, src, i * stripWidth, stripWidth);
+
+		if (isRecursive())
+		{
+			recursive(src, dst, len, stripWidth);
+			for (int y = 0; y < height; y++)
+				System.arraycopy(dst, (y + ext) * stripWidth, image, y * width + x0, stripWidth);
+		}
+		else
+		{
+			for (int y = 0; y < height; y++)
+			{
+				final int o = y * width + x0;
+				for (int x = 0; x < stripWidth; x++)
+					image[o + x] = 0;
+				for (int k = 0; k < kernel.length; k++)
+				{
+					final float c = kernel[k];
+					final int s = (y + k) * stripWidth;
+					for (int x = 0; x < stripWidth; x++)
+						image[o + x] += c * src[s + x];
+				}
+			}
+		}
+	}
+
+	// Runs the causal and anti-causal recursive filters over 'channels' interleaved signals of length len:
+	// sample i of signal c is at index i * channels + c. The result is stored in dst.
+	private void recursive(float[] src, float[] dst, int len, int channels)
+	{
+		// Causal pass, initialized with the steady state response to the first sample
+		for (int c = 0; c < channels; c++)
+		{
+			final float v = src[c];
+			dst[c] = v;
+			if (len > 1) dst[channels + c] = v;
+			if (len > 2) dst[2 * channels + c] = v;
+		}
+		for (int i = 3; i < len; i++)
+		{
+			final int o = i * channels;
+			for (int c = 0; c < channels; c++)
+				dst[o + c] = B * src[o + c] + b1 * dst[o - channels + c] + b2 * dst[o - 2 * channels + c] + b3 * dst[o - 3 * channels + c];
+		}
+
+		// Anti-causal pass, in place, initialized with the steady state response to the last sample
+		for (int i = len - 4; i >= 0; i--)
+		{
+			final int o = i * channels;
+			for (int c = 0; c < channels; c++)
+				dst[o + c] = B * dst[o + c] + b1 * dst[o + channels + c] + b2 * dst[o + 2 * channels + c] + b3 * dst[o + 3 * channels + c];
+		}
+	}
+}
@@ -29,6 +29,7 @@ class GaussianParamsPanel extends DenoiseParamsPanelBase
 		sigmaPair = new SliderFieldPair(0, 100, floatFormat, params.sigmaMin, params.sigmaMax);
 		sigmaPair.setValue(params.sigma);
 		sigmaPair.addPropertyChangeListener(e -> { params.sigma = sigmaPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(sigmaPair, value -> { GaussianParams p = new GaussianParams(params); p.sigma = value; return p; });
 		
 		JSlider sigmaSlider = sigmaPair.getSlider();
 		
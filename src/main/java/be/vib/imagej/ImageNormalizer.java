@@ -109,7 +109,9 @@ public class ImageNormalizer
 				QUtils.inplaceDivide(cube, ((float)(hiPercentile - loPercentile)) / 255.0f);
 				QValue lo = new QValue(0.0f);
 				QValue hi = new QValue(255.0f);
-				QUtils.inplaceClamp(cube, lo, hi);	
+				QUtils.inplaceClamp(cube, lo, hi);
+				lo.dispose();
+				hi.dispose();	
 			}
 			else
 			{
@@ -119,6 +121,8 @@ public class ImageNormalizer
 				QValue lo = new QValue(0.0f);
 				QValue hi = new QValue(1.0f);
 				QUtils.inplaceClamp(cube, lo, hi);
+				lo.dispose();
+				hi.dispose();
 			}
 		}
 
@@ -162,4 +166,57 @@ public class ImageNormalizer
 		ImageProcessor denormalizedIp = ImageUtils.newImageFromCube(ip, cube);  // note: newImageFromCube() also clips cube values to the allowed 8-bit or 16-bit pixel values
 		return denormalizedIp;
 	}
+	
+	// Same as normalize(), but returns the normalized pixels as a Java float array instead of a Quasar cube.
+	// Used by the pure-Java denoising backend.
+	public float[] normalizeToArray(ImageProcessor ip, boolean toByteRange)  // if toByteRange==true then normalize to [0,255] otherwise to [0,1]
+	{
+		float[] pixels = ImageUtils.newFloatArrayFromImage(ip);
+		
+		if (imageIs8Bit)  // original image is 8-bit/pixel
+		{
+			if (!toByteRange)
+			{
+				// normalize from [0,255] to [0,1]
+				for (int i = 0; i < pixels.length; i++)
+					pixels[i] /= 255.0f;
+			}
+		}
+		else // original image is 16-bit/pixel
+		{
+			// normalize from 16-bit [lo,hi] to [0,255] or [0,1]
+			final float lo = loPercentile;
+			final float scale = toByteRange ? ((float)(hiPercentile - loPercentile)) / 255.0f : (float)(hiPercentile - loPercentile);
+			final float max = toByteRange ? 255.0f : 1.0f;
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] = Math.min(Math.max((pixels[i] - lo) / scale, 0.0f), max);
+		}
+		
+		return pixels;
+	}
+	
+	// Same as denormalize(), but for normalized pixels in a Java float array instead of a Quasar cube.
+	// Note: the pixels array is modified.
+	public ImageProcessor denormalize(ImageProcessor ip, float[] pixels, boolean fromByteRange)  // if fromByteRange==true, then denormalize from [0,255] otherwise from [0,1]
+	{
+		if (imageIs8Bit) // original image is 8-bit/pixel
+		{
+			if (!fromByteRange)
+			{
+				// denormalize from [0,1] to [0,255]
+				for (int i = 0; i < pixels.length; i++)
+					pixels[i] *= 255.0f;
+			}
+		}
+		else // original image is 16-bit/pixel
+		{
+			// denormalize from [0,255] or [0,1] to 16-bit [lo,hi]
+			final float lo = loPercentile;
+			final float scale = fromByteRange ? ((float)(hiPercentile - loPercentile)) / 255.0f : (float)(hiPercentile - loPercentile);
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] = pixels[i] * scale + lo;
+		}
+		
+		return ImageUtils.newImageFromFloatArray(ip, pixels);  // note: this also clips the values to the allowed 8-bit or 16-bit pixel values
+	}
 }
\ No newline at end of file
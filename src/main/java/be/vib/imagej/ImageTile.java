@@ -75,5 +75,13 @@ public class ImageTile
 	public ImageProcessor getImageWithMargins()
 	{
 		return tileImp;
-	}	
+	}
+
+	// Takes a processed (e.g. denoised) version of this tile, with the same size as the tile with margins,
+	// and returns a copy of it with the margins removed.
+	public ImageProcessor removeMargins(ImageProcessor processedTileWithMargins)
+	{
+		processedTileWithMargins.setRoi(leftMargin, topMargin, getWidthWithoutMargins(), getHeightWithoutMargins());
+		return processedTileWithMargins.crop();
+	}
 }
@@ -32,11 +32,31 @@ public class ImageTiler implements Iterable<ImageTile>
 	// Predicts the number of tiles that will be returned by the TilesIterator
 	public int getNumTiles()
 	{
-		int rows = (image.getHeight() + tileHeightWithoutMargins - 1 ) / tileHeightWithoutMargins;
-		int cols = (image.getWidth() + tileWidthWithoutMargins - 1 ) / tileWidthWithoutMargins;
+		return getNumTiles(image.getWidth(), image.getHeight(), tileWidthWithoutMargins, tileHeightWithoutMargins);
+	}
+	
+	// Predicts the number of tiles for an image of the given size, without the need for the image itself
+	public static int getNumTiles(int imageWidth, int imageHeight, int tileWidthWithoutMargins, int tileHeightWithoutMargins)
+	{
+		int rows = (imageHeight + tileHeightWithoutMargins - 1 ) / tileHeightWithoutMargins;
+		int cols = (imageWidth + tileWidthWithoutMargins - 1 ) / tileWidthWithoutMargins;
 		return rows * cols;
 	}
 	
+	// Returns the tile with the given index. Tiles are numbered in the order in which the TilesIterator
+	// returns them: left to right, top to bottom. Useful for handing out tiles in arbitrary order.
+	// Note: creating a tile temporarily changes the ROI of the image, so tiles of the same image
+	// must not be created concurrently.
+	public ImageTile getTile(int tileIndex)
+	{
+		assert(tileIndex >= 0 && tileIndex < getNumTiles());
+
+		int cols = (image.getWidth() + tileWidthWithoutMargins - 1 ) / tileWidthWithoutMargins;
+		int x = (tileIndex % cols) * tileWidthWithoutMargins;
+		int y = (tileIndex / cols) * tileHeightWithoutMargins;
+		return new ImageTile(image, x, y, tileWidthWithoutMargins, tileHeightWithoutMargins, margin);
+	}
+
 	private class TilesIterator implements Iterator<ImageTile>
 	{
 		// Position of top left corner of the tile (without margins) with respect to the top left corner of the image it is a tile of.
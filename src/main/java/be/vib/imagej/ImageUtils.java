@@ -160,6 +160,106 @@ public class ImageUtils
 		}
 	}
 
+	/**
+	 * Returns the pixels of the given 8 or 16 bit/pixel grayscale image as a new float array,
+	 * in row-major order. The pixel values are not rescaled.
+	 */
+	public static float[] newFloatArrayFromImage(ImageProcessor image)
+	{
+		final int numPixels = image.getWidth() * image.getHeight();
+		float[] floats = new float[numPixels];
+		
+		if (image instanceof ByteProcessor)
+		{
+			byte[] pixels = (byte[])image.getPixels();
+			for (int i = 0; i < numPixels; i++)
+				floats[i] = pixels[i] & 0xff;
+		}
+		else if (image instanceof ShortProcessor)
+		{
+			short[] pixels = (short[])image.getPixels();
+			for (int i = 0; i < numPixels; i++)
+				floats[i] = pixels[i] & 0xffff;
+		}
+		else
+		{
+			throw new RuntimeException("Only 8 bit/pixel and 16 bit/pixel grayscale images are supported.");
+		}
+		
+		return floats;
+	}
+	
+	/**
+	 * Returns a new image of the same type and size as the given image, with the given float pixel values.
+	 * The values are rounded and clipped to the range of 8 or 16 bit pixels.
+	 */
+	public static ImageProcessor newImageFromFloatArray(ImageProcessor image, float[] floats)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		
+		if (image instanceof ByteProcessor)
+		{
+			byte[] pixels = new byte[width * height];
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] = (byte)clip(floats[i], 255);
+			return new ByteProcessor(width, height, pixels);
+		}
+		else if (image instanceof ShortProcessor)
+		{
+			short[] pixels = new short[width * height];
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] = (short)clip(floats[i], 65535);
+			return new ShortProcessor(width, height, pixels, null);
+		}
+		else
+		{
+			throw new RuntimeException("Only 8 bit/pixel and 16 bit/pixel grayscale images are supported.");
+		}
+	}
+	
+	private static int clip(float value, int max)
+	{
+		if (!(value > 0.0f))  // also maps NaN to 0
+			return 0;
+		return Math.min(Math.round(value), max);
+	}
+
+	/**
+	 * Returns the index of the sample that position i maps to, for a signal of length n that is
+	 * mirrored at its boundaries, half-sample symmetric: the edge sample is repeated, so -1 maps to 0, -2 to 1,
+	 * n to n-1, n+1 to n-2, ...
+	 * This is the "mirror" boundary extension of the Quasar code.
+	 */
+	public static int mirrorIndex(int i, int n)
+	{
+		final int period = 2 * n;
+		i = i % period;
+		if (i < 0)
+			i += period;
+		return (i < n) ? i : period - 1 - i;
+	}
+	
+	/**
+	 * Returns a copy of the given width x height row-major pixel array, extended with a mirrored border
+	 * of the given size on each side.
+	 */
+	public static float[] mirrorExtend(float[] pixels, int width, int height, int border)
+	{
+		final int extWidth = width + 2 * border;
+		final int extHeight = height + 2 * border;
+		float[] extended = new float[extWidth * extHeight];
+		
+		for (int y = 0; y < extHeight; y++)
+		{
+			final int row = mirrorIndex(y - border, height) * width;
+			for (int x = 0; x < extWidth; x++)
+				extended[y * extWidth + x] = pixels[row + mirrorIndex(x - border, width)];
+		}
+		
+		return extended;
+	}
+
 	public static int bitDepth(ImageProcessor image)
 	{
 		return image.getBitDepth();
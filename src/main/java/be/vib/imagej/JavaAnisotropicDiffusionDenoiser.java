@@ -0,0 +1,22 @@
+package be.vib.imagej;
+
+// Pure-Java anisotropic diffusion denoiser, the CPU counterpart of AnisotropicDiffusionDenoiser.
+public class JavaAnisotropicDiffusionDenoiser extends JavaDenoiser
+{
+	public JavaAnisotropicDiffusionDenoiser(AnisotropicDiffusionParams params)
+	{
+		super(params);
+	}
+
+	@Override
+	protected float[] denoise(float[] pixels, int width, int height)
+	{
+		AnisotropicDiffusionParams params = (AnisotropicDiffusionParams)this.params;
+
+		AnisotropicDiffusionFilter diffusion = new AnisotropicDiffusionFilter(params.numIterations,
+		                                                                      params.stepSize,
+		                                                                      params.diffusionFactor,
+		                                                                      params.diffusionFunction);
+		return diffusion.filter(pixels, width, height);
+	}
+}
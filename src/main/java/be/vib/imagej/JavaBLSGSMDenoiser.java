@@ -0,0 +1,19 @@
+package be.vib.imagej;
+
+// Pure-Java BLS-GSM denoiser, the CPU counterpart of BLSGSMDenoiser.
+public class JavaBLSGSMDenoiser extends JavaDenoiser
+{
+	public JavaBLSGSMDenoiser(BLSGSMParams params)
+	{
+		super(params);
+	}
+
+	@Override
+	protected float[] denoise(float[] pixels, int width, int height)
+	{
+		BLSGSMParams params = (BLSGSMParams)this.params;
+
+		BLSGSMFilter blsgsm = new BLSGSMFilter(params.scales, params.sigma);
+		return blsgsm.filter(pixels, width, height);
+	}
+}
@@ -0,0 +1,113 @@
+package be.vib.imagej;
+
+import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+// The Java backend runs pure-Java implementations of the denoising algorithms on the CPU.
+// It needs neither Quasar nor a graphics card, so it is always available, for example on
+// compute cluster nodes without a Quasar or CUDA installation. Its denoisers run directly
+// on the calling thread and use the fork-join common pool for their internal parallelism.
+//
+// Algorithms are added to this backend as they get ported from Quasar to Java.
+public class JavaBackend implements DenoiseBackend
+{
+	private static final JavaBackend instance = new JavaBackend();
+
+	private final EnumSet<Algorithm.Name> supportedAlgorithms = EnumSet.of(Algorithm.Name.GAUSSIAN,
+	                                                                      Algorithm.Name.BILATERAL,
+	                                                                      Algorithm.Name.NONLOCALMEANS,
+	                                                                      Algorithm.Name.ANISOTROPIC_DIFFUSION,
+	                                                                      Algorithm.Name.TOTAL_VARIATION,
+	                                                                      Algorithm.Name.TIKHONOV,
+	                                                                      Algorithm.Name.WAVELET_THRESHOLDING,
+	                                                                      Algorithm.Name.BLSGSM);
+
+	private JavaBackend()
+	{
+	}
+
+	public static JavaBackend getInstance()
+	{
+		return instance;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Java";
+	}
+
+	@Override
+	public boolean isAvailable()
+	{
+		return true;
+	}
+
+	@Override
+	public int getSpeedRank()
+	{
+		return 10;
+	}
+
+	@Override
+	public boolean supports(Algorithm.Name algorithm)
+	{
+		return supportedAlgorithms.contains(algorithm);
+	}
+
+	@Override
+	public Denoiser createDenoiser(Algorithm.Name algorithm, DenoiseParams params)
+	{
+		switch (algorithm)
+		{
+			case GAUSSIAN:
+				return new JavaGaussianDenoiser((GaussianParams)params);
+			case BILATERAL:
+				return new JavaBilateralDenoiser((BilateralParams)params);
+			case NONLOCALMEANS:
+				return new JavaNonLocalMeansDenoiser((NonLocalMeansParams)params);
+			case ANISOTROPIC_DIFFUSION:
+				return new JavaAnisotropicDiffusionDenoiser((AnisotropicDiffusionParams)params);
+			case TOTAL_VARIATION:
+				return new JavaTotalVariationDenoiser((TotalVariationParams)params);
+			case TIKHONOV:
+				return new JavaTikhonovDenoiser((TikhonovParams)params);
+			case WAVELET_THRESHOLDING:
+				return new JavaWaveletThresholdingDenoiser((WaveletThresholdingParams)params);
+			case BLSGSM:
+				return new JavaBLSGSMDenoiser((BLSGSMParams)params);
+			default:
+				throw new RuntimeException("Unsupported denoising algorithm " + algorithm + " for backend " + getName());
+		}
+	}
+
+	@Override
+	public <T> T execute(Callable<T> task) throws InterruptedException, ExecutionException
+	{
+		try
+		{
+			return task.call();
+		}
+		catch (InterruptedException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new ExecutionException(e);
+		}
+	}
+
+	@Override
+	public boolean supportsConcurrentDenoising()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean supportsCancellation()
+	{
+		return true;  // the Java filters check for interruption at their cancellation points
+	}
+}
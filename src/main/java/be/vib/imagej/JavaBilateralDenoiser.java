@@ -0,0 +1,24 @@
+package be.vib.imagej;
+
+// Pure-Java bilateral denoiser, the CPU counterpart of BilateralDenoiser.
+public class JavaBilateralDenoiser extends JavaDenoiser
+{
+	public JavaBilateralDenoiser(BilateralParams params)
+	{
+		super(params);
+	}
+
+	@Override
+	protected boolean byteRange()
+	{
+		return true;  // rangeSigma is expressed in intensity levels of [0,255]
+	}
+
+	@Override
+	protected float[] denoise(float[] pixels, int width, int height)
+	{
+		BilateralParams params = (BilateralParams)this.params;
+
+		return new BilateralGridFilter(params.rangeSigma, params.spatialSigma).filter(pixels, width, height);
+	}
+}
@@ -0,0 +1,37 @@
+package be.vib.imagej;
+
+import ij.process.ImageProcessor;
+
+// Base class for the denoisers of the pure-Java backend.
+// It takes care of the conversion of the image tile to floating point pixel values normalized to [0,1]
+// (or to [0,255] if the algorithm prefers a byte range), and of the conversion of the denoised result
+// back to an 8 or 16 bit image. Subclasses only implement the denoising of the float pixel array.
+public abstract class JavaDenoiser extends Denoiser
+{
+	public JavaDenoiser(DenoiseParams params)
+	{
+		super(params, JavaBackend.getInstance());
+	}
+
+	// Returns true if the algorithm expects pixel values in [0,255] instead of [0,1].
+	protected boolean byteRange()
+	{
+		return false;
+	}
+
+	// Denoises the width x height image with row-major pixels, and returns the denoised pixels.
+	// The input array may be overwritten and returned as the result.
+	protected abstract float[] denoise(float[] pixels, int width, int height);
+
+	@Override
+	public ImageProcessor call()
+	{
+		final boolean byteRange = byteRange();
+
+		float[] noisyPixels = normalizer.normalizeToArray(image, byteRange);
+
+		float[] denoisedPixels = denoise(noisyPixels, image.getWidth(), image.getHeight());
+
+		return normalizer.denormalize(image, denoisedPixels, byteRange);
+	}
+}
@@ -0,0 +1,19 @@
+package be.vib.imagej;
+
+// Pure-Java Gaussian denoiser, the CPU counterpart of GaussianDenoiser.
+public class JavaGaussianDenoiser extends JavaDenoiser
+{
+	public JavaGaussianDenoiser(GaussianParams params)
+	{
+		super(params);
+	}
+
+	@Override
+	protected float[] denoise(float[] pixels, int width, int height)
+	{
+		GaussianParams params = (GaussianParams)this.params;
+
+		new GaussianFilter(params.sigma).filter(pixels, pixels, width, height);
+		return pixels;
+	}
+}
@@ -0,0 +1,30 @@
+package be.vib.imagej;
+
+// Pure-Java non-local means denoiser, the CPU counterpart of NonLocalMeansDenoiser.
+public class JavaNonLocalMeansDenoiser extends JavaDenoiser
+{
+	public JavaNonLocalMeansDenoiser(NonLocalMeansParams params)
+	{
+		super(params);
+	}
+
+	@Override
+	protected float[] denoise(float[] pixels, int width, int height)
+	{
+		NonLocalMeansParams params = (NonLocalMeansParams)this.params;
+
+		assert(!params.decorrelation);  // decorrelation is not offered to the user, and not implemented in Java
+
+		NonLocalMeansFilter nlm = new NonLocalMeansFilter(params.halfSearchSize, params.halfBlockSize, params.h);
+
+		if (params.deconvolution)
+		{
+			GaussianFilter blur = new GaussianFilter(NonLocalMeansParams.DeconvolutionParams.blurKernelSize, NonLocalMeansParams.DeconvolutionParams.blurKernelSigma);
+			return nlm.deconvolve(pixels, width, height, blur, params.deconvolutionParams.lambda, params.deconvolutionParams.numIterations);
+		}
+		else
+		{
+			return nlm.filter(pixels, width, height);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package be.vib.imagej;
+
+// Pure-Java Tikhonov denoiser (with optional deconvolution), the CPU counterpart of TikhonovDenoiser.
+public class JavaTikhonovDenoiser extends JavaDenoiser
+{
+	public JavaTikhonovDenoiser(TikhonovParams params)
+	{
+		super(params);
+	}
+
+	@Override
+	protected float[] denoise(float[] pixels, int width, int height)
+	{
+		return newFilter((TikhonovParams)params).filter(pixels, width, height);
+	}
+
+	// The number of iterations only matters if TikhonovFilter cannot use its closed-form solution for the image.
+	@Override
+	public boolean givesSameResult(DenoiseParams otherParams)
+	{
+		TikhonovParams params = (TikhonovParams)this.params;
+		TikhonovParams other = new TikhonovParams((TikhonovParams)otherParams);
+		if (other.numIterations == params.numIterations || image == null)
+			return params.equals(other);
+
+		other.numIterations = params.numIterations;
+		return params.equals(other) && !newFilter(params).usesIterations(image.getWidth(), image.getHeight());
+	}
+
+	private static TikhonovFilter newFilter(TikhonovParams params)
+	{
+		GaussianFilter blur = params.deconvolution ? new GaussianFilter(TikhonovParams.blurKernelSize, params.sigma) : null;
+		return new TikhonovFilter(params.lambda, params.numIterations, blur);
+	}
+}
@@ -0,0 +1,22 @@
+package be.vib.imagej;
+
+// Pure-Java total variation denoiser, the CPU counterpart of TotalVariationDenoiser.
+public class JavaTotalVariationDenoiser extends JavaDenoiser
+{
+	public JavaTotalVariationDenoiser(TotalVariationParams params)
+	{
+		super(params);
+	}
+
+	@Override
+	protected float[] denoise(float[] pixels, int width, int height)
+	{
+		TotalVariationParams params = (TotalVariationParams)this.params;
+
+		TotalVariationFilter tv = new TotalVariationFilter(params.lambda,
+		                                                   params.numIterations,
+		                                                   TotalVariationParams.alpha,
+		                                                   params.convergenceTolerance);
+		return tv.filter(pixels, width, height);
+	}
+}
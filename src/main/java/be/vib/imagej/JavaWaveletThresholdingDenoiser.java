@@ -0,0 +1,22 @@
+package be.vib.imagej;
+
+// Pure-Java wavelet thresholding denoiser, the CPU counterpart of WaveletThresholdingDenoiser.
+// Unlike the Quasar version it does not need smaller image tiles: its memory use is about 4 times the tile size.
+public class JavaWaveletThresholdingDenoiser extends JavaDenoiser
+{
+	public JavaWaveletThresholdingDenoiser(WaveletThresholdingParams params)
+	{
+		super(params);
+	}
+
+	@Override
+	protected float[] denoise(float[] pixels, int width, int height)
+	{
+		WaveletThresholdingParams params = (WaveletThresholdingParams)this.params;
+
+		WaveletThresholdingFilter wavelets = new WaveletThresholdingFilter(WaveletThresholdingParams.J,
+		                                                                   WaveletThresholdingParams.thresholdType,
+		                                                                   params.threshold);
+		return wavelets.filter(pixels, width, height);
+	}
+}
@@ -0,0 +1,531 @@
+package be.vib.imagej;
+
+import java.util.Arrays;
+
+// Pure-Java noise level estimators, the CPU counterparts of estimate_noise_mad() and estimate_noise_liu()
+// in estimate_noise.q. Both take row-major float pixels and return the estimated noise standard deviation,
+// in the same units as the pixels.
+public class NoiseEstimation
+{
+	// Parameters of the Liu estimator, as in estimate_noise.q
+	public static final int LIU_PATCH_SIZE = 7;
+	public static final int LIU_ITERATIONS = 2;
+	public static final double LIU_CONFIDENCE = 0.999999;
+
+	// Median absolute deviation estimator: the median of the absolute difference between the image and its
+	// (2 radius + 1) x (2 radius + 1) median filtered version, divided by 0.6745. The median filter residuals
+	// are computed in parallel; the final median is found by selection (expected linear time) rather than by sorting.
+	public static float mad(final float[] pixels, final int width, final int height, final int radius)
+	{
+		final float[] extended = ImageUtils.mirrorExtend(pixels, width, height, radius);
+		final float[] residuals = new float[width * height];
+
+		ParallelFor.run(height, (start, end) -> {
+			SlidingMedian median = new SlidingMedian(extended, width + 2 * radius, 2 * radius + 1);
+			for (int y = start; y < end; y++)
+			{
+				median.startRow(y);
+				for (int x = 0; x < width; x++)
+				{
+					residuals[y * width + x] = Math.abs(pixels[y * width + x] - median.get());
+					if (x + 1 < width)
+						median.slide();
+				}
+			}
+		});
+
+		return (float)(median(residuals) / 0.6745);
+	}
+
+	// Median of a size x size window sliding along a row of an image, for median filtering.
+	// All columns of the row are sorted once; the window values are kept sorted, and moving the window one pixel
+	// to the right merges out the sorted leftmost column and merges in the sorted new column, in O(size^2) simple steps.
+	// (NaN pixels are treated as 0.)
+	private static class SlidingMedian
+	{
+		private final float[] image;
+		private final int stride;
+		private final int size;
+		private final float[] columns;  // the sorted columns of the current row: stride x size values
+		private float[] window;
+		private float[] scratch;
+		private int x;
+
+		SlidingMedian(float[] image, int stride, int size)
+		{
+			this.image = image;
+			this.stride = stride;
+			this.size = size;
+			this.columns = new float[stride * size];
+			this.window = new float[size * size];
+			this.scratch = new float[size * size];
+		}
+
+		// Positions the window at the start of the given row (the window covers rows y .. y + size - 1 of the image).
+		void startRow(int y)
+		{
+			for (int column = 0; column < stride; column++)
+				sortColumn(y, column);
+
+			x = 0;
+			System.arraycopy(columns, 0, window, 0, size * size);
+			Arrays.sort(window);
+		}
+
+		float get()
+		{
+			return window[window.length / 2];
+		}
+
+		void slide()
+		{
+			final int outgoing = x * size;
+			final int outgoingEnd = outgoing + size;
+			final int incomingEnd = (x + size + 1) * size;
+			int o = outgoing;
+			int n = (x + size) * size;
+			int k = 0;
+			for (float v : window)
+			{
+				if (o < outgoingEnd && v == columns[o])
+				{
+					o++;
+					continue;
+				}
+				while (n < incomingEnd && columns[n] < v)
+					scratch[k++] = columns[n++];
+				scratch[k++] = v;
+			}
+			while (n < incomingEnd)
+				scratch[k++] = columns[n++];
+
+			float[] t = window;
+			window = scratch;
+			scratch = t;
+			x++;
+		}
+
+		// Insertion sort of image column x, rows y .. y + size - 1, into columns[x * size ..]
+		private void sortColumn(int y, int x)
+		{
+			final int offset = x * size;
+			for (int i = 0; i < size; i++)
+			{
+				float v = image[(y + i) * stride + x];
+				if (v != v)
+					v = 0;
+				int j = i;
+				while (j > 0 && columns[offset + j - 1] > v)
+				{
+					columns[offset + j] = columns[offset + j - 1];
+					j--;
+				}
+				columns[offset + j] = v;
+			}
+		}
+	}
+
+	// Noise level estimation from weakly textured patches:
+	//   X. Liu, M. Tanaka and M. Okutomi, "Noise level estimation using weak textured patches of a single noisy image",
+	//   19th IEEE International Conference on Image Processing (ICIP), 2012, pp. 665-668.
+	// The noise variance is the smallest eigenvalue of the covariance matrix of the patches, which are iteratively
+	// restricted to the ones with a gradient energy below a threshold derived from the current noise estimate.
+	// The covariance matrices are accumulated in parallel over strips of patch rows.
+	public static float liu(float[] pixels, int width, int height, int patchSize, int iterations, double confidence)
+	{
+		final int d = patchSize * patchSize;
+		final int patchesWide = width - patchSize + 1;
+		final int patchesHigh = height - patchSize + 1;
+		if (patchesWide <= 0 || patchesHigh <= 0 || patchesWide * patchesHigh < d)
+			return 0;
+
+		final float[] texture = textureStrength(pixels, width, height, patchSize);
+		final boolean[] selected = new boolean[texture.length];
+		Arrays.fill(selected, true);
+
+		final double tau0 = textureThreshold(patchSize, confidence);
+
+		double variance = 0;
+		for (int i = 0; i < iterations; i++)
+		{
+			int count = texture.length;
+			if (i > 0)
+			{
+				// Weak texture selection
+				final double tau = variance * tau0;
+				count = 0;
+				for (int p = 0; p < texture.length; p++)
+				{
+					selected[p] = selected[p] && (texture[p] < tau);
+					if (selected[p])
+						count++;
+				}
+				if (count < d)
+					break;
+			}
+
+			double[] covariance = patchSecondMoments(pixels, width, patchesWide, patchesHigh, patchSize, selected);
+			final double normalization = (i == 0) ? count : count - 1;
+			for (int k = 0; k < d * d; k++)
+				covariance[k] /= normalization;
+
+			variance = min(SymmetricEigen.eigenvalues(covariance, d));
+		}
+
+		return (float)Math.sqrt(Math.max(variance, 0));
+	}
+
+	public static float liu(float[] pixels, int width, int height)
+	{
+		return liu(pixels, width, height, LIU_PATCH_SIZE, LIU_ITERATIONS, LIU_CONFIDENCE);
+	}
+
+	// Returns the k-th smallest (0-based) of the first n values. The values are reordered:
+	// afterwards values[0..k-1] <= values[k] <= values[k+1..n-1].
+	// Quickselect with median-of-three pivots and Hoare partitioning (which copes well with many equal values).
+	public static float select(float[] values, int n, int k)
+	{
+		int lo = 0;
+		int hi = n - 1;
+		while (hi > lo)
+		{
+			final int mid = (lo + hi) >>> 1;
+			if (values[mid] < values[lo]) swap(values, mid, lo);
+			if (values[hi] < values[lo]) swap(values, hi, lo);
+			if (values[hi] < values[mid]) swap(values, hi, mid);
+			final float pivot = values[mid];
+
+			int i = lo;
+			int j = hi;
+			while (i <= j)
+			{
+				while (values[i] < pivot) i++;
+				while (values[j] > pivot) j--;
+				if (i <= j)
+				{
+					swap(values, i, j);
+					i++;
+					j--;
+				}
+			}
+
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				break;
+		}
+		return values[k];
+	}
+
+	// Median of the values (the mean of the two middle values for an even number of values). The values are reordered.
+	public static double median(float[] values)
+	{
+		final int n = values.length;
+		final float upper = select(values, n, n / 2);
+		if (n % 2 == 1)
+			return upper;
+
+		float lower = values[0];
+		for (int i = 1; i < n / 2; i++)
+			lower = Math.max(lower, values[i]);
+		return 0.5 * ((double)lower + upper);
+	}
+
+	private static void swap(float[] values, int i, int j)
+	{
+		final float t = values[i];
+		values[i] = values[j];
+		values[j] = t;
+	}
+
+	// Returns, for every patchSize x patchSize patch, the sum of the squared horizontal and vertical
+	// gradients (central differences) inside the patch, computed with summed-area tables.
+	private static float[] textureStrength(final float[] pixels, final int width, final int height, final int patchSize)
+	{
+		final int stride = width + 1;
+		final double[] horizontal = new double[(height + 1) * stride];
+		final double[] vertical = new double[(height + 1) * stride];
+
+		// Row prefix sums of the squared gradients
+		ParallelFor.run(height, (start, end) -> {
+			for (int y = start; y < end; y++)
+			{
+				double sumH = 0, sumV = 0;
+				for (int x = 0; x < width; x++)
+				{
+					if (x + 2 < width)
+					{
+						final double g = 0.5 * (pixels[y * width + x + 2] - pixels[y * width + x]);
+						sumH += g * g;
+					}
+					if (y + 2 < height)
+					{
+						final double g = 0.5 * (pixels[(y + 2) * width + x] - pixels[y * width + x]);
+						sumV += g * g;
+					}
+					horizontal[(y + 1) * stride + x + 1] = sumH;
+					vertical[(y + 1) * stride + x + 1] = sumV;
+				}
+			}
+		});
+
+		// Column prefix sums
+		ParallelFor.run(width + 1, (start, end) -> {
+			for (int y = 1; y <= height; y++)
+				for (int x = start; x < end; x++)
+				{
+					horizontal[y * stride + x] += horizontal[(y - 1) * stride + x];
+					vertical[y * stride + x] += vertical[(y - 1) * stride + x];
+				}
+		});
+
+		final int patchesWide = width - patchSize + 1;
+		final int patchesHigh = height - patchSize + 1;
+		final float[] texture = new float[patchesWide * patchesHigh];
+		ParallelFor.run(patchesHigh, (start, end) -> {
+			for (int i = start; i < end; i++)
+				for (int j = 0; j < patchesWide; j++)
+				{
+					// Gradients that lie completely inside the patch: patchSize x (patchSize - 2) horizontal ones,
+					// (patchSize - 2) x patchSize vertical ones.
+					final double h = boxSum(horizontal, stride, j, i, patchSize - 2, patchSize);
+					final double v = boxSum(vertical, stride, j, i, patchSize, patchSize - 2);
+					texture[i * patchesWide + j] = (float)(h + v);
+				}
+		});
+		return texture;
+	}
+
+	private static double boxSum(double[] table, int stride, int x, int y, int w, int h)
+	{
+		return table[(y + h) * stride + x + w] - table[y * stride + x + w] - table[(y + h) * stride + x] + table[y * stride + x];
+	}
+
+	// Returns the (uncentered) d x d second moment matrix sum(x x^T) of the selected patches x.
+	// Rather than accumulating the d^2 products of every patch, every image row r is paired with rows r + dy
+	// (0 <= dy < patchSize) at column offsets -patchSize < dx < patchSize, and running (prefix) sums of the products
+	// img[r][j] img[r + dy][j + dx] over j give the contribution of a whole run of consecutive selected patches
+	// to a matrix element with 2 lookups. The patch rows are processed in parallel strips.
+	private static double[] patchSecondMoments(final float[] pixels, final int width, final int patchesWide, final int patchesHigh, final int patchSize, final boolean[] selected)
+	{
+		final int d = patchSize * patchSize;
+		final double[] moments = new double[d * d];
+
+		ParallelFor.run(patchesHigh, 4, (start, end) -> {
+			final double[] partial = new double[d * d];
+			final double[] prefix = new double[width + 1];
+
+			// Runs [j0, j1) of selected patches in each patch row of the strip: runs[i - start] = { j0, j1, j0, j1, ... }
+			final int[][] runs = new int[end - start][];
+			for (int i = start; i < end; i++)
+				runs[i - start] = selectedRuns(selected, i * patchesWide, patchesWide);
+
+			for (int r = start; r < end + patchSize - 1; r++)
+			{
+				for (int dy = 0; dy < patchSize; dy++)
+				{
+					for (int dx = (dy == 0) ? 0 : -(patchSize - 1); dx < patchSize; dx++)
+					{
+						// Patch rows i = r - a that contain image rows r and r + dy at patch rows a and a + dy
+						final int firstA = Math.max(0, r - (end - 1));
+						final int lastA = Math.min(patchSize - 1 - dy, r - start);
+						if (firstA > lastA)
+							continue;
+
+						final int rowA = r * width;
+						final int rowB = (r + dy) * width;
+						double sum = 0;
+						prefix[0] = 0;
+						for (int j = 0; j < width; j++)
+						{
+							if (j + dx >= 0 && j + dx < width)
+								sum += (double)pixels[rowA + j] * pixels[rowB + j + dx];
+							prefix[j + 1] = sum;
+						}
+
+						for (int a = firstA; a <= lastA; a++)
+						{
+							final int[] rowRuns = runs[r - a - start];
+							for (int b = Math.max(0, -dx); b < Math.min(patchSize, patchSize - dx); b++)
+							{
+								double value = 0;
+								for (int k = 0; k < rowRuns.length; k += 2)
+									value += prefix[rowRuns[k + 1] + b] - prefix[rowRuns[k] + b];
+								partial[(a * patchSize + b) * d + (a + dy) * patchSize + b + dx] += value;
+							}
+						}
+					}
+				}
+			}
+
+			synchronized (moments)
+			{
+				for (int k = 0; k < d * d; k++)
+					moments[k] += partial[k];
+			}
+		});
+
+		// Only the upper triangle was accumulated
+		for (int m = 0; m < d; m++)
+			for (int n = 0; n < m; n++)
+				moments[m * d + n] = moments[n * d + m];
+		return moments;
+	}
+
+	private static int[] selectedRuns(boolean[] selected, int offset, int n)
+	{
+		int[] runs = new int[8];
+		int count = 0;
+		for (int j = 0; j < n; j++)
+		{
+			if (!selected[offset + j] || (j > 0 && selected[offset + j - 1]))
+				continue;
+			int j1 = j + 1;
+			while (j1 < n && selected[offset + j1])
+				j1++;
+			if (count + 2 > runs.length)
+				runs = Arrays.copyOf(runs, 2 * runs.length);
+			runs[count++] = j;
+			runs[count++] = j1;
+		}
+		return Arrays.copyOf(runs, count);
+	}
+
+	// Returns tau0, the texture threshold relative to the noise variance: for a flat patch with white Gaussian noise
+	// the gradient energy x^T D^T D x follows (approximately) a gamma distribution with shape rank(D^T D)/2 and
+	// scale 2 trace(D^T D) / rank(D^T D); tau0 is its inverse cumulative distribution function at the given confidence.
+	// (estimate_noise.q hard-codes tau0 = 81.8 for the default parameters.)
+	static double textureThreshold(int patchSize, double confidence)
+	{
+		final int d = patchSize * patchSize;
+
+		// D^T D = Dh^T Dh + Dv^T Dv, with Dh and Dv the horizontal and vertical central differences [-0.5, 0, 0.5]
+		// that lie completely inside the patch.
+		double[] dd = new double[d * d];
+		for (int a = 0; a < patchSize; a++)
+			for (int b = 0; b + 2 < patchSize; b++)
+			{
+				addDifferenceOuterProduct(dd, d, a * patchSize + b, a * patchSize + b + 2);
+				addDifferenceOuterProduct(dd, d, b * patchSize + a, (b + 2) * patchSize + a);
+			}
+
+		double trace = 0;
+		for (int i = 0; i < d; i++)
+			trace += dd[i * d + i];
+
+		final double[] eigenvalues = SymmetricEigen.eigenvalues(dd, d);
+		final double largest = max(eigenvalues);
+		int rank = 0;
+		for (double e : eigenvalues)
+			if (e > 1e-9 * largest)
+				rank++;
+
+		return gammaInverse(confidence, rank / 2.0, 2.0 * trace / rank);
+	}
+
+	// dd += g g^T with g = 0.5 (e_j - e_i)
+	private static void addDifferenceOuterProduct(double[] dd, int d, int i, int j)
+	{
+		dd[i * d + i] += 0.25;
+		dd[j * d + j] += 0.25;
+		dd[i * d + j] -= 0.25;
+		dd[j * d + i] -= 0.25;
+	}
+
+	// Inverse of the cumulative distribution function of the gamma distribution with the given shape and scale,
+	// by bisection on the upper tail probability (which stays accurate for p close to 1).
+	static double gammaInverse(double p, double shape, double scale)
+	{
+		final double tail = 1.0 - p;
+		double lo = 0;
+		double hi = shape;
+		while (upperIncompleteGamma(shape, hi) > tail)
+			hi *= 2;
+
+		for (int i = 0; i < 200 && hi - lo > 1e-12 * hi; i++)
+		{
+			final double mid = 0.5 * (lo + hi);
+			if (upperIncompleteGamma(shape, mid) > tail)
+				lo = mid;
+			else
+				hi = mid;
+		}
+		return 0.5 * (lo + hi) * scale;
+	}
+
+	// Regularized upper incomplete gamma function Q(a, x), by its series (x < a + 1) or continued fraction
+	// (Numerical Recipes in C, 2nd edition, section 6.2).
+	private static double upperIncompleteGamma(double a, double x)
+	{
+		if (x <= 0)
+			return 1;
+
+		final double logPrefactor = -x + a * Math.log(x) - logGamma(a);
+		if (x < a + 1)
+		{
+			double term = 1.0 / a;
+			double sum = term;
+			for (int n = 1; n < 1000 && Math.abs(term) > Math.abs(sum) * 1e-16; n++)
+			{
+				term *= x / (a + n);
+				sum += term;
+			}
+			return 1 - sum * Math.exp(logPrefactor);
+		}
+		else
+		{
+			final double tiny = 1e-300;
+			double b = x + 1 - a;
+			double c = 1 / tiny;
+			double d = 1 / b;
+			double h = d;
+			for (int i = 1; i < 1000; i++)
+			{
+				final double an = -i * (i - a);
+				b += 2;
+				d = an * d + b;
+				if (Math.abs(d) < tiny) d = tiny;
+				c = b + an / c;
+				if (Math.abs(c) < tiny) c = tiny;
+				d = 1 / d;
+				final double delta = d * c;
+				h *= delta;
+				if (Math.abs(delta - 1) < 1e-16)
+					break;
+			}
+			return Math.exp(logPrefactor) * h;
+		}
+	}
+
+	// Lanczos approximation of log(Gamma(x)) for x > 0.
+	private static double logGamma(double x)
+	{
+		final double[] coefficients = { 76.18009172947146, -86.50532032941677, 24.01409824083091,
+		                               -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5 };
+		double y = x;
+		double tmp = x + 5.5;
+		tmp -= (x + 0.5) * Math.log(tmp);
+		double series = 1.000000000190015;
+		for (double c : coefficients)
+			series += c / ++y;
+		return -tmp + Math.log(2.5066282746310005 * series / x);
+	}
+
+	private static double min(double[] values)
+	{
+		double m = values[0];
+		for (double v : values)
+			m = Math.min(m, v);
+		return m;
+	}
+
+	private static double max(double[] values)
+	{
+		double m = values[0];
+		for (double v : values)
+			m = Math.max(m, v);
+		return m;
+	}
+}
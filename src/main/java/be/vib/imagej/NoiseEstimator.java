@@ -3,22 +3,31 @@ package be.vib.imagej;
 import java.awt.Rectangle;
 import java.util.concurrent.Callable;
 
-import be.vib.bits.QFunction;
-import be.vib.bits.QValue;
 import ij.process.ImageProcessor;
 
-// A Java wrapper around a MAD (median absolute deviation) noise estimator implemented in Quasar.
+// Estimates the standard deviation of the noise in an image, with the pure-Java MAD (median absolute deviation)
+// or Liu estimators in NoiseEstimation. These used to run in Quasar (estimate_noise.q); they no longer need the
+// Quasar thread, so call() can be invoked directly on any thread.
 public class NoiseEstimator implements Callable<Float>
 {
+	public enum Method { MAD, LIU }
+	
 	private ImageProcessor image;
 	private ImageNormalizer normalizer;
+	private Method method;
 	
 	NoiseEstimator(ImageProcessor image, ImageNormalizer normalizer)
+	{
+		this(image, normalizer, Method.MAD);
+	}
+	
+	NoiseEstimator(ImageProcessor image, ImageNormalizer normalizer, Method method)
 	{		
 		// Restrict the noise estimation to the central region of the image
-		// (for the sake of performance and to limit GPU memory usage in case of huge images).
+		// (for the sake of performance in case of huge images).
 		this.image = restrictSize(image, 2048);
 		this.normalizer = normalizer;
+		this.method = method;
 	}
 	
 	// Return a copy of the image, restricted to maxSize x maxSize pixels.
@@ -37,17 +46,19 @@ public class NoiseEstimator implements Callable<Float>
 	}
 
 	@Override
-	public Float call() throws Exception
+	public Float call()
 	{		
-		final boolean toByteRange = true;  // the Quasar MAD noise estimator prefers a byte range as pixel data
-		QValue noisyImageCube = normalizer.normalize(image, toByteRange);
+		final boolean toByteRange = false;
+		float[] pixels = normalizer.normalizeToArray(image, toByteRange);
 		
-		QFunction estimateNoise = new QFunction("estimate_noise_mad(mat,int)");			
-		QValue noise = estimateNoise.apply(noisyImageCube, new QValue(2));
-		
-		noisyImageCube.dispose();
-		
-		return noise.getFloat() / 255.0f;  // Return the noise standard deviation, for image pixel intensities normalized to be in [0,1]	
+		// Return the noise standard deviation, for image pixel intensities normalized to be in [0,1]
+		switch (method)
+		{
+			case LIU:
+				return NoiseEstimation.liu(pixels, image.getWidth(), image.getHeight());
+			case MAD:
+			default:
+				return NoiseEstimation.mad(pixels, image.getWidth(), image.getHeight(), 2);
+		}
 	}
-
 }
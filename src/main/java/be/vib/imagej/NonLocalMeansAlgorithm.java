@@ -30,12 +30,6 @@ public class NonLocalMeansAlgorithm extends Algorithm
 	    return new NonLocalMeansParams(params);
 	}
 	
-	@Override
-	public Denoiser getDenoiserCopy()
-	{
-		return new NonLocalMeansDenoiser(new NonLocalMeansParams(params));
-	}
-
 	@Override
     public DenoiseParamsPanelBase getPanel()
     {
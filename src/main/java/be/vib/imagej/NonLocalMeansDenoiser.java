@@ -8,7 +8,7 @@ public class NonLocalMeansDenoiser extends Denoiser
 {	
 	public NonLocalMeansDenoiser(NonLocalMeansParams params)
 	{
-		super(params);
+		super(params, QuasarBackend.getInstance());
 	}
 	
 	@Override
@@ -29,123 +29,113 @@ public class NonLocalMeansDenoiser extends Denoiser
 	
 	public ImageProcessor nonLocalMeans()
 	{				
-		QFunction nlmeans = new QFunction("denoise_nlmeans(mat,int,int,scalar)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction nlmeans = registry.function("denoise_nlmeans(mat,int,int,scalar)");
 
 		final boolean byteRange = false;  // normalize pixel values to/from [0,1] before/after denoising
 		
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-
-		NonLocalMeansParams params = (NonLocalMeansParams)this.params;
-
-		QValue denoisedImageCube = nlmeans.apply(noisyImageCube,
-							                     new QValue(params.halfSearchSize),
-							                     new QValue(params.halfBlockSize),
-							                     new QValue(params.h));
-		
-		noisyImageCube.dispose();
-
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
 
-		denoisedImageCube.dispose();
+			NonLocalMeansParams params = (NonLocalMeansParams)this.params;
 
-		return denoisedImage;
+			QValue denoisedImageCube = arena.apply(nlmeans,
+			                                       noisyImageCube,
+			                                       arena.value(params.halfSearchSize),
+			                                       arena.value(params.halfBlockSize),
+			                                       arena.value(params.h));
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 	
 	private ImageProcessor nonLocalMeansD()
 	{		
-		QFunction nlmeansD = new QFunction("deconv_nlmeans(mat,mat,scalar,int,int,int,scalar)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction nlmeansD = registry.function("deconv_nlmeans(mat,mat,scalar,int,int,int,scalar)");
 		
 		final boolean byteRange = false;  // normalize pixel values to/from [0,1] before/after denoising
 		
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-
-		QFunction fgaussian = new QFunction("fgaussian(int,scalar)");
-		QValue blurKernel = fgaussian.apply(new QValue(NonLocalMeansParams.DeconvolutionParams.blurKernelSize), new QValue(NonLocalMeansParams.DeconvolutionParams.blurKernelSigma)); 
-		
-		NonLocalMeansParams params = (NonLocalMeansParams)this.params;
-
-		QValue denoisedImageCube = nlmeansD.apply(noisyImageCube,
-  						                          blurKernel,
-							                      new QValue(params.deconvolutionParams.lambda),
-							                      new QValue(params.deconvolutionParams.numIterations),
-							                      new QValue(params.halfSearchSize),
-							                      new QValue(params.halfBlockSize),
-							                      new QValue(params.h));
-		
-		noisyImageCube.dispose();
-		blurKernel.dispose();
-
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-
-		denoisedImageCube.dispose();
-
-		return denoisedImage;
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
+
+			QValue blurKernel = registry.gaussianKernel(NonLocalMeansParams.DeconvolutionParams.blurKernelSize, NonLocalMeansParams.DeconvolutionParams.blurKernelSigma); 
+			
+			NonLocalMeansParams params = (NonLocalMeansParams)this.params;
+
+			QValue denoisedImageCube = arena.apply(nlmeansD,
+			                                       noisyImageCube,
+			                                       blurKernel,
+			                                       arena.value(params.deconvolutionParams.lambda),
+			                                       arena.value(params.deconvolutionParams.numIterations),
+			                                       arena.value(params.halfSearchSize),
+			                                       arena.value(params.halfBlockSize),
+			                                       arena.value(params.h));
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 		
 	private ImageProcessor nonLocalMeansCD()
 	{		
 		assert(false); // decorrelation is not currently supported
 		
-		QFunction nlmeansCD = new QFunction("deconv_nlmeans_c(mat,mat,scalar,int,int,int,scalar,mat)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction nlmeansCD = registry.function("deconv_nlmeans_c(mat,mat,scalar,int,int,int,scalar,mat)");
 		
 		final boolean byteRange = false;  // normalize pixel values to/from [0,1] before/after denoising
 		
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-
-		QFunction fgaussian = new QFunction("fgaussian(int,scalar)");
-		QValue blurKernel = fgaussian.apply(new QValue(NonLocalMeansParams.DeconvolutionParams.blurKernelSize), new QValue(NonLocalMeansParams.DeconvolutionParams.blurKernelSigma)); 
-		
-		QValue corrFilterInv = new QValue(NonLocalMeansParams.emCorrFilterInv);
-		
-		NonLocalMeansParams params = (NonLocalMeansParams)this.params;
-
-		QValue denoisedImageCube = nlmeansCD.apply(noisyImageCube,
-							                       blurKernel,
-							                       new QValue(params.deconvolutionParams.lambda),
-							                       new QValue(params.deconvolutionParams.numIterations),
-							                       new QValue(params.halfSearchSize),
-							                       new QValue(params.halfBlockSize),
-							                       new QValue(params.h),
-						                           corrFilterInv);
-		
-		noisyImageCube.dispose();
-		blurKernel.dispose();
-		corrFilterInv.dispose();
-
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-
-		denoisedImageCube.dispose();
-
-		return denoisedImage;
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
+
+			QValue blurKernel = registry.gaussianKernel(NonLocalMeansParams.DeconvolutionParams.blurKernelSize, NonLocalMeansParams.DeconvolutionParams.blurKernelSigma); 
+			
+			QValue corrFilterInv = registry.constant("emCorrFilterInv", NonLocalMeansParams.emCorrFilterInv);
+			
+			NonLocalMeansParams params = (NonLocalMeansParams)this.params;
+
+			QValue denoisedImageCube = arena.apply(nlmeansCD,
+			                                       noisyImageCube,
+			                                       blurKernel,
+			                                       arena.value(params.deconvolutionParams.lambda),
+			                                       arena.value(params.deconvolutionParams.numIterations),
+			                                       arena.value(params.halfSearchSize),
+			                                       arena.value(params.halfBlockSize),
+			                                       arena.value(params.h),
+			                                       corrFilterInv);
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 	
 	private ImageProcessor nonLocalMeansC()
 	{		
 		assert(false); // decorrelation is not currently supported
 		
-		QFunction nlmeansSC = new QFunction("denoise_nlmeans_c(mat,int,int,scalar,mat)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction nlmeansSC = registry.function("denoise_nlmeans_c(mat,int,int,scalar,mat)");
 		
 		final boolean byteRange = false;  // normalize pixel values to/from [0,1] before/after denoising
 		
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-
-		QValue corrFilterInv = new QValue(NonLocalMeansParams.emCorrFilterInv);
-		
-		NonLocalMeansParams params = (NonLocalMeansParams)this.params;
-
-		QValue denoisedImageCube = nlmeansSC.apply(noisyImageCube,
-							   				       new QValue(params.halfSearchSize),
-											       new QValue(params.halfBlockSize),
-											       new QValue(params.h),
-											       corrFilterInv);
-		
-		noisyImageCube.dispose();
-		corrFilterInv.dispose();
-		
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-		
-		denoisedImageCube.dispose();
-		
-		return denoisedImage;
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
+
+			QValue corrFilterInv = registry.constant("emCorrFilterInv", NonLocalMeansParams.emCorrFilterInv);
+			
+			NonLocalMeansParams params = (NonLocalMeansParams)this.params;
+
+			QValue denoisedImageCube = arena.apply(nlmeansSC,
+			                                       noisyImageCube,
+			                                       arena.value(params.halfSearchSize),
+			                                       arena.value(params.halfBlockSize),
+			                                       arena.value(params.h),
+			                                       corrFilterInv);
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,257 @@
+package be.vib.imagej;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// Pure-Java non-local means, equivalent to denoise_nlmeans() and deconv_nlmeans() in nlmeans.q.
+//
+// Like the Quasar code, the image is mirror extended by halfBlockSize pixels, and then for every search
+// offset d (only half of them, the other half follows by symmetry) the squared difference map between the
+// image and its shifted version is box filtered (cyclically) to obtain the patch distances. These yield the
+// modified bisquare weights for the pixel pairs (pos, pos+d) and (pos, pos-d).
+// The box sums are computed with running sums, so their cost does not depend on the block size.
+//
+// The search offsets are partitioned across the fork-join common pool. Each task accumulates into its own
+// buffers, which are merged into the result at the end.
+public class NonLocalMeansFilter
+{
+	private static final float CENTER_WEIGHT = 0.2f;  // weight of the pixel itself
+
+	private final int halfSearchSize;
+	private final int halfBlockSize;
+	private final float h;
+
+	public NonLocalMeansFilter(int halfSearchSize, int halfBlockSize, float h)
+	{
+		this.halfSearchSize = halfSearchSize;
+		this.halfBlockSize = halfBlockSize;
+		this.h = h;
+	}
+
+	// Non-local means denoising of a width x height image.
+	public float[] filter(float[] image, int width, int height)
+	{
+		float[] accum = new float[image.length];
+		float[] weights = new float[image.length];
+
+		accumulate(image, image, width, height, accum, weights);
+
+		for (int i = 0; i < accum.length; i++)
+			accum[i] /= weights[i];
+
+		return accum;
+	}
+
+	// Non-local means deconvolution (steepest descent) of a width x height image y blurred by the given filter,
+	// with the non-local means prior weighted by lambda. Like deconv_nlmeans() in nlmeans.q.
+	// The blur filter must be symmetric (it is its own adjoint).
+	public float[] deconvolve(float[] y, int width, int height, GaussianFilter blur, float lambda, int numIterations)
+	{
+		final int n = y.length;
+
+		float[] x = Arrays.copyOf(y, n);
+		float[] Hty = blur.filter(y, width, height);
+
+		float[] accum = new float[n];
+		float[] weights = new float[n];
+		float[] grad = new float[n];
+
+		for (int iter = 0; iter < numIterations; iter++)
+		{
+			accumulate(x, y, width, height, accum, weights);
+
+			float[] Hx = blur.filter(x, width, height);
+			float[] HHx = blur.filter(Hx, width, height);
+
+			for (int i = 0; i < n; i++)
+				grad[i] = 2 * (HHx[i] - Hty[i]) + 2 * lambda * (weights[i] * x[i] - accum[i]);
+
+			float[] Hgrad = blur.filter(grad, width, height);
+
+			accumulate(grad, y, width, height, accum, weights);
+
+			double xTemp = 0, gradTemp = 0, residualHgrad = 0, HgradHgrad = 0;
+			for (int i = 0; i < n; i++)
+			{
+				final float temp = weights[i] * grad[i] - accum[i];
+				xTemp += x[i] * temp;
+				gradTemp += grad[i] * temp;
+				residualHgrad += (y[i] - Hx[i]) * Hgrad[i];
+				HgradHgrad += Hgrad[i] * Hgrad[i];
+			}
+
+			final float alpha = (float)((2 * lambda * xTemp - residualHgrad) / (2 * lambda * gradTemp + HgradHgrad));
+
+			for (int i = 0; i < n; i++)
+				x[i] -= alpha * grad[i];
+		}
+
+		return x;
+	}
+
+	// Computes the non-local means sums of the pixel values of image 'values' (into accum) and of the
+	// weights (into weights), with the weights derived from the patches of image 'guide'.
+	// Like denoise_nlmeans_cumsum() in nlmeans.q.
+	public void accumulate(float[] values, float[] guide, final int width, final int height, final float[] accum, final float[] weights)
+	{
+		final int b = halfBlockSize;
+		final int rows = height + 2 * b;
+		final int cols = width + 2 * b;
+
+		final float[] v = ImageUtils.mirrorExtend(values, width, height, b);
+		final float[] g = (guide == values) ? v : ImageUtils.mirrorExtend(guide, width, height, b);
+
+		// The pixel itself
+		final float centerWeight = (h > 0) ? CENTER_WEIGHT : 0;
+		for (int i = 0; i < accum.length; i++)
+		{
+			accum[i] = centerWeight * values[i];
+			weights[i] = centerWeight;
+		}
+
+		// The search offsets (md, nd) with md > 0 or (md == 0 and nd > 0)
+		final int searchSize = 2 * halfSearchSize + 1;
+		final int numOffsets = (searchSize * searchSize - 1) / 2;
+		final int grainSize = Math.max(1, (numOffsets + ForkJoinPool.getCommonPoolParallelism() - 1) / ForkJoinPool.getCommonPoolParallelism());
+		final CancellationPoint cancellation = new CancellationPoint();
+
+		ParallelFor.run(numOffsets, grainSize, (start, end) -> {
+			float[] localAccum = new float[width * height];
+			float[] localWeights = new float[width * height];
+			Scratch scratch = new Scratch(rows, cols);
+
+			for (int k = start; k < end; k++)
+			{
+				cancellation.check();
+				final int offset = numOffsets + 1 + k;  // skip the offsets with md < 0 and the center
+				final int md = offset / searchSize - halfSearchSize;
+				final int nd = offset % searchSize - halfSearchSize;
+				processOffset(v, g, rows, cols, md, nd, localAccum, localWeights, scratch);
+			}
+
+			synchronized (accum)
+			{
+				for (int i = 0; i < accum.length; i++)
+				{
+					accum[i] += localAccum[i];
+					weights[i] += localWeights[i];
+				}
+			}
+		});
+	}
+
+	private static class Scratch
+	{
+		final float[] diff;      // squared differences, later the horizontal box sums
+		final float[] weight;    // weight for each position of the extended image
+		final double[] columnSums;
+		final int[] colPlus;     // (x + nd) mod cols
+		final int[] colMinus;    // (x - nd) mod cols
+
+		Scratch(int rows, int cols)
+		{
+			diff = new float[rows * cols];
+			weight = new float[rows * cols];
+			columnSums = new double[cols];
+			colPlus = new int[cols];
+			colMinus = new int[cols];
+		}
+	}
+
+	private void processOffset(float[] v, float[] g, int rows, int cols, int md, int nd, float[] accum, float[] weights, Scratch scratch)
+	{
+		final int b = halfBlockSize;
+		final int width = cols - 2 * b;
+		final float[] diff = scratch.diff;
+		final float[] weight = scratch.weight;
+		final int[] colPlus = scratch.colPlus;
+		final int[] colMinus = scratch.colMinus;
+
+		for (int x = 0; x < cols; x++)
+		{
+			colPlus[x] = Math.floorMod(x + nd, cols);
+			colMinus[x] = Math.floorMod(x - nd, cols);
+		}
+
+		// Squared differences, then cyclic horizontal box sums (in place, per row).
+		// The row (and column) count is at least 2b+1, so the window wraps at most once.
+		for (int y = 0; y < rows; y++)
+		{
+			final int row = y * cols;
+			final int shiftedRow = Math.floorMod(y + md, rows) * cols;
+			for (int x = 0; x < cols; x++)
+			{
+				final float d = g[row + x] - g[shiftedRow + colPlus[x]];
+				weight[row + x] = d * d;  // weight is used as temporary storage here
+			}
+
+			double sum = 0;
+			for (int k = -b; k <= b; k++)
+				sum += weight[row + ((k < 0) ? k + cols : k)];
+			for (int x = 0; x < cols; x++)
+			{
+				diff[row + x] = (float)sum;
+				int add = x + b + 1;
+				int sub = x - b;
+				if (add >= cols) add -= cols;
+				if (sub < 0) sub += cols;
+				sum += weight[row + add] - weight[row + sub];
+			}
+		}
+
+		// Cyclic vertical box sums, converted to weights.
+		final double[] columnSums = scratch.columnSums;
+		Arrays.fill(columnSums, 0);
+		for (int k = -b; k <= b; k++)
+		{
+			final int row = ((k < 0) ? k + rows : k) * cols;
+			for (int x = 0; x < cols; x++)
+				columnSums[x] += diff[row + x];
+		}
+		for (int y = 0; y < rows; y++)
+		{
+			final int row = y * cols;
+			for (int x = 0; x < cols; x++)
+				weight[row + x] = weight((float)columnSums[x]);
+
+			int add = y + b + 1;
+			int sub = y - b;
+			if (add >= rows) add -= rows;
+			if (sub < 0) sub += rows;
+			final int addRow = add * cols;
+			final int subRow = sub * cols;
+			for (int x = 0; x < cols; x++)
+				columnSums[x] += diff[addRow + x] - diff[subRow + x];
+		}
+
+		// Weighted accumulation of pos+d and pos-d, for the positions of the original image.
+		for (int y = b; y < rows - b; y++)
+		{
+			final int row = y * cols;
+			final int rowPlus = Math.floorMod(y + md, rows) * cols;
+			final int rowMinus = Math.floorMod(y - md, rows) * cols;
+			final int out = (y - b) * width - b;
+			for (int x = b; x < cols - b; x++)
+			{
+				final float w1 = weight[row + x];
+				final int minus = rowMinus + colMinus[x];
+				final float w2 = weight[minus];
+				accum[out + x] += w1 * v[rowPlus + colPlus[x]] + w2 * v[minus];
+				weights[out + x] += w1 + w2;
+			}
+		}
+	}
+
+	// The modified bisquare weight for a patch sum of squared differences ssd.
+	private float weight(float ssd)
+	{
+		final int blockSize = 2 * halfBlockSize + 1;
+		final float r = Math.max(0, ssd) / (blockSize * blockSize) / (h * h);
+		if (!(r < 1))
+			return 0;
+		float t = 1 - r;
+		t = t * t;
+		t = t * t;
+		return t * t;
+	}
+}
@@ -40,6 +40,7 @@ class NonLocalMeansParamsPanel extends DenoiseParamsPanelBase
 		hPair = new SliderFieldPair(0, 100, floatFormat, params.hMin, params.hMax);
 		hPair.setValue(params.h);
 		hPair.addPropertyChangeListener(e -> { params.h = hPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(hPair, value -> { NonLocalMeansParams p = new NonLocalMeansParams(params); p.h = value; return p; });
 		
 		JSlider hSlider = hPair.getSlider();
 		
@@ -54,6 +55,7 @@ class NonLocalMeansParamsPanel extends DenoiseParamsPanelBase
 		SliderFieldPair lambdaPair = new SliderFieldPair(0, 100, floatFormat, NonLocalMeansParams.DeconvolutionParams.lambdaMin, NonLocalMeansParams.DeconvolutionParams.lambdaMax);
 		lambdaPair.setValue(params.deconvolutionParams.lambda);
 		lambdaPair.addPropertyChangeListener(e -> { params.deconvolutionParams.lambda = lambdaPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(lambdaPair, value -> { NonLocalMeansParams p = new NonLocalMeansParams(params); p.deconvolutionParams = new NonLocalMeansParams.DeconvolutionParams(params.deconvolutionParams); p.deconvolutionParams.lambda = value; return p; });
 		
 		lambdaSlider = lambdaPair.getSlider();
 		
@@ -84,6 +86,7 @@ class NonLocalMeansParamsPanel extends DenoiseParamsPanelBase
 		blockSizePair = new SliderSpinnerPair(NonLocalMeansParams.halfBlockSizeMin, NonLocalMeansParams.halfBlockSizeMax);
 		blockSizePair.setValue(params.halfBlockSize);
 		blockSizePair.addPropertyChangeListener(e -> { params.halfBlockSize = blockSizePair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(blockSizePair, value -> { NonLocalMeansParams p = new NonLocalMeansParams(params); p.halfBlockSize = value; return p; });
 		
 		JSlider blockSizeSlider = blockSizePair.getSlider();
 		
@@ -97,6 +100,7 @@ class NonLocalMeansParamsPanel extends DenoiseParamsPanelBase
 		searchSizePair = new SliderSpinnerPair(NonLocalMeansParams.halfSearchSizeMin, NonLocalMeansParams.halfSearchSizeMax);
 		searchSizePair.setValue(params.halfSearchSize);
 		searchSizePair.addPropertyChangeListener(e -> { params.halfSearchSize = searchSizePair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(searchSizePair, value -> { NonLocalMeansParams p = new NonLocalMeansParams(params); p.halfSearchSize = value; return p; });
 		
 		JSlider searchSizeSlider = searchSizePair.getSlider();
 		
@@ -0,0 +1,75 @@
+package be.vib.imagej;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Minimal fork-join helper for the pure-Java denoising backend: splits a range of indices
+// (for example image rows, or strips of columns) into chunks that are processed in parallel
+// on the fork-join common pool.
+public class ParallelFor
+{
+	// The body of a parallel loop, processing indices start (inclusive) to end (exclusive).
+	public interface Body
+	{
+		void run(int start, int end);
+	}
+
+	private ParallelFor()
+	{
+	}
+
+	// Runs body over [0, n), in chunks of at least grainSize indices.
+	public static void run(int n, int grainSize, Body body)
+	{
+		if (n <= 0)
+			return;
+
+		grainSize = Math.max(1, grainSize);
+
+		if (n <= grainSize || ForkJoinPool.getCommonPoolParallelism() <= 1)
+			body.run(0, n);
+		else
+			ForkJoinPool.commonPool().invoke(new RangeAction(0, n, grainSize, body));
+	}
+
+	// Runs body over [0, n), split in about as many chunks as there are threads in the common pool
+	// (times a small factor for load balancing).
+	public static void run(int n, Body body)
+	{
+		final int numChunks = 4 * ForkJoinPool.getCommonPoolParallelism();
+		run(n, (n + numChunks - 1) / numChunks, body);
+	}
+
+	private static class RangeAction extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int start;
+		private final int end;
+		private final int grainSize;
+		private final Body body;
+
+		RangeAction(int start, int end, int grainSize, Body body)
+		{
+			this.start = start;
+			this.end = end;
+			this.grainSize = grainSize;
+			this.body = body;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (end - start <= grainSize)
+			{
+				body.run(start, end);
+			}
+			else
+			{
+				int middle = (start + end) >>> 1;
+				invokeAll(new RangeAction(start, middle, grainSize, body),
+				          new RangeAction(middle, end, grainSize, body));
+			}
+		}
+	}
+}
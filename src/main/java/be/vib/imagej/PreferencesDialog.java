@@ -22,7 +22,7 @@ public class PreferencesDialog extends JDialog
 		this.prefs = prefs;
 		
 		getContentPane().add(createUI());
-		setMinimumSize(new Dimension(300, 150));
+		setMinimumSize(new Dimension(300, 300));
 		pack();
 		setLocationRelativeTo(owner);  // must be done after pack()
 	}
@@ -30,6 +30,8 @@ public class PreferencesDialog extends JDialog
 	private JPanel createUI()
 	{
 		JPanel statsPanel = createImageStatisticsPanel();
+		JPanel quasarPanel = createQuasarPanel();
+		JPanel previewPanel = createPreviewPanel();
 		
 		JButton okButton = new JButton("OK");
 		okButton.addActionListener(e -> dispose());
@@ -42,7 +44,12 @@ public class PreferencesDialog extends JDialog
 		JPanel panel = new JPanel();
 		panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 		panel.setLayout(new BorderLayout(0, 10));					
-		panel.add(statsPanel, BorderLayout.CENTER);
+		panel.add(statsPanel, BorderLayout.PAGE_START);
+		JPanel settingsPanel = new JPanel();
+		settingsPanel.setLayout(new BoxLayout(settingsPanel, BoxLayout.Y_AXIS));
+		settingsPanel.add(quasarPanel);
+		settingsPanel.add(previewPanel);
+		panel.add(settingsPanel, BorderLayout.CENTER);
 		panel.add(buttonPanel, BorderLayout.PAGE_END);
 		return panel;
 	}
@@ -70,6 +77,48 @@ public class PreferencesDialog extends JDialog
 		return panel;
 	}
 	
+	private JPanel createQuasarPanel()
+	{
+		JPanel panel = new JPanel();
+		panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+		panel.setBorder(BorderFactory.createTitledBorder("Quasar"));
+		
+		JCheckBox warmUpBox = new JCheckBox("Prepare algorithms at startup");
+		warmUpBox.setSelected(prefs.getBoolean(WizardPageInitializeQuasar.WARMUP_PREFERENCE, true));
+		warmUpBox.setToolTipText("Run each denoising algorithm once on a tiny image right after starting Quasar. Startup takes a bit longer, but the first denoising previews are faster.");
+		warmUpBox.addActionListener(e -> { prefs.putBoolean(WizardPageInitializeQuasar.WARMUP_PREFERENCE, warmUpBox.isSelected()); savePrefs(); });
+		
+		JCheckBox startupBox = new JCheckBox("Start Quasar when Fiji starts");
+		startupBox.setSelected(prefs.getBoolean(QuasarStartupService.STARTUP_PREFERENCE, false));
+		startupBox.setToolTipText("Start Quasar in the background as soon as Fiji is launched, so the denoising wizard is ready sooner. Takes effect the next time Fiji is started.");
+		startupBox.addActionListener(e -> { prefs.putBoolean(QuasarStartupService.STARTUP_PREFERENCE, startupBox.isSelected()); savePrefs(); });
+		
+		panel.add(warmUpBox);
+		panel.add(startupBox);
+		return panel;
+	}
+	
+	private JPanel createPreviewPanel()
+	{
+		JPanel panel = new JPanel();
+		panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+		panel.setBorder(BorderFactory.createTitledBorder("Denoising previews"));
+		
+		JCheckBox diskCacheBox = new JCheckBox("Keep previews on disk");
+		diskCacheBox.setSelected(prefs.getBoolean(WizardPageDenoisingAlgorithm.DISK_CACHE_PREFERENCE, true));
+		diskCacheBox.setToolTipText("Store denoised previews on disk, so previews for the same region-of-interest and parameters are instantly available in later Fiji sessions. Takes effect the next time Fiji is started.");
+		diskCacheBox.addActionListener(e -> { prefs.putBoolean(WizardPageDenoisingAlgorithm.DISK_CACHE_PREFERENCE, diskCacheBox.isSelected()); savePrefs(); });
+		
+		JCheckBox prefetchBox = new JCheckBox("Prepare neighbouring previews");
+		prefetchBox.setSelected(prefs.getBoolean(WizardPageDenoisingAlgorithm.PREFETCH_PREFERENCE, true));
+		prefetchBox.setToolTipText("While you look at a preview, already calculate the previews one slider step away, so stepping a slider shows its preview instantly. Only when denoising on the CPU, since Quasar cannot interrupt a preview that is being calculated.");
+		prefetchBox.addActionListener(e -> { prefs.putBoolean(WizardPageDenoisingAlgorithm.PREFETCH_PREFERENCE, prefetchBox.isSelected()); savePrefs(); });
+		
+		panel.add(diskCacheBox);
+		panel.add(prefetchBox);
+		return panel;
+	}
+	
 	private void savePrefs()
 	{
 		try
@@ -0,0 +1,133 @@
+package be.vib.imagej;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+// The PreviewScheduler runs denoising preview tasks on a single background thread, with "latest wins" semantics:
+// only the most recently submitted task matters, all earlier ones are superseded.
+//
+// Each submitted task gets a generation number. When a new task is submitted:
+// - a task that is still waiting in the queue will not run at all,
+// - a task that is running is interrupted, so it stops at its next cancellation point (see CancellationPoint),
+//   or at least stops waiting for its backend,
+// - results of superseded tasks that were computed anyway are dropped before they reach the Swing
+//   Event Dispatch Thread (EDT), so they never overwrite the preview for the latest parameters.
+// This keeps the preview responsive while the user drags a slider, even for expensive algorithm settings.
+//
+// A task can be submitted together with prefetch tasks: speculative work (such as previews for the parameters
+// the user will probably try next) that is run only once the task itself has finished, and only as long as no newer
+// task was submitted. A new task therefore supersedes prefetching just like it supersedes an older task. Note that an
+// interrupted task only stops early if its backend supports cancellation (see DenoiseBackend.supportsCancellation());
+// otherwise the new task has to wait until the running one has finished.
+public class PreviewScheduler
+{
+	public interface Task
+	{
+		// Computes a preview. Not run on the EDT; use request.deliver() to update the user interface.
+		void run(Request request) throws Exception;
+	}
+
+	public class Request
+	{
+		private final long generation;
+
+		private Request(long generation)
+		{
+			this.generation = generation;
+		}
+
+		public long getGeneration()
+		{
+			return generation;
+		}
+
+		// Returns true if no newer request was submitted since this one.
+		public boolean isCurrent()
+		{
+			return generation == latestGeneration.get();
+		}
+
+		// Runs the given user interface update on the EDT, unless this request is superseded by then.
+		public void deliver(Runnable update)
+		{
+			if (!isCurrent())
+				return;
+
+			SwingUtilities.invokeLater(() -> {
+				if (isCurrent())
+					update.run();
+			});
+		}
+	}
+
+	private final AtomicLong latestGeneration = new AtomicLong(0);
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "DenoisEM preview");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private Future<?> latest = null; // the most recently submitted task; all earlier ones were cancelled already
+
+	// Submits a new task, superseding all earlier ones. Returns the request that will be passed to the task.
+	public Request submit(Task task)
+	{
+		return submit(task, Collections.<Task>emptyList());
+	}
+
+	// Submits a new task, superseding all earlier ones. When the task has finished, and if the request is still current,
+	// the prefetch tasks are run one by one, until they are done or a newer task is submitted. The prefetch tasks receive
+	// the same request as the task, but they are not meant to update the user interface.
+	// Returns the request that will be passed to the tasks.
+	public synchronized Request submit(Task task, List<? extends Task> prefetchTasks)
+	{
+		final Request request = new Request(latestGeneration.incrementAndGet());
+
+		if (latest != null)
+			latest.cancel(true); // Interrupts the task if it is running; a queued task will not be run.
+
+		latest = executor.submit(() -> {
+			run(task, request);
+
+			for (Task prefetchTask : prefetchTasks)
+				run(prefetchTask, request);
+		});
+
+		return request;
+	}
+
+	// Supersedes all submitted tasks, without submitting a new one.
+	public synchronized void cancel()
+	{
+		latestGeneration.incrementAndGet();
+
+		if (latest != null)
+			latest.cancel(true);
+		latest = null;
+	}
+
+	private static void run(Task task, Request request)
+	{
+		if (!request.isCurrent())
+			return;
+
+		try
+		{
+			task.run(request);
+		}
+		catch (Exception e)
+		{
+			// Superseded tasks typically end with an exception (a CancellationException, an InterruptedException,
+			// or one of these wrapped in an ExecutionException). That is expected, so only report failures of current tasks.
+			if (request.isCurrent())
+				e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package be.vib.imagej;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import be.vib.bits.QFunction;
+import be.vib.bits.QValue;
+
+// A QValueArena keeps track of the Quasar values created while denoising a single image tile, and disposes
+// all of them when it is closed. Not only the image cubes hold Quasar memory (possibly on the graphics card),
+// but also the scalar arguments, the results of QFunction.apply() and host variables read from Quasar.
+// Without an arena these are easily forgotten, and over a large stack with many tiles per slice they pile up.
+//
+// Typical use, on the Quasar thread:
+//   try (QValueArena arena = new QValueArena("GaussianDenoiser"))
+//   {
+//       QValue cube = arena.track(normalizer.normalize(image, byteRange));
+//       QValue result = arena.apply(function, cube, arena.value(sigma));
+//       return normalizer.denormalize(image, result, byteRange);
+//   }
+// A value that must outlive the arena can be taken out of it with release(); its owner must then dispose it.
+//
+// Debug mode (Java system property be.vib.denoisem.qvalue.debug=true) keeps statistics per arena owner
+// (typically the denoiser class) and reports them when the Java VM exits. Values in arenas that were never
+// closed are reported as leaked. The report is also available via getReport().
+public class QValueArena implements AutoCloseable
+{
+	public static final String DEBUG_PROPERTY = "be.vib.denoisem.qvalue.debug";
+
+	private static final boolean debug = Boolean.getBoolean(DEBUG_PROPERTY);
+
+	private final String owner;
+	private final ArrayList<QValue> values = new ArrayList<QValue>();
+	private boolean closed = false;
+
+	public QValueArena(String owner)
+	{
+		this.owner = owner;
+		if (debug)
+			Statistics.opened(this);
+	}
+
+	// Starts tracking the given value; it will be disposed when the arena is closed. Returns the value.
+	public QValue track(QValue value)
+	{
+		assert(!closed);
+		values.add(value);
+		if (debug)
+			Statistics.get(owner).numTracked++;
+		return value;
+	}
+
+	public QValue value(int i)
+	{
+		return track(new QValue(i));
+	}
+
+	public QValue value(float f)
+	{
+		return track(new QValue(f));
+	}
+
+	public QValue value(String s)
+	{
+		return track(new QValue(s));
+	}
+
+	public QValue value(float[] array)
+	{
+		return track(new QValue(array));
+	}
+
+	// Applies the function to the arguments, and tracks the result.
+	public QValue apply(QFunction function, QValue... arguments)
+	{
+		return track(function.apply(arguments));
+	}
+
+	// Stops tracking the given value, so it will not be disposed when the arena is closed. Returns the value.
+	public QValue release(QValue value)
+	{
+		for (int i = values.size() - 1; i >= 0; i--)
+		{
+			if (values.get(i) == value)
+			{
+				values.remove(i);
+				if (debug)
+					Statistics.get(owner).numReleased++;
+				break;
+			}
+		}
+		return value;
+	}
+
+	// Disposes all values that are still tracked, the most recent first.
+	@Override
+	public void close()
+	{
+		if (closed)
+			return;
+
+		for (int i = values.size() - 1; i >= 0; i--)
+			values.get(i).dispose();
+
+		if (debug)
+			Statistics.closed(this, values.size());
+
+		values.clear();
+		closed = true;
+	}
+
+	// Returns a report with the statistics per arena owner, or an empty string if debug mode is off.
+	public static String getReport()
+	{
+		return debug ? Statistics.report() : "";
+	}
+
+	// Statistics for the debug mode, per arena owner
+	private static class Statistics
+	{
+		private static final Map<String, Statistics> statistics = new TreeMap<String, Statistics>();
+		private static final Set<QValueArena> openArenas = Collections.newSetFromMap(new IdentityHashMap<QValueArena, Boolean>());
+
+		static
+		{
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(report())));
+		}
+
+		int numArenas;
+		int numTracked;
+		int numDisposed;
+		int numReleased;
+
+		static synchronized Statistics get(String owner)
+		{
+			Statistics s = statistics.get(owner);
+			if (s == null)
+			{
+				s = new Statistics();
+				statistics.put(owner, s);
+			}
+			return s;
+		}
+
+		static synchronized void opened(QValueArena arena)
+		{
+			get(arena.owner).numArenas++;
+			openArenas.add(arena);
+		}
+
+		static synchronized void closed(QValueArena arena, int numDisposed)
+		{
+			get(arena.owner).numDisposed += numDisposed;
+			openArenas.remove(arena);
+		}
+
+		static synchronized String report()
+		{
+			StringBuilder sb = new StringBuilder("QValue arena report:\n");
+			for (Map.Entry<String, Statistics> entry : statistics.entrySet())
+			{
+				final String owner = entry.getKey();
+				final Statistics s = entry.getValue();
+
+				// Values in arenas that were never closed will never be disposed.
+				int numOpen = 0;
+				int numLeaked = 0;
+				for (QValueArena arena : openArenas)
+				{
+					if (arena.owner.equals(owner))
+					{
+						numOpen++;
+						numLeaked += arena.values.size();
+					}
+				}
+
+				sb.append("  ").append(owner).append(": ")
+				  .append(s.numArenas).append(" arenas (").append(numOpen).append(" not closed), ")
+				  .append(s.numTracked).append(" values tracked, ")
+				  .append(s.numDisposed).append(" disposed, ")
+				  .append(s.numReleased).append(" released to the caller, ")
+				  .append(numLeaked).append(" leaked\n");
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package be.vib.imagej;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import be.vib.bits.QExecutor;
+
+// The Quasar backend runs the denoising algorithms from vib_denoising_algorithms.qlib,
+// on the graphics card if possible. All Quasar calls must be made from the single Quasar thread,
+// which is why its denoisers are executed via the QExecutor.
+public class QuasarBackend implements DenoiseBackend
+{
+	private static final QuasarBackend instance = new QuasarBackend();
+
+	private volatile boolean initialized = false;  // Quasar started and our qlib loaded?
+	private volatile QuasarRegistry registry = null;  // function handles and constants, once initialized
+
+	private QuasarBackend()
+	{
+	}
+
+	public static QuasarBackend getInstance()
+	{
+		return instance;
+	}
+
+	// Called once Quasar is started and the .qlib with the denoising algorithms is loaded.
+	public void setInitialized(boolean initialized)
+	{
+		if (initialized && registry == null)
+			registry = new QuasarRegistry();
+		this.initialized = initialized;
+	}
+
+	// Returns the registry with the Quasar function handles and constant operands for our denoisers,
+	// or null if Quasar is not initialized yet.
+	public QuasarRegistry getRegistry()
+	{
+		return registry;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Quasar";
+	}
+
+	@Override
+	public boolean isAvailable()
+	{
+		return initialized;
+	}
+
+	@Override
+	public int getSpeedRank()
+	{
+		return 100;
+	}
+
+	@Override
+	public boolean supports(Algorithm.Name algorithm)
+	{
+		return true;
+	}
+
+	@Override
+	public Denoiser createDenoiser(Algorithm.Name algorithm, DenoiseParams params)
+	{
+		switch (algorithm)
+		{
+			case GAUSSIAN:
+				return new GaussianDenoiser((GaussianParams)params);
+			case BILATERAL:
+				return new BilateralDenoiser((BilateralParams)params);
+			case BLSGSM:
+				return new BLSGSMDenoiser((BLSGSMParams)params);
+			case WAVELET_THRESHOLDING:
+				return new WaveletThresholdingDenoiser((WaveletThresholdingParams)params);
+			case ANISOTROPIC_DIFFUSION:
+				return new AnisotropicDiffusionDenoiser((AnisotropicDiffusionParams)params);
+			case NONLOCALMEANS:
+				return new NonLocalMeansDenoiser((NonLocalMeansParams)params);
+			case TIKHONOV:
+				return new TikhonovDenoiser((TikhonovParams)params);
+			case TOTAL_VARIATION:
+				return new TotalVariationDenoiser((TotalVariationParams)params);
+			default:
+				throw new RuntimeException("Unsupported denoising algorithm " + algorithm + " for backend " + getName());
+		}
+	}
+
+	@Override
+	public <T> T execute(Callable<T> task) throws InterruptedException, ExecutionException
+	{
+		Future<T> future = QExecutor.getInstance().submit(task);
+		try
+		{
+			return future.get(); // TODO: check what happens to quasar::exception_t if thrown from C++ during the task.
+		}
+		catch (InterruptedException e)
+		{
+			// The caller lost interest (e.g. a superseded preview). A Quasar call cannot be interrupted,
+			// but if the task did not start yet, it need not run at all.
+			future.cancel(false);
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean supportsConcurrentDenoising()
+	{
+		return false;  // everything runs on the single Quasar thread
+	}
+
+	@Override
+	public boolean supportsCancellation()
+	{
+		return false;  // execute() stops waiting, but a Quasar function that has started runs to completion
+	}
+}
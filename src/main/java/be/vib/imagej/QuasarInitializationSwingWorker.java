@@ -1,26 +1,112 @@
 package be.vib.imagej;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 import javax.swing.SwingWorker;
 
 import be.vib.bits.JavaQuasarBridge;
 import ij.IJ;
 
-public class QuasarInitializationSwingWorker extends SwingWorker<Void, Void>
+// Starts Quasar and loads our qlib in the background (unless that was done already, for example by the
+// QuasarStartupService when Fiji was launched). Optionally it then also warms up the denoising algorithms
+// (see QuasarWarmUp), reporting status messages to onStatus and the warm-up progress (0-100) via the "progress" property.
+public class QuasarInitializationSwingWorker extends SwingWorker<Void, String>
 {
 	private Runnable onSuccess;
 	private Runnable onFailure;
+	private boolean warmUp;
+	private Consumer<String> onStatus;
+	
+	private static RuntimeException initializationFailure = null; // set if initializing Quasar failed
 	
 	public QuasarInitializationSwingWorker(Runnable onSuccess, Runnable onFailure) 
+	{
+		this(onSuccess, onFailure, false, null);
+	}
+	
+	public QuasarInitializationSwingWorker(Runnable onSuccess, Runnable onFailure, boolean warmUp, Consumer<String> onStatus) 
 	{
 		this.onSuccess = onSuccess;
 		this.onFailure = onFailure;
+		this.warmUp = warmUp;
+		this.onStatus = onStatus;
 	}
 	
 	@Override
 	public Void doInBackground() throws InterruptedException, ExecutionException
 	{	
+		initializeQuasar(); // throws a RuntimeException on failure - if so it gets wrapped as an ExecutionException and caught in done()
+		
+		// Run each algorithm once, so the user's first preview does not pay for compiling the Quasar code.
+		if (warmUp)
+		{
+			QuasarWarmUp.run((algorithm, index, count) -> {
+				publish("Preparing the denoising algorithms (" + (index + 1) + "/" + count + ")...");
+				setProgress(100 * index / count);
+			});
+			setProgress(100);
+		}
+		
+		return null;
+	}
+	
+	@Override
+	protected void process(List<String> messages)
+	{
+		if (onStatus != null)
+			onStatus.accept(messages.get(messages.size() - 1));
+	}
+	
+	@Override
+	public void done()
+	{
+		try
+		{
+			get(); // get the result of doInBackground() - Void if it was successful, an ExecutionException if it failed
+			onSuccess.run();
+		}
+		catch (ExecutionException e)
+		{
+			e.getCause().printStackTrace();
+			onFailure.run();
+		}
+		catch (InterruptedException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	// Starts Quasar and loads our qlib, unless this was done already. Safe to call from several threads:
+	// Quasar can only be initialized a single time, so a second caller waits for the first one to finish.
+	// If the initialization failed, all later calls throw the same RuntimeException (without retrying).
+	public static synchronized void initializeQuasar()
+	{
+		if (QuasarBackend.getInstance().isAvailable())
+			return;
+		
+		if (initializationFailure != null)
+			throw initializationFailure;
+		
+		try
+		{
+			startQuasarAndLoadModule();
+		}
+		catch (RuntimeException e)
+		{
+			initializationFailure = e;
+			throw e;
+		}
+		
+		// From now on the Quasar denoising backend can be used.
+		QuasarBackend.getInstance().setInitialized(true);
+	}
+	
+	private static void startQuasarAndLoadModule()
+	{
 		// Use the QUASAR_PATH environment variable to specify where to find the Quasar runtime.
 		// If this variable is set, then Quasar will be started from there.
 		// If this variable is not set, then set it to point to the Fiji.app\Quasar folder. A minimal Quasar should have been installed there.
@@ -37,35 +123,33 @@ public class QuasarInitializationSwingWorker extends SwingWorker<Void, Void>
 		}
 
 		// Start the Quasar host
-		JavaQuasarBridge.startQuasar("cuda", false); // throws a RuntimeException on failure - if so it gets wrapped as an ExecutionException and caught in done()	
+		JavaQuasarBridge.startQuasar("cuda", false); // throws a RuntimeException on failure
 		
 		// Schedule Quasar release for later, when the Java VM shuts down. This is ugly, but
 		// there doesn't seem to be any other obvious way to release Quasar "at the very end".
 		// (And Quasar can only be initialized and released a single time.)
 		JavaQuasarBridge.addQuasarShutdownHook();
 		
-		// Extract the .qlib file with our denoising Quasar code from our jar file into a temporary folder, and ask Quasar to load it.
-		JavaQuasarBridge.extractAndLoadModule("be.vib.imagej.QuasarInitializationSwingWorker", "qlib/vib_denoising_algorithms.qlib", "vib_denoising_algorithms.qlib", "vib_em_denoising_");
-		
-		return null;
-	}
-	
-	@Override
-	public void done()
-	{
+		// Load the .qlib file with our denoising Quasar code. It is extracted from our jar file only once per plugin version,
+		// into a persistent cache folder (see QuasarModuleCache). If that fails, fall back to extracting it into a temporary folder.
+		File module = null;
 		try
 		{
-			get(); // get the result of doInBackground() - Void if it was successful, an ExecutionException if it failed
-			onSuccess.run();
+			module = QuasarModuleCache.getModule("qlib/vib_denoising_algorithms.qlib", "vib_denoising_algorithms.qlib");
 		}
-		catch (ExecutionException e)
+		catch (IOException e)
 		{
-			e.getCause().printStackTrace();
-			onFailure.run();
+			System.out.println("Failed to cache the Quasar module (" + e.getMessage() + "), extracting it to a temporary folder instead.");
 		}
-		catch (InterruptedException e)
+		
+		if (module != null)
 		{
-			e.printStackTrace();
+			if (!JavaQuasarBridge.loadModule(module.getAbsolutePath()))
+				throw new RuntimeException("Failed to load Quasar module " + module);
+		}
+		else
+		{
+			JavaQuasarBridge.extractAndLoadModule("be.vib.imagej.QuasarInitializationSwingWorker", "qlib/vib_denoising_algorithms.qlib", "vib_denoising_algorithms.qlib", "vib_em_denoising_");
 		}
 	}
 	
@@ -0,0 +1,111 @@
+package be.vib.imagej;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// QuasarModuleCache keeps the .qlib with our denoising algorithms extracted in a persistent folder,
+// so it does not need to be extracted from the plugin jar into a new temporary folder on every Fiji session.
+//
+// The cache folder is <user home>/.denoisem/qlib/<plugin version>, or <cache folder>/qlib/<plugin version>
+// if the Java system property be.vib.denoisem.cache.dir is set (see getCacheRoot()). The cached .qlib is only used if its SHA-256
+// checksum matches that of the .qlib in the jar; otherwise (first use, a partially written or stale file)
+// it is extracted again. The extraction writes a temporary file first and then renames it, so concurrent
+// Fiji instances never see a half-written .qlib.
+public class QuasarModuleCache
+{
+	public static final String CACHE_DIR_PROPERTY = "be.vib.denoisem.cache.dir";
+
+	private QuasarModuleCache()
+	{
+	}
+
+	// Returns the path of the cached copy of the given resource from the plugin jar, extracting it first if needed.
+	// Throws an IOException if the resource cannot be found or the cache folder is not writable.
+	public static File getModule(String resourceName, String fileName) throws IOException
+	{
+		final byte[] module = readResource(resourceName);
+		final byte[] checksum = sha256(module);
+
+		File dir = getCacheDir();
+		File file = new File(dir, fileName);
+
+		if (file.isFile() && Arrays.equals(sha256(Files.readAllBytes(file.toPath())), checksum))
+		{
+			System.out.println("Using cached Quasar module " + file);
+			return file;
+		}
+
+		System.out.println("Extracting Quasar module to " + file);
+		Files.createDirectories(dir.toPath());
+		Path tempFile = Files.createTempFile(dir.toPath(), fileName, ".tmp");
+		try
+		{
+			Files.write(tempFile, module);
+			Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			Files.deleteIfExists(tempFile);
+		}
+		return file;
+	}
+
+	public static File getCacheDir()
+	{
+		return new File(getCacheRoot(), "qlib" + File.separator + getPluginVersion());
+	}
+
+	// Returns the root folder for the plugin's persistent caches: <user home>/.denoisem,
+	// unless overridden by the Java system property be.vib.denoisem.cache.dir.
+	public static File getCacheRoot()
+	{
+		String root = System.getProperty(CACHE_DIR_PROPERTY);
+		if (root == null)
+			root = System.getProperty("user.home") + File.separator + ".denoisem";
+
+		return new File(root);
+	}
+
+	// Returns the plugin version from the jar manifest (Implementation-Version), or "dev" when not running from the plugin jar.
+	public static String getPluginVersion()
+	{
+		String version = QuasarModuleCache.class.getPackage().getImplementationVersion();
+		return (version != null) ? version : "dev";
+	}
+
+	private static byte[] readResource(String resourceName) throws IOException
+	{
+		try (InputStream in = QuasarModuleCache.class.getClassLoader().getResourceAsStream(resourceName))
+		{
+			if (in == null)
+				throw new IOException("Resource " + resourceName + " not found");
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[65536];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				out.write(buffer, 0, n);
+			return out.toByteArray();
+		}
+	}
+
+	private static byte[] sha256(byte[] data)
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256").digest(data);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e); // every Java platform is required to support SHA-256
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package be.vib.imagej;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import be.vib.bits.QFunction;
+import be.vib.bits.QValue;
+
+// The QuasarRegistry holds what the Quasar denoisers would otherwise recreate for every image tile:
+// - the QFunction handles of the functions in vib_denoising_algorithms.qlib,
+// - constant operands: blur kernels (fgaussian(size, sigma)), host variables such as the wavelet filter banks,
+//   and constant arrays such as the EM correlation filter.
+// Resolving a function and uploading a constant then happens only once, which matters most for small tiles
+// and previews, where this overhead is comparable to the denoising itself.
+//
+// The registry is created by the QuasarBackend once Quasar is started and our qlib is loaded. Everything in it
+// is created lazily, on first use, because Quasar calls must be made from the Quasar thread (where the denoisers run).
+// The constant operands are owned by the registry: denoisers must not dispose them (nor track them in a QValueArena).
+public class QuasarRegistry
+{
+	// Blur kernels depend on a user parameter (e.g. the Tikhonov deconvolution sigma), so keep only the most recent ones.
+	private static final int MAX_CACHED_KERNELS = 16;
+
+	private final Map<String, QFunction> functions = new HashMap<String, QFunction>();
+	private final Map<String, QValue> constants = new HashMap<String, QValue>();
+
+	private final Map<String, QValue> kernels = new LinkedHashMap<String, QValue>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, QValue> eldest)
+		{
+			if (size() <= MAX_CACHED_KERNELS)
+				return false;
+
+			eldest.getValue().dispose();
+			return true;
+		}
+	};
+
+	QuasarRegistry()
+	{
+	}
+
+	// Returns the handle of the Quasar function with the given signature, e.g. "denoise_nlmeans(mat,int,int,scalar)".
+	public synchronized QFunction function(String signature)
+	{
+		QFunction function = functions.get(signature);
+		if (function == null)
+		{
+			function = new QFunction(signature);
+			functions.put(signature, function);
+		}
+		return function;
+	}
+
+	// Returns the normalized size x size Gaussian blur kernel with the given sigma, as fgaussian(size, sigma).
+	public synchronized QValue gaussianKernel(int size, float sigma)
+	{
+		final String key = size + "," + Float.floatToIntBits(sigma);
+		QValue kernel = kernels.get(key);
+		if (kernel == null)
+		{
+			QValue sizeValue = new QValue(size);
+			QValue sigmaValue = new QValue(sigma);
+			kernel = function("fgaussian(int,scalar)").apply(sizeValue, sigmaValue);
+			sizeValue.dispose();
+			sigmaValue.dispose();
+			kernels.put(key, kernel);
+		}
+		return kernel;
+	}
+
+	// Returns the value of the given global variable of the qlib (e.g. "filtercoeff_farras").
+	public synchronized QValue hostVariable(String name)
+	{
+		QValue value = constants.get(name);
+		if (value == null)
+		{
+			value = QValue.readhostVariable(name);
+			constants.put(name, value);
+		}
+		return value;
+	}
+
+	// Returns the element (i, j) of the given global variable of the qlib (e.g. the wavelet filters at("filtercoeff_selcw", 3, 1)).
+	public synchronized QValue hostVariable(String name, int i, int j)
+	{
+		final String key = name + "[" + i + "," + j + "]";
+		QValue value = constants.get(key);
+		if (value == null)
+		{
+			value = hostVariable(name).at(i, j);
+			constants.put(key, value);
+		}
+		return value;
+	}
+
+	// Returns the given constant array as a Quasar value, uploaded once under the given name.
+	// The array must not change afterwards.
+	public synchronized QValue constant(String name, float[] values)
+	{
+		QValue value = constants.get(name);
+		if (value == null)
+		{
+			value = new QValue(values);
+			constants.put(name, value);
+		}
+		return value;
+	}
+
+	// Disposes all cached constant operands. Must be called on the Quasar thread.
+	public synchronized void clear()
+	{
+		for (QValue value : constants.values())
+			value.dispose();
+		for (QValue value : kernels.values())
+			value.dispose();
+		constants.clear();
+		kernels.clear();
+		functions.clear();
+	}
+}
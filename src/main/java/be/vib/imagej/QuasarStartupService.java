@@ -0,0 +1,47 @@
+package be.vib.imagej;
+
+import java.util.prefs.Preferences;
+
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+// The QuasarStartupService optionally starts Quasar (and warms up the denoising algorithms) in the background
+// as soon as Fiji is launched, instead of when the user opens the denoising wizard. By the time the user has
+// opened an image and selected a region of interest, the first denoising preview is then ready almost immediately.
+//
+// SciJava creates this service when Fiji starts. It only does something if the user enabled
+// "Start Quasar when Fiji starts" in the DenoisEM preferences, since starting Quasar takes a considerable amount
+// of time, memory and graphics card resources, which is a waste for Fiji sessions that do not use the plugin.
+@Plugin(type = Service.class)
+public class QuasarStartupService extends AbstractService
+{
+	public static final String STARTUP_PREFERENCE = "quasar.startatlaunch";
+
+	@Override
+	public void initialize()
+	{
+		Preferences prefs = Preferences.userRoot().node("be/vib/denoisem");
+		if (!prefs.getBoolean(STARTUP_PREFERENCE, false))
+			return;
+
+		final boolean warmUp = prefs.getBoolean(WizardPageInitializeQuasar.WARMUP_PREFERENCE, true);
+
+		Thread thread = new Thread(() -> {
+			try
+			{
+				QuasarInitializationSwingWorker.initializeQuasar();
+				if (warmUp)
+					QuasarWarmUp.run(null);
+			}
+			catch (Exception e)
+			{
+				// The wizard will report the failure when the user opens it.
+				System.out.println("Starting Quasar at Fiji launch failed.");
+				e.printStackTrace();
+			}
+		}, "DenoisEM Quasar startup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+}
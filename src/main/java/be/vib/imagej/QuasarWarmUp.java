@@ -0,0 +1,154 @@
+package be.vib.imagej;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+// QuasarWarmUp runs each denoising algorithm of the Quasar backend once on a tiny synthetic image.
+// The first call to a Quasar function pays for its just-in-time compilation (and kernel compilation
+// for the graphics card). Without a warm-up this cost lands on the user's first preview of each algorithm,
+// making the parameter sliders feel sluggish exactly when the user starts exploring them.
+//
+// Each algorithm is run twice: the first ("cold") run includes the compilation cost, the second ("warm") run
+// does not. Their difference is the cold-start penalty that the warm-up saved the user.
+// The timings are kept for the lifetime of the Java VM and are available via getTimings() and getReport().
+// The wizard shows them once Quasar is ready (see WizardPageInitializeQuasar).
+public class QuasarWarmUp
+{
+	public interface ProgressListener
+	{
+		// Called before warming up the given algorithm, the index-th of count algorithms (0-based).
+		void warmingUp(Algorithm.Name algorithm, int index, int count);
+	}
+
+	public static class Timing
+	{
+		public final long coldMillis;
+		public final long warmMillis;
+
+		public Timing(long coldMillis, long warmMillis)
+		{
+			this.coldMillis = coldMillis;
+			this.warmMillis = warmMillis;
+		}
+
+		public long getColdStartPenaltyMillis()
+		{
+			return Math.max(0, coldMillis - warmMillis);
+		}
+	}
+
+	private static final int IMAGE_SIZE = 64; // small enough to be fast, big enough for the largest filter footprint
+
+	private static final Map<Algorithm.Name, Timing> timings = new EnumMap<Algorithm.Name, Timing>(Algorithm.Name.class);
+
+	private static boolean done = false;
+
+	private QuasarWarmUp()
+	{
+	}
+
+	// Warms up all algorithms supported by the Quasar backend. Must be called after Quasar was initialized,
+	// from a background thread (the denoisers themselves are run on the Quasar thread).
+	// A failure to warm up an algorithm is reported but otherwise ignored: the algorithm will simply be slow the first time.
+	// The warm-up is done only once; later calls (e.g. from the wizard after a warm-up at Fiji launch) return immediately,
+	// or wait for a warm-up in progress to finish.
+	public static synchronized void run(ProgressListener listener) throws InterruptedException
+	{
+		if (done)
+			return;
+
+		QuasarBackend backend = QuasarBackend.getInstance();
+		assert(backend.isAvailable());
+
+		ImagePlus image = newSyntheticImage();
+		ImageNormalizer normalizer = new ImageNormalizer(image);
+		ImageProcessor ip = image.getProcessor();
+
+		Algorithm.Name[] algorithms = Algorithm.Name.values();
+		for (int i = 0; i < algorithms.length; i++)
+		{
+			Algorithm.Name algorithm = algorithms[i];
+			if (!backend.supports(algorithm))
+				continue;
+
+			if (listener != null)
+				listener.warmingUp(algorithm, i, algorithms.length);
+
+			try
+			{
+				final long coldMillis = denoise(backend, algorithm, ip, normalizer);
+				final long warmMillis = denoise(backend, algorithm, ip, normalizer);
+				synchronized (timings)
+				{
+					timings.put(algorithm, new Timing(coldMillis, warmMillis));
+				}
+			}
+			catch (InterruptedException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				System.out.println("Quasar warm-up of " + algorithm + " failed.");
+				e.printStackTrace();
+			}
+		}
+
+		done = true;
+		System.out.print(getReport());
+	}
+
+	// Returns the warm-up timings per algorithm, empty if no warm-up was done.
+	public static Map<Algorithm.Name, Timing> getTimings()
+	{
+		synchronized (timings)
+		{
+			return new EnumMap<Algorithm.Name, Timing>(timings);
+		}
+	}
+
+	public static String getReport()
+	{
+		StringBuilder sb = new StringBuilder("Quasar warm-up (" + IMAGE_SIZE + "x" + IMAGE_SIZE + " image):\n");
+		for (Map.Entry<Algorithm.Name, Timing> entry : getTimings().entrySet())
+		{
+			Timing t = entry.getValue();
+			sb.append("  ").append(entry.getKey()).append(": ")
+			  .append(t.coldMillis).append(" ms cold, ")
+			  .append(t.warmMillis).append(" ms warm, ")
+			  .append(t.getColdStartPenaltyMillis()).append(" ms cold-start penalty\n");
+		}
+		return sb.toString();
+	}
+
+	private static long denoise(QuasarBackend backend, Algorithm.Name algorithm, ImageProcessor image, ImageNormalizer normalizer) throws Exception
+	{
+		Denoiser denoiser = backend.createDenoiser(algorithm, DenoiseParams.newParams(algorithm));
+		denoiser.setImage(image, normalizer);
+
+		final long start = System.nanoTime();
+		backend.execute(denoiser);
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	// A noisy 8-bit ramp; the content does not matter, only that the denoisers have some work to do.
+	private static ImagePlus newSyntheticImage()
+	{
+		Random random = new Random(42);
+		byte[] pixels = new byte[IMAGE_SIZE * IMAGE_SIZE];
+		for (int y = 0; y < IMAGE_SIZE; y++)
+		{
+			for (int x = 0; x < IMAGE_SIZE; x++)
+			{
+				final int value = 64 + 2 * x + (int)(20 * random.nextGaussian());
+				pixels[y * IMAGE_SIZE + x] = (byte)Math.max(0, Math.min(255, value));
+			}
+		}
+		return new ImagePlus("Quasar warm-up", new ByteProcessor(IMAGE_SIZE, IMAGE_SIZE, pixels));
+	}
+}
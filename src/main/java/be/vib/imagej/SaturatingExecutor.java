@@ -1,37 +0,0 @@
-package be.vib.imagej;
-
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-
-public class SaturatingExecutor
-{
-	private ThreadPoolExecutor executor;
-
-//	private static class MyDiscardOldestPolicy extends ThreadPoolExecutor.DiscardOldestPolicy
-//	{
-//		@Override
-//		public void rejectedExecution(Runnable r, ThreadPoolExecutor e)  
-//		{
-//			System.out.println("Rejected execution");
-//			super.rejectedExecution(r, e);
-//		}
-//	}
-
-	public SaturatingExecutor(int poolSize, int queueSize)
-	{
-		executor = new ThreadPoolExecutor(poolSize,
-				                          poolSize,
-				                          0L,
-				                          TimeUnit.SECONDS,
-				                          new ArrayBlockingQueue<Runnable>(queueSize, true),
-				                          new ThreadPoolExecutor.DiscardOldestPolicy()); // for debugging: new MyDiscardOldestPolicy()
-	}
-	
-	public void Submit(Runnable task)
-	{
-//		System.out.println("Trying to submit");
-		executor.execute(task);
-	}
-
-}
@@ -4,6 +4,8 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.text.Format;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Function;
 
 import javax.swing.JFormattedTextField;
@@ -114,6 +116,24 @@ class SliderFieldPair implements ChangeListener, PropertyChangeListener
 		return value;
 	}
 	
+	// Returns the values the user gets by moving the slider one step down or up from its current position
+	// (fewer than two values at either end of the slider). These are exactly the values that stateChanged() would set.
+	public List<Float> getNeighbouringValues()
+	{
+		List<Float> values = new ArrayList<Float>();
+		final int position = slider.getValue();
+		for (int neighbour : new int[] { position - 1, position + 1 })
+		{
+			if (neighbour < sliderMin || neighbour > sliderMax)
+				continue;
+			
+			float neighbourValue = fromSlider.apply(neighbour);
+			if (neighbourValue != value)
+				values.add(neighbourValue);
+		}
+		return values;
+	}
+	
 	private void updateSlider()
 	{
 		ignoreSlider = true;
@@ -2,6 +2,8 @@ package be.vib.imagej;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.JSlider;
 import javax.swing.JSpinner;
@@ -93,6 +95,17 @@ class SliderSpinnerPair implements ChangeListener
 		return value;
 	}
 
+	// Returns the values one step below and above the current value, as far as they are within range.
+	public List<Integer> getNeighbouringValues()
+	{
+		List<Integer> values = new ArrayList<Integer>();
+		if (value - 1 >= slider.getMinimum())
+			values.add(value - 1);
+		if (value + 1 <= slider.getMaximum())
+			values.add(value + 1);
+		return values;
+	}
+
 	@Override
 	public void stateChanged(ChangeEvent e)
 	{
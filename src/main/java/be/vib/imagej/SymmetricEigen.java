@@ -0,0 +1,83 @@
+package be.vib.imagej;
+
+// Eigendecomposition of small real symmetric matrices (row-major n x n double arrays) with the cyclic Jacobi method.
+// Used for the covariance matrices of the BLS-GSM denoiser and the Liu noise estimator.
+class SymmetricEigen
+{
+	private static final int MAX_SWEEPS = 50;
+
+	// Computes a = V diag(values) V^T, with the eigenvectors in the columns of V (vectors may be null if not needed).
+	// The matrix a is not modified. The eigenvalues are not sorted.
+	static void decompose(double[] a, int n, double[] vectors, double[] values)
+	{
+		final double[] m = a.clone();
+		if (vectors != null)
+			for (int i = 0; i < n * n; i++)
+				vectors[i] = (i / n == i % n) ? 1 : 0;
+
+		for (int sweep = 0; sweep < MAX_SWEEPS; sweep++)
+		{
+			double offDiagonal = 0;
+			double diagonal = 0;
+			for (int i = 0; i < n; i++)
+			{
+				diagonal += m[i * n + i] * m[i * n + i];
+				for (int j = i + 1; j < n; j++)
+					offDiagonal += m[i * n + j] * m[i * n + j];
+			}
+			if (offDiagonal <= 1e-30 * diagonal || offDiagonal == 0)
+				break;
+
+			for (int p = 0; p < n - 1; p++)
+			{
+				for (int q = p + 1; q < n; q++)
+				{
+					final double apq = m[p * n + q];
+					if (apq == 0)
+						continue;
+
+					final double theta = (m[q * n + q] - m[p * n + p]) / (2 * apq);
+					final double t = Math.signum(theta == 0 ? 1 : theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+					final double c = 1 / Math.sqrt(t * t + 1);
+					final double s = t * c;
+
+					for (int k = 0; k < n; k++)
+					{
+						final double mkp = m[k * n + p];
+						final double mkq = m[k * n + q];
+						m[k * n + p] = c * mkp - s * mkq;
+						m[k * n + q] = s * mkp + c * mkq;
+					}
+					for (int k = 0; k < n; k++)
+					{
+						final double mpk = m[p * n + k];
+						final double mqk = m[q * n + k];
+						m[p * n + k] = c * mpk - s * mqk;
+						m[q * n + k] = s * mpk + c * mqk;
+					}
+					if (vectors != null)
+					{
+						for (int k = 0; k < n; k++)
+						{
+							final double vkp = vectors[k * n + p];
+							final double vkq = vectors[k * n + q];
+							vectors[k * n + p] = c * vkp - s * vkq;
+							vectors[k * n + q] = s * vkp + c * vkq;
+						}
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < n; i++)
+			values[i] = m[i * n + i];
+	}
+
+	// Returns the eigenvalues of the symmetric n x n matrix a.
+	static double[] eigenvalues(double[] a, int n)
+	{
+		double[] values = new double[n];
+		decompose(a, n, null, values);
+		return values;
+	}
+}
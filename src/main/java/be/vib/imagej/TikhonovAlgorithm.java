@@ -30,12 +30,6 @@ public class TikhonovAlgorithm extends Algorithm
 	    return new TikhonovParams(params);
 	}
 	
-	@Override
-	public Denoiser getDenoiserCopy()
-	{
-		return new TikhonovDenoiser(new TikhonovParams(params));
-	}
-
 	@Override
     public DenoiseParamsPanelBase getPanel()
     {
@@ -8,7 +8,7 @@ public class TikhonovDenoiser extends Denoiser
 {
 	public TikhonovDenoiser(TikhonovParams params)
 	{
-		super(params);
+		super(params, QuasarBackend.getInstance());
 	}
 
 	@Override
@@ -21,51 +21,48 @@ public class TikhonovDenoiser extends Denoiser
 
 	public ImageProcessor tikhonovDenoising()
 	{
-		QFunction tikhonov_denoise = new QFunction("tikhonov_denoise(mat,scalar,int)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction tikhonov_denoise = registry.function("tikhonov_denoise(mat,scalar,int)");
 		
 		final boolean byteRange = false;  // normalize pixel values to/from [0,1] before/after denoising
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-		
-		TikhonovParams params = (TikhonovParams)this.params;
-		
-		QValue denoisedImageCube = tikhonov_denoise.apply(noisyImageCube,
-										    	          new QValue(params.lambda),
-				                                          new QValue(params.numIterations));
-		
-		noisyImageCube.dispose();
 
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-		
-		denoisedImageCube.dispose();
-
-		return denoisedImage;
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
+			
+			TikhonovParams params = (TikhonovParams)this.params;
+			
+			QValue denoisedImageCube = arena.apply(tikhonov_denoise,
+			                                       noisyImageCube,
+			                                       arena.value(params.lambda),
+			                                       arena.value(params.numIterations));
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 
 	public ImageProcessor tikhonovDenoisingWithDeconvolution()
 	{
-		QFunction tikhonov_denoise_deconvolution = new QFunction("tikhonov_denoise_dec(mat,mat,scalar,int)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction tikhonov_denoise_deconvolution = registry.function("tikhonov_denoise_dec(mat,mat,scalar,int)");
 		
 		final boolean byteRange = false;  // normalize pixel values to/from [0,1] before/after denoising
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-		
-		TikhonovParams params = (TikhonovParams)this.params;
-		
-		QFunction fgaussian = new QFunction("fgaussian(int,scalar)");
-		
-		QValue blurKernel = fgaussian.apply(new QValue(TikhonovParams.blurKernelSize), new QValue(params.sigma)); 
-		
-		QValue denoisedImageCube = tikhonov_denoise_deconvolution.apply(noisyImageCube,
-												                        blurKernel,
-											                            new QValue(params.lambda),
-				                                                        new QValue(params.numIterations));
-		
-		noisyImageCube.dispose();
-		blurKernel.dispose();
-
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-
-		denoisedImageCube.dispose();
 
-		return denoisedImage;
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
+			
+			TikhonovParams params = (TikhonovParams)this.params;
+			
+			QValue blurKernel = registry.gaussianKernel(TikhonovParams.blurKernelSize, params.sigma); 
+			
+			QValue denoisedImageCube = arena.apply(tikhonov_denoise_deconvolution,
+			                                       noisyImageCube,
+			                                       blurKernel,
+			                                       arena.value(params.lambda),
+			                                       arena.value(params.numIterations));
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 }
\ No newline at end of file
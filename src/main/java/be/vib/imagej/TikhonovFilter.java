@@ -0,0 +1,173 @@
+package be.vib.imagej;
+
+import java.util.Arrays;
+
+// Pure-Java Tikhonov denoising and deconvolution, equivalent to tikhonov_denoise() and tikhonov_denoise_dec()
+// in tikhonov.q. Those solve A x = y with
+//   A = I + lambda L L      (denoising)
+//   A = H + lambda L L      (deconvolution, H the convolution with the Gaussian blur kernel)
+// where L is the 5-point Laplacian, all with mirror boundary handling, using numIterations conjugate
+// gradient iterations.
+//
+// With mirror boundaries all these operators are diagonalized by the 2D DCT-II, so here the system is
+// solved in closed form: x = idct(dct(y) / symbol(A)). This is the solution the conjugate gradient
+// iterations converge to. Only if symbol(A) is not safely positive (A not positive definite, which can happen
+// for a truncated blur kernel with a tiny lambda) the conjugate gradient iterations are used instead.
+public class TikhonovFilter
+{
+	private static final double MIN_SYMBOL = 1e-3;
+
+	private final float lambda;
+	private final int numIterations;
+	private final GaussianFilter blur;  // null for denoising without deconvolution
+
+	public TikhonovFilter(float lambda, int numIterations, GaussianFilter blur)
+	{
+		assert(blur == null || blur.getKernel() != null);
+		this.lambda = lambda;
+		this.numIterations = numIterations;
+		this.blur = blur;
+	}
+
+	public float[] filter(float[] y, int width, int height)
+	{
+		double[] symbolX = operatorSymbol(width);
+		double[] symbolY = operatorSymbol(height);
+		double[] laplacianX = laplacianSymbol(width);
+		double[] laplacianY = laplacianSymbol(height);
+
+		return isPositive(width, height, symbolX, symbolY, laplacianX, laplacianY) ? solveDct(y, width, height, symbolX, symbolY, laplacianX, laplacianY)
+		                                                                           : solveConjugateGradient(y, width, height);
+	}
+
+	// Returns true if filtering a width x height image uses the conjugate gradient iterations,
+	// so its result depends on numIterations.
+	public boolean usesIterations(int width, int height)
+	{
+		return !isPositive(width, height, operatorSymbol(width), operatorSymbol(height), laplacianSymbol(width), laplacianSymbol(height));
+	}
+
+	// Checks that A is safely positive definite.
+	private boolean isPositive(int width, int height, double[] symbolX, double[] symbolY, double[] laplacianX, double[] laplacianY)
+	{
+		boolean positive = true;
+		for (int v = 0; v < height && positive; v++)
+			for (int u = 0; u < width && positive; u++)
+				positive = symbol(symbolX[u], symbolY[v], laplacianX[u], laplacianY[v]) > MIN_SYMBOL;
+		return positive;
+	}
+
+	private double symbol(double hx, double hy, double lx, double ly)
+	{
+		final double l = lx + ly;
+		return hx * hy + lambda * l * l;
+	}
+
+	private float[] solveDct(float[] y, int width, int height, double[] symbolX, double[] symbolY, double[] laplacianX, double[] laplacianY)
+	{
+		float[] x = y.clone();
+
+		Dct2D dct = Dct2D.getPlan(width, height);
+		dct.forward(x);
+
+		for (int v = 0; v < height; v++)
+			for (int u = 0; u < width; u++)
+				x[v * width + u] /= symbol(symbolX[u], symbolY[v], laplacianX[u], laplacianY[v]);
+
+		dct.inverse(x);
+		return x;
+	}
+
+	// DCT symbol of the blur operator along one dimension (1 for denoising)
+	private double[] operatorSymbol(int n)
+	{
+		if (blur != null)
+			return Dct2D.symbol(blur.getKernel(), n);
+
+		double[] s = new double[n];
+		Arrays.fill(s, 1.0);
+		return s;
+	}
+
+	// DCT symbol of the 1D Laplacian [-1 2 -1]; the 2D 5-point Laplacian symbol is the sum of both dimensions.
+	private static double[] laplacianSymbol(int n)
+	{
+		double[] s = new double[n];
+		for (int k = 0; k < n; k++)
+			s[k] = 2 - 2 * Math.cos(Math.PI * k / n);
+		return s;
+	}
+
+	// The conjugate gradient iterations of tikhonov.q
+	private float[] solveConjugateGradient(float[] b, int width, int height)
+	{
+		final int n = b.length;
+		float[] x = b.clone();
+		float[] r = new float[n];
+		float[] Ax = applyA(x, width, height);
+		for (int i = 0; i < n; i++)
+			r[i] = b[i] - Ax[i];
+		float[] p = r.clone();
+		double rsold = dot(r, r);
+
+		final CancellationPoint cancellation = new CancellationPoint();
+
+		for (int iter = 0; iter < numIterations; iter++)
+		{
+			cancellation.check();
+
+			float[] Ap = applyA(p, width, height);
+			final float alpha = (float)(rsold / dot(p, Ap));
+			for (int i = 0; i < n; i++)
+			{
+				x[i] += alpha * p[i];
+				r[i] -= alpha * Ap[i];
+			}
+			final double rsnew = dot(r, r);
+			if (!(rsnew > 0))
+				break;  // converged exactly
+			final float beta = (float)(rsnew / rsold);
+			for (int i = 0; i < n; i++)
+				p[i] = r[i] + beta * p[i];
+			rsold = rsnew;
+		}
+
+		return x;
+	}
+
+	private float[] applyA(float[] x, int width, int height)
+	{
+		float[] LLx = laplacian(laplacian(x, width, height), width, height);
+		float[] Ax = (blur != null) ? blur.filter(x, width, height) : x.clone();
+		for (int i = 0; i < Ax.length; i++)
+			Ax[i] += lambda * LLx[i];
+		return Ax;
+	}
+
+	// 5-point Laplacian [[0,-1,0],[-1,4,-1],[0,-1,0]] with mirror boundaries
+	private static float[] laplacian(float[] x, int width, int height)
+	{
+		float[] out = new float[x.length];
+		for (int v = 0; v < height; v++)
+		{
+			final int row = v * width;
+			final int rowN = ImageUtils.mirrorIndex(v - 1, height) * width;
+			final int rowS = ImageUtils.mirrorIndex(v + 1, height) * width;
+			for (int u = 0; u < width; u++)
+			{
+				final int uW = ImageUtils.mirrorIndex(u - 1, width);
+				final int uE = ImageUtils.mirrorIndex(u + 1, width);
+				out[row + u] = 4 * x[row + u] - x[rowN + u] - x[rowS + u] - x[row + uW] - x[row + uE];
+			}
+		}
+		return out;
+	}
+
+	private static double dot(float[] a, float[] b)
+	{
+		double sum = 0;
+		for (int i = 0; i < a.length; i++)
+			sum += a[i] * b[i];
+		return sum;
+	}
+}
@@ -30,12 +30,6 @@ public class TotalVariationAlgorithm extends Algorithm
 	    return new TotalVariationParams(params);
 	}
 	
-	@Override
-	public Denoiser getDenoiserCopy()
-	{
-		return new TotalVariationDenoiser(new TotalVariationParams(params));
-	}
-
 	@Override
     public DenoiseParamsPanelBase getPanel()
     {
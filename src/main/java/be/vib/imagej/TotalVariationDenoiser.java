@@ -8,31 +8,30 @@ public class TotalVariationDenoiser extends Denoiser
 {
 	public TotalVariationDenoiser(TotalVariationParams params)
 	{
-		super(params);
+		super(params, QuasarBackend.getInstance());
 	}
 
 	@Override
 	public ImageProcessor call()
 	{
-		QFunction total_variation_denoise = new QFunction("total_variation_denoise(mat,scalar,int,scalar)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction total_variation_denoise = registry.function("total_variation_denoise(mat,scalar,int,scalar)");
 		
 		final boolean byteRange = false;  // normalize pixel values to/from [0,1] before/after denoising
 		
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-				
-		TotalVariationParams params = (TotalVariationParams)this.params;
-		
-		QValue denoisedImageCube = total_variation_denoise.apply(noisyImageCube,
-                                                                 new QValue(params.lambda),
-				                                                 new QValue(params.numIterations),
-				                                                 new QValue(TotalVariationParams.alpha));
-		
-		noisyImageCube.dispose();
-
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-
-		denoisedImageCube.dispose();
-
-		return denoisedImage;
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
+					
+			TotalVariationParams params = (TotalVariationParams)this.params;
+			
+			QValue denoisedImageCube = arena.apply(total_variation_denoise,
+			                                       noisyImageCube,
+			                                       arena.value(params.lambda),
+			                                       arena.value(params.numIterations),
+			                                       arena.value(TotalVariationParams.alpha));
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 }
\ No newline at end of file
@@ -11,26 +11,35 @@ public class TotalVariationParams extends DenoiseParams
 	public static final int iterationsMax = 200;
 
 	public static final float alpha = 0.01f; // (fixed) step size
+	
+	// Tolerance used when the user asks to stop early: the mean absolute change per pixel and iteration, for pixel values in [0,1].
+	// On typical noisy images the iterations then stop before iterationsMax, on average within 2% of the intensity range
+	// of the converged result (see TotalVariationConvergenceCheck).
+	public static final float defaultConvergenceTolerance = 1.5e-4f;
 
 	public float lambda;
 	public int numIterations;
+	public float convergenceTolerance; // stop iterating when the mean absolute change per pixel drops below this (0 = never stop early); only supported by the Java implementation
 	
 	public TotalVariationParams()
 	{
 		lambda = 0.5f;
 		numIterations = 100;
+		convergenceTolerance = 0.0f;
 	}
 	
 	public TotalVariationParams(float lambda, int numIterations)
 	{
 		this.lambda = lambda;
 		this.numIterations = numIterations;
+		this.convergenceTolerance = 0.0f;
 	}
 	
 	public TotalVariationParams(TotalVariationParams other)
 	{
 		this.lambda = other.lambda;
 		this.numIterations = other.numIterations;
+		this.convergenceTolerance = other.convergenceTolerance;
 	}
 	
 	@Override
@@ -40,13 +49,14 @@ public class TotalVariationParams extends DenoiseParams
     	props.setProperty(PREFIX + "algorithm", "totalvariation");
     	props.setProperty(PREFIX + "totalvariation.lambda", Float.toString(lambda));
     	props.setProperty(PREFIX + "totalvariation.numiterations", Integer.toString(numIterations));
+    	props.setProperty(PREFIX + "totalvariation.convergencetolerance", Float.toString(convergenceTolerance));
     	return props;
     }
 
 	@Override
 	public String toString()
 	{
-		return "lambda " + lambda + "; " + numIterations + " iterations";
+		return "lambda " + lambda + "; " + numIterations + " iterations" + ((convergenceTolerance > 0) ? " (stop when converged, tolerance " + convergenceTolerance + ")" : "");
 	}
 	
 	@Override
@@ -54,13 +64,24 @@ public class TotalVariationParams extends DenoiseParams
 	{
 		TotalVariationParams other = (TotalVariationParams)obj;
 		
-		return (obj instanceof TotalVariationParams) && (lambda == other.lambda) && (numIterations == other.numIterations);
+		return (obj instanceof TotalVariationParams) && (lambda == other.lambda) && (numIterations == other.numIterations) && (convergenceTolerance == other.convergenceTolerance);
+	}
+	
+	@Override
+	public DenoiseParams forBackend(DenoiseBackend backend)
+	{
+		if (convergenceTolerance == 0 || backend instanceof JavaBackend)
+			return this;
+
+		TotalVariationParams params = new TotalVariationParams(this);
+		params.convergenceTolerance = 0;  // ignored by the Quasar implementation
+		return params;
 	}
 	
 	@Override
 	public int hashCode()
 	{
-		return Float.valueOf(lambda).hashCode() ^ Integer.valueOf(numIterations).hashCode();
+		return Float.valueOf(lambda).hashCode() ^ Integer.valueOf(numIterations).hashCode() ^ Float.valueOf(convergenceTolerance).hashCode();
 	}
 
 	@Override
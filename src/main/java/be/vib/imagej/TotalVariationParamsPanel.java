@@ -4,6 +4,7 @@ import java.text.NumberFormat;
 
 import javax.swing.BorderFactory;
 import javax.swing.GroupLayout;
+import javax.swing.JCheckBox;
 import javax.swing.JFormattedTextField;
 import javax.swing.JLabel;
 import javax.swing.JSlider;
@@ -14,6 +15,7 @@ class TotalVariationParamsPanel extends DenoiseParamsPanelBase
 	private TotalVariationParams params;
 	private SliderFieldPair lambdaPair;
 	private SliderSpinnerPair iterationsPair;
+	private JCheckBox convergenceCheckBox;
 	
 	public TotalVariationParamsPanel(TotalVariationParams params)
 	{
@@ -35,6 +37,7 @@ class TotalVariationParamsPanel extends DenoiseParamsPanelBase
 		lambdaPair = new SliderFieldPair(0, 100, floatFormat, TotalVariationParams.lambdaMin, TotalVariationParams.lambdaMax);
 		lambdaPair.setValue(params.lambda);
 		lambdaPair.addPropertyChangeListener(e -> { params.lambda = lambdaPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(lambdaPair, value -> { TotalVariationParams p = new TotalVariationParams(params); p.lambda = value; return p; });
 		
 		JSlider lambdaSlider = lambdaPair.getSlider();
 		
@@ -46,6 +49,7 @@ class TotalVariationParamsPanel extends DenoiseParamsPanelBase
 		iterationsPair = new SliderSpinnerPair(TotalVariationParams.iterationsMin, TotalVariationParams.iterationsMax);
 		iterationsPair.setValue(params.numIterations);
 		iterationsPair.addPropertyChangeListener(e -> { params.numIterations = iterationsPair.getValue(); fireParamsChangeEvent(); });
+		addNeighbours(iterationsPair, value -> { TotalVariationParams p = new TotalVariationParams(params); p.numIterations = value; return p; });
 		
 		JSlider iterationsSlider = iterationsPair.getSlider();
 		
@@ -56,6 +60,13 @@ class TotalVariationParamsPanel extends DenoiseParamsPanelBase
 
 		//
 		
+		convergenceCheckBox = new JCheckBox("Stop early when converged");
+		convergenceCheckBox.setSelected(params.convergenceTolerance > 0);
+		convergenceCheckBox.addActionListener(e -> { params.convergenceTolerance = convergenceCheckBox.isSelected() ? TotalVariationParams.defaultConvergenceTolerance : 0.0f; fireParamsChangeEvent(); });
+		convergenceCheckBox.setToolTipText("Stop iterating as soon as the result hardly changes anymore, so a large number of iterations only costs time where it is needed. Only supported when denoising on the CPU (not with Quasar).");
+
+		//
+		
 		GroupLayout layout = new GroupLayout(this);
 		layout.setAutoCreateGaps(true);
 		layout.setAutoCreateContainerGaps(true);
@@ -67,7 +78,8 @@ class TotalVariationParamsPanel extends DenoiseParamsPanelBase
 			           .addComponent(iterationsLabel))
 		      .addGroup(layout.createParallelGroup(GroupLayout.Alignment.LEADING, false)
 			           .addComponent(lambdaField)
-			           .addComponent(iterationsSpinner))
+			           .addComponent(iterationsSpinner)
+			           .addComponent(convergenceCheckBox))
 		      .addGroup(layout.createParallelGroup(GroupLayout.Alignment.LEADING, false)
 			           .addComponent(lambdaSlider)
 			           .addComponent(iterationsSlider))
@@ -85,6 +97,7 @@ class TotalVariationParamsPanel extends DenoiseParamsPanelBase
 		    				  .addComponent(iterationsLabel)
 		    				  .addComponent(iterationsSpinner))
 			           .addComponent(iterationsSlider))
+		      .addComponent(convergenceCheckBox)
 		      );  
 		
 		setLayout(layout);
@@ -95,5 +108,6 @@ class TotalVariationParamsPanel extends DenoiseParamsPanelBase
 	{
 		lambdaPair.updateRange(TotalVariationParams.lambdaMin, TotalVariationParams.lambdaMax, params.lambda);		
 		iterationsPair.updateRange(TotalVariationParams.iterationsMin, TotalVariationParams.iterationsMax, params.numIterations);
+		convergenceCheckBox.setSelected(params.convergenceTolerance > 0);
 	}
 }
\ No newline at end of file
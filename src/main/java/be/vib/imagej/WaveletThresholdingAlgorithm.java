@@ -30,12 +30,6 @@ public class WaveletThresholdingAlgorithm extends Algorithm
 	    return new WaveletThresholdingParams(params);
 	}
 	
-	@Override
-	public Denoiser getDenoiserCopy()
-	{
-		return new WaveletThresholdingDenoiser(new WaveletThresholdingParams(params));
-	}
-
 	@Override
     public DenoiseParamsPanelBase getPanel()
     {
@@ -8,36 +8,36 @@ public class WaveletThresholdingDenoiser extends Denoiser
 {	
 	public WaveletThresholdingDenoiser(WaveletThresholdingParams params)
 	{
-		super(params);
+		super(params, QuasarBackend.getInstance());
 	}
 	
 	@Override
 	public ImageProcessor call()
 	{		
-		QFunction waveletThresholding = new QFunction("wav_denoise(mat,int,mat,mat,string,scalar)");
+		QuasarRegistry registry = QuasarBackend.getInstance().getRegistry();
+		QFunction waveletThresholding = registry.function("wav_denoise(mat,int,mat,mat,string,scalar)");
 				
 		final boolean byteRange = false;  // normalize pixel values to/from [0,1] before/after denoising
-		QValue noisyImageCube = normalizer.normalize(image, byteRange);
-		
-		WaveletThresholdingParams params = (WaveletThresholdingParams)this.params;
 
-		QValue w1 = QValue.readhostVariable("filtercoeff_farras");          // wavelet for the first scale (a 2x10 matrix)
-		QValue w2 = QValue.readhostVariable("filtercoeff_selcw").at(3, 1);  // wavelet for the other scales (a 2x12 matrix)
+		try (QValueArena arena = new QValueArena(getClass().getSimpleName()))
+		{
+			QValue noisyImageCube = arena.track(normalizer.normalize(image, byteRange));
+			
+			WaveletThresholdingParams params = (WaveletThresholdingParams)this.params;
 
-		QValue denoisedImageCube = waveletThresholding.apply(noisyImageCube,
-							                                 new QValue(WaveletThresholdingParams.J),
-							                                 w1,
-							                                 w2,
-							                                 new QValue(WaveletThresholdingParams.thresholdType),
-							                                 new QValue(params.threshold));
-		
-		noisyImageCube.dispose();
+			QValue w1 = registry.hostVariable("filtercoeff_farras");        // wavelet for the first scale (a 2x10 matrix)
+			QValue w2 = registry.hostVariable("filtercoeff_selcw", 3, 1);  // wavelet for the other scales (a 2x12 matrix)
 
-		ImageProcessor denoisedImage = normalizer.denormalize(image, denoisedImageCube, byteRange);
-		
-		denoisedImageCube.dispose();
-
-		return denoisedImage;
+			QValue denoisedImageCube = arena.apply(waveletThresholding,
+			                                       noisyImageCube,
+			                                       arena.value(WaveletThresholdingParams.J),
+			                                       w1,
+			                                       w2,
+			                                       arena.value(WaveletThresholdingParams.thresholdType),
+			                                       arena.value(params.threshold));
+			
+			return normalizer.denormalize(image, denoisedImageCube, byteRange);
+		}
 	}
 	
 	@Override
@@ -0,0 +1,86 @@
+package be.vib.imagej;
+
+// Pure-Java wavelet thresholding with the 2D dual-tree complex wavelet transform (see DualTreeWavelet),
+// the CPU counterpart of wav_denoise() in wavelet_thresholding.q.
+//
+// The real and imaginary parts of the complex detail coefficients are (soft or hard) thresholded separately,
+// just like in the Quasar code; the low-pass band at the coarsest scale is left untouched.
+//
+// The image is mirror extended to a multiple of 2^J (rather than to a power of two), and the trees are
+// processed one pair at a time, with the two trees of a pair transformed in parallel (in place), so the
+// memory use stays at about 4 times the (extended) image.
+public class WaveletThresholdingFilter
+{
+	private final DualTreeWavelet wavelet;
+	private final float threshold;
+	private final boolean soft;
+
+	// thresholdType is "soft" or "hard"
+	public WaveletThresholdingFilter(int numScales, String thresholdType, float threshold)
+	{
+		this.wavelet = new DualTreeWavelet(numScales);
+		this.threshold = threshold;
+		this.soft = !"hard".equals(thresholdType);
+	}
+
+	public float[] filter(float[] image, int width, int height)
+	{
+		final int w = wavelet.extendedSize(width);
+		final int h = wavelet.extendedSize(height);
+
+		final float[] extended = wavelet.extend(image, width, height);
+		final float[] sum = new float[w * h];
+		final float[][] trees = { new float[w * h], new float[w * h] };
+
+		for (int[][] pair : DualTreeWavelet.TREE_PAIRS)
+		{
+			ParallelFor.run(2, 1, (start, end) -> {
+				for (int t = start; t < end; t++)
+				{
+					System.arraycopy(extended, 0, trees[t], 0, extended.length);
+					wavelet.forward(trees[t], w, h, pair[t][0], pair[t][1]);
+				}
+			});
+
+			wavelet.rotatePair(trees[0], trees[1], w, h);
+			thresholdDetails(trees[0], w, h);
+			thresholdDetails(trees[1], w, h);
+			wavelet.rotatePair(trees[0], trees[1], w, h);
+
+			ParallelFor.run(2, 1, (start, end) -> {
+				for (int t = start; t < end; t++)
+					wavelet.inverse(trees[t], w, h, pair[t][0], pair[t][1]);
+			});
+
+			for (int i = 0; i < sum.length; i++)
+				sum[i] += trees[0][i] + trees[1][i];
+		}
+
+		// Average of the 4 trees
+		return wavelet.crop(sum, width, height, 0.25f);
+	}
+
+	private void thresholdDetails(final float[] data, final int w, final int h)
+	{
+		final int lowpassWidth = w >> wavelet.getNumScales();
+		final int lowpassHeight = h >> wavelet.getNumScales();
+
+		ParallelFor.run(h, (start, end) -> {
+			for (int y = start; y < end; y++)
+			{
+				final int firstX = (y < lowpassHeight) ? lowpassWidth : 0;
+				for (int i = y * w + firstX; i < (y + 1) * w; i++)
+					data[i] = threshold(data[i]);
+			}
+		});
+	}
+
+	private float threshold(float c)
+	{
+		final float magnitude = Math.abs(c);
+		if (soft)
+			return (magnitude > threshold) ? Math.signum(c) * (magnitude - threshold) : 0;
+		else
+			return (magnitude > threshold) ? c : 0;
+	}
+}
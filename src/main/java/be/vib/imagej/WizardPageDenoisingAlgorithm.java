@@ -7,7 +7,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.prefs.Preferences;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -17,14 +17,17 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.SwingUtilities;
 
-import be.vib.bits.QExecutor;
 import ij.process.ImageProcessor;
 
 public class WizardPageDenoisingAlgorithm extends WizardPage 
 {
-	// The saturatingExecutor is an executor that, at any point in time, is executing at most one task while holding at most one additional task in a queue.
-	// When the queue already holds a task, a new task will replace the old one in the queue. This executor is useful to avoid buildup of unfinished Quasar work.
-	private SaturatingExecutor saturatingExecutor = new SaturatingExecutor(1, 1);
+	public static final String DISK_CACHE_PREFERENCE = "previewcache.disk";
+	public static final String PREFETCH_PREFERENCE = "previewcache.prefetch";
+	
+	// The previewScheduler runs the denoising previews in the background. Only the preview for the latest parameters matters:
+	// a new preview request cancels the older ones, including one that is already being computed. This avoids buildup
+	// of unfinished denoising work, and avoids the preview lagging a full denoising behind while the user drags a slider.
+	private PreviewScheduler previewScheduler = new PreviewScheduler();
 	
 	private JPanel algorithmParamsPanel;
 		
@@ -33,17 +36,28 @@ public class WizardPageDenoisingAlgorithm extends WizardPage
 			
 	private Map<Algorithm.Name, JRadioButton> buttonsMap;
 	
-	// We maintain a cache of 100 denoised results for different parameter settings.
-	// Assuming a 512x512 ROI and 8 bit/pixel grayscale previews, a full cache requires
-	// about 100 * (1 MB / 4) = 25 MB storage. This seems acceptable.
-	private DenoisePreviewCache previewCache = new DenoisePreviewCache(100);
+	// We maintain a cache of denoised results for different parameter settings (and different noisy previews).
+	// The previews are stored as their 8 bit/pixel samples plus, for indexed images, their lookup table (see DenoisePreviewCacheValue).
+	// The memory tier is bounded in bytes (32 MB), so for a 512x512 ROI it holds about 128 previews (a quarter MB each).
+	// Unless disabled in the preferences, the previews are also kept on disk (at most 256 MB), for later Fiji sessions.
+	private DenoisePreviewCache previewCache;
+	
+	private String noisyPreviewHash; // identifies the content of the noisy preview in the preview cache
 		
  	public WizardPageDenoisingAlgorithm(Wizard wizard, String name)
 	{
 		super(wizard, name);
+		previewCache = createPreviewCache(wizard.getPreferences());
 		buildUI();
 	}
 	
+	private static DenoisePreviewCache createPreviewCache(Preferences prefs)
+	{
+		final boolean useDisk = prefs.getBoolean(DISK_CACHE_PREFERENCE, true);
+		DenoisePreviewDiskCache diskCache = useDisk ? new DenoisePreviewDiskCache(DenoisePreviewDiskCache.getDefaultDir(), 256 * 1024 * 1024) : null;
+		return new DenoisePreviewCache(32 * 1024 * 1024, diskCache);
+	}
+	
 	private void buildUI()
 	{
 		Algorithm[] algorithms = wizard.getModel().getAlgorithms();
@@ -148,84 +162,153 @@ public class WizardPageDenoisingAlgorithm extends WizardPage
 		}
 	}
 	
-	private class DenoisingTask implements Runnable
+	private class DenoisingTask implements PreviewScheduler.Task
 	{
-		private Algorithm algorithm;
-		private ImageProcessor image;
-		private ImageNormalizer normalizer; // IMPROVEME? This could/should perhaps become part of Algorithm?
+		protected Algorithm.Name name;
+		protected DenoiseParams params;
+		protected ImageProcessor image;
+		protected ImageNormalizer normalizer; // IMPROVEME? This could/should perhaps become part of Algorithm?
+		protected String imageHash;
+		protected DenoisePreviewCacheKey cacheKey;
 				
-		public DenoisingTask(Algorithm algorithm, ImageProcessor image, ImageNormalizer normalizer)
+		public DenoisingTask(Algorithm algorithm, ImageProcessor image, ImageNormalizer normalizer, String imageHash)
 		{
-			this.algorithm = algorithm;
-			this.image = image.duplicate(); // deep copy
-
 			// Note: we deep copy the noisy input image (since the denoising happens asynchronously
 			// and we don't want surprises if the input image gets changed meanwhile...)
 			// CHECKME: is this really needed?
 			
+			// Note: we also take a snapshot of the denoising parameters, they are used for both the denoiser and the cache key,
+			// and must not be modified after we stored them in the cache.
+			this(algorithm.getName(), algorithm.getParamsCopy(), image.duplicate(), normalizer, imageHash);
+		}
+		
+		protected DenoisingTask(Algorithm.Name name, DenoiseParams params, ImageProcessor image, ImageNormalizer normalizer, String imageHash)
+		{
+			this.name = name;
+			this.params = params;
+			this.image = image;
 			this.normalizer = normalizer;
+			this.imageHash = imageHash;
+			this.cacheKey = new DenoisePreviewCacheKey(imageHash, name, params);
+		}
+		
+		// Returns a task that calculates the preview for the same noisy image but for different parameters,
+		// and only stores it in the preview cache.
+		public PrefetchTask prefetch(DenoiseParams otherParams)
+		{
+			return new PrefetchTask(name, otherParams, cacheKey, image, normalizer, imageHash); // the noisy image is only read, so it can be shared
 		}
 		
 		@Override
-		public void run()
+		public void run(PreviewScheduler.Request request) throws Exception
 		{
 			// Note: this is not executed on the Java EDT (Event Dispatching Thread),
-			// so SwingUtils.invokeLater() is needed to update the UI.
+			// so the UI is updated via request.deliver(), which also drops the update
+			// if the user changed the parameters again in the meantime.
 
-			Denoiser denoiser = algorithm.getDenoiserCopy();
-			denoiser.setImage(image, normalizer);
+			DenoisePreviewCacheValue cached = previewCache.get(cacheKey);
 			
-			try
+			if (cached != null)
 			{
-				// Note: we have to copy the cache key and value (the denoising parameters object and preview image object)
-				// to ensure they are not modified after we stored them in the cache.
-				DenoisePreviewCacheKey cacheKey = new DenoisePreviewCacheKey(algorithm);
-				DenoisePreviewCacheValue cached = previewCache.get(cacheKey);
-				
-				if (cached != null)
-				{
-					BufferedImage cachedImage = cached.denoisedPreview;
-					float blurEstimate = cached.blurEstimate;
-					float noiseEstimate = cached.noiseEstimate;
+				BufferedImage cachedImage = cached.getDenoisedPreview(); // a new image, the cached value itself cannot be modified
+				float blurEstimate = cached.blurEstimate;
+				float noiseEstimate = cached.noiseEstimate;
 
-					BufferedImage imageCopy = ImageUtils.deepCopy(cachedImage); // copy image, to avoid it losing it if it gets ejected from the cache before it was set on the denoisedImagePanel (CHECKME: copy really needed?)
-					SwingUtilities.invokeLater(() -> { denoisedPreviewPanel.setImage(imageCopy);
-					                                   denoisedPreviewPanel.setBlurEstimate(blurEstimate);
-                                                       denoisedPreviewPanel.setNoiseEstimate(noiseEstimate); }); 
-				}
-				else
+				request.deliver(() -> { denoisedPreviewPanel.imagePanel.setBusy(false);
+				                        denoisedPreviewPanel.setImage(cachedImage);
+				                        denoisedPreviewPanel.setBlurEstimate(blurEstimate);
+				                        denoisedPreviewPanel.setNoiseEstimate(noiseEstimate); }); 
+			}
+			else
+			{
+				request.deliver(() -> { denoisedPreviewPanel.imagePanel.setBusy(true); });
+				
+				// Denoise the preview. If the user changes the parameters meanwhile, this request gets interrupted,
+				// and denoise() throws (and the PreviewScheduler ignores) an exception.
+				DenoisePreviewCacheValue cacheValue = denoise();
+				
+				BufferedImage denoisedImage = cacheValue.getDenoisedPreview();
+				float blurEstimate = cacheValue.blurEstimate;
+				float noiseEstimate = cacheValue.noiseEstimate;
+                
+				// Update UI
+				request.deliver(() -> { denoisedPreviewPanel.imagePanel.setBusy(false); 
+				                        denoisedPreviewPanel.setImage(denoisedImage);
+				                        denoisedPreviewPanel.setBlurEstimate(blurEstimate);
+				                        denoisedPreviewPanel.setNoiseEstimate(noiseEstimate); });
+				
+				// Cache image and noise and blur estimates. (Even if this request was superseded meanwhile, the result is still valid.)
+				// Note: the cache is updated after the image is handed to the UI, since storing the preview in the disk tier
+				// of the cache takes a little time.
+				previewCache.put(cacheKey, cacheValue);
+			}
+		}
+		
+		// Denoises the preview, and estimates the noise and blur in the result.
+		protected DenoisePreviewCacheValue denoise() throws Exception
+		{
+			return denoise(newDenoiser());
+		}
+		
+		protected Denoiser newDenoiser()
+		{
+			Denoiser denoiser = DenoiseBackends.createDenoiser(name, params);
+			denoiser.setImage(image, normalizer);
+			return denoiser;
+		}
+		
+		protected DenoisePreviewCacheValue denoise(Denoiser denoiser) throws Exception
+		{
+			ImageProcessor denoisedImageProcessor = denoiser.getBackend().execute(denoiser);
+			ImageUtils.CopyDisplayRange(image, denoisedImageProcessor);					
+			BufferedImage denoisedImage = denoisedImageProcessor.getBufferedImage();
+			
+			// Estimate noise in the denoised preview.
+			float noiseEstimate = new NoiseEstimator(denoisedImageProcessor, normalizer).call();
+			
+			// Estimate blur in the denoised preview.
+			float blurEstimate = new BlurEstimator(denoisedImageProcessor).call();
+			
+			// Note: right now we always estimate noise and blur, even if the user decided not to show it in the user interface.
+			// So perhaps we should not calculate it in that case? It would make the caching mechanism a bit more complex though.
+			
+			return new DenoisePreviewCacheValue(denoisedImage, noiseEstimate, blurEstimate);
+		}
+	}
+	
+	// A speculative DenoisingTask: it calculates a preview the user has not asked for (yet), and stores it in the preview cache,
+	// without updating the user interface. Previews that are already cached are skipped. A preview that would be identical
+	// to the current one (the preview for currentKey), for example because the parameters only differ in a parameter that
+	// the backend ignores, is not calculated: the current preview is stored under its key instead.
+	private class PrefetchTask extends DenoisingTask
+	{
+		private final DenoisePreviewCacheKey currentKey;
+		
+		public PrefetchTask(Algorithm.Name name, DenoiseParams params, DenoisePreviewCacheKey currentKey, ImageProcessor image, ImageNormalizer normalizer, String imageHash)
+		{
+			super(name, params, image, normalizer, imageHash);
+			this.currentKey = currentKey;
+		}
+		
+		@Override
+		public void run(PreviewScheduler.Request request) throws Exception
+		{
+			if (previewCache.contains(cacheKey))
+				return;
+			
+			Denoiser denoiser = newDenoiser();
+			if (denoiser.givesSameResult(currentKey.getParams()))
+			{
+				// The task for the current parameters cached its preview before the prefetch tasks run.
+				DenoisePreviewCacheValue current = previewCache.get(currentKey);
+				if (current != null)
 				{
-					SwingUtilities.invokeLater(() -> { denoisedPreviewPanel.imagePanel.setBusy(true); });
-					
-					// Denoise the preview
-					ImageProcessor denoisedImageProcessor = QExecutor.getInstance().submit(denoiser).get();
-					ImageUtils.CopyDisplayRange(image, denoisedImageProcessor);					
-					BufferedImage denoisedImage = denoisedImageProcessor.getBufferedImage();
-					
-					// Estimate noise in the denoised preview.
-					float noiseEstimate = QExecutor.getInstance().submit(new NoiseEstimator(denoisedImageProcessor, normalizer)).get();
-					
-					// Estimate blur in the denoised preview.
-					float blurEstimate = QExecutor.getInstance().submit(new BlurEstimator(denoisedImageProcessor)).get();
-					
-					// Note: right now we always estimate noise and blur, even if the user decided not to show it in the user interface.
-					// So perhaps we should not calculate it in that case? It would make the caching mechanism a bit more complex though.
-					
-					// Cache image and noise and blur estimates.
-					DenoisePreviewCacheValue cacheValue = new DenoisePreviewCacheValue(denoisedImage, noiseEstimate, blurEstimate);
-					previewCache.put(cacheKey, cacheValue);
-                    
-					// Update UI
-					SwingUtilities.invokeLater(() -> { denoisedPreviewPanel.imagePanel.setBusy(false); 
-					                                   denoisedPreviewPanel.setImage(denoisedImage);
-                                                       denoisedPreviewPanel.setBlurEstimate(blurEstimate);
-                                                       denoisedPreviewPanel.setNoiseEstimate(noiseEstimate); });
+					previewCache.put(cacheKey, current);
+					return;
 				}
 			}
-			catch (Exception e)
-			{
-				e.printStackTrace();
-			}			
+			
+			previewCache.put(cacheKey, denoise(denoiser));
 		}
 	}
 	
@@ -234,20 +317,13 @@ public class WizardPageDenoisingAlgorithm extends WizardPage
 		// Calculate an estimate for the amount of noise and blur in the user-selected region-of-interest
 		// on the original (=noisy) image.
 		
-		try
-		{	
-			WizardModel model = wizard.getModel();
-			ImageProcessor noisyImageProcessor = model.getNoisyPreview();
-			ImageNormalizer normalizer = model.getImageNormalizer();
-			float noiseEstimate = QExecutor.getInstance().submit(new NoiseEstimator(noisyImageProcessor, normalizer)).get();
-			float blurEstimate = QExecutor.getInstance().submit(new BlurEstimator(noisyImageProcessor)).get();
-			origPreviewPanel.setNoiseEstimate(noiseEstimate);
-			origPreviewPanel.setBlurEstimate(blurEstimate);
-		}
-		catch (InterruptedException | ExecutionException e)
-		{
-			e.printStackTrace();
-		}			
+		WizardModel model = wizard.getModel();
+		ImageProcessor noisyImageProcessor = model.getNoisyPreview();
+		ImageNormalizer normalizer = model.getImageNormalizer();
+		float noiseEstimate = new NoiseEstimator(noisyImageProcessor, normalizer).call();
+		float blurEstimate = new BlurEstimator(noisyImageProcessor).call();
+		origPreviewPanel.setNoiseEstimate(noiseEstimate);
+		origPreviewPanel.setBlurEstimate(blurEstimate);
 	}
 	
 	private void updateDenoisedPreview()
@@ -259,27 +335,49 @@ public class WizardPageDenoisingAlgorithm extends WizardPage
 		// Run the denoising preview on a separate worker thread and return here immediately.
 		// Once denoising has completed, the worker will automatically update the denoising
 		// preview image in the Java Event Dispatch Thread (EDT).
-		//                                                                      
-		// Note: if Quasar is busy already, no more than 1 additional denoising task will be queued
-		// and newer tasks will replace older queued tasks. This avoids building up a Quasar work backlog
-		// but still guarantees that the denoised preview will correspond to the latest parameters chosen by the user.
+		//
+		// Note: a new task supersedes all earlier ones: queued tasks are dropped, a running task is interrupted
+		// and its result is ignored. This avoids building up a backlog of denoising work, and guarantees
+		// that the denoised preview will correspond to the latest parameters chosen by the user.
+		//
+		// Once the preview is shown, and as long as the user does not change the parameters, the scheduler
+		// also calculates the previews for one slider step down and up from the current parameters (unless disabled
+		// in the preferences). This idle time is otherwise wasted, and stepping a slider then usually finds its preview
+		// in the cache. A new preview request interrupts this prefetching. That only helps if the backend actually stops
+		// the interrupted denoiser: otherwise the new preview would have to wait for the prefetch to finish, so we do not
+		// prefetch on backends that do not support cancellation (Quasar).
 		
 		WizardModel model = wizard.getModel();
-		DenoisingTask task = new DenoisingTask(model.getAlgorithm(), model.getNoisyPreview(), model.getImageNormalizer());
-		saturatingExecutor.Submit(task);                                                                    	
+		Algorithm algorithm = model.getAlgorithm();
+		DenoisingTask task = new DenoisingTask(algorithm, model.getNoisyPreview(), model.getImageNormalizer(), noisyPreviewHash);
+		
+		List<PrefetchTask> prefetchTasks = new ArrayList<PrefetchTask>();
+		if (wizard.getPreferences().getBoolean(PREFETCH_PREFERENCE, true) && canPrefetch(algorithm.getName()))
+		{
+			for (DenoiseParams params : algorithm.getPanel().getNeighbouringParams())
+				prefetchTasks.add(task.prefetch(params));
+		}
+		
+		previewScheduler.submit(task, prefetchTasks);
+	}
+
+	private static boolean canPrefetch(Algorithm.Name name)
+	{
+		return DenoiseBackends.isSupported(name) && DenoiseBackends.getBackend(name).supportsCancellation();
 	}
 	
 	@Override
 	public void goingToNextPage() 
 	{
-		// Nothing to be done.
 		// Model contains required denoising parameters for use in next page.
+		// A preview that is still being computed is no longer needed.
+		previewScheduler.cancel();
 	}
 	
 	@Override
 	public void goingToPreviousPage()
 	{
-		// Nothing to be done
+		previewScheduler.cancel();
 	}
 
 	@Override
@@ -294,8 +392,9 @@ public class WizardPageDenoisingAlgorithm extends WizardPage
 		WizardModel model = wizard.getModel();
 		assert(model.getImage() != null);
 				
-		// Always clear the cache, just in case the user switched to a different image or ROI.
-		previewCache.clear();
+		// The cache is keyed by the content of the noisy preview, so there is no need to clear it if the user switched to
+		// a different image or ROI: the previews for the old one simply won't be found (until the user switches back to it).
+		noisyPreviewHash = DenoisePreviewCacheKey.hashImage(model.getNoisyPreview(), model.getImageNormalizer());
 		
 		JRadioButton button = buttonsMap.get(model.getAlgorithm().getName());
 		button.setSelected(true);
@@ -1,11 +1,20 @@
 package be.vib.imagej;
 
+import java.awt.Component;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.swing.BoxLayout;
 import javax.swing.JLabel;
+import javax.swing.JProgressBar;
 
 public class WizardPageInitializeQuasar extends WizardPage
 {
-	private boolean initialized = false;
+	public static final String WARMUP_PREFERENCE = "quasar.warmup";
+	
+	private boolean done = false; // true if the user can continue: Quasar is initialized, or denoising can fall back to the Java backend
 	private JLabel statusLabel;
+	private JProgressBar progressBar; // progress of the algorithm warm-up, if enabled in the preferences
 	
 	public WizardPageInitializeQuasar(Wizard wizard, String name)
 	{
@@ -18,33 +27,103 @@ public class WizardPageInitializeQuasar extends WizardPage
 	private void buildUI()
 	{
 		statusLabel = new JLabel("Preparing the graphics card for denoising calculations...");
+		statusLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+		
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setAlignmentX(Component.CENTER_ALIGNMENT);
+		progressBar.setVisible(false);
+		
+		setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
 		add(statusLabel);
+		add(progressBar);
 	}
 	
 	private void initializeQuasar()
 	{
 		Runnable onSuccess = () -> {
-			initialized = true;
-			statusLabel.setText("The graphics card is ready for denoising calculations.");
+			done = true;
+			progressBar.setVisible(false);
+			statusLabel.setText(readyMessage());
 			wizard.updateButtons();
 		};
 		
 		Runnable onFailure = () -> {
-			initialized = false;
-			statusLabel.setText("<html><center>The graphics card is not ready for denoising calculations. Failed to initialize Quasar.<br><br>" +
-			                    "If you did not install Quasar yet, then please consult the plugin's installation instructions and do so first.<br><br>" + 
-					            "If you did install Quasar and this problem persists, then please contact the plugin maintainer for help.</center></html>");
+			progressBar.setVisible(false);
+			
+			// Without Quasar the denoising can still run on the CPU, via the Java backend, if it implements all our algorithms.
+			done = allAlgorithmsSupported();
+			if (done)
+			{
+				statusLabel.setText("<html><center>Quasar is not available, so the graphics card cannot be used for the denoising calculations.<br><br>" +
+				                    "Denoising will run on the CPU instead, which is slower.<br><br>" +
+				                    "If you want to use the graphics card, then please consult the plugin's installation instructions for installing Quasar.</center></html>");
+			}
+			else
+			{
+				statusLabel.setText("<html><center>The graphics card is not ready for denoising calculations. Failed to initialize Quasar.<br><br>" +
+				                    "If you did not install Quasar yet, then please consult the plugin's installation instructions and do so first.<br><br>" + 
+						            "If you did install Quasar and this problem persists, then please contact the plugin maintainer for help.</center></html>");
+			}
 			wizard.updateButtons();
 		};
 
-		QuasarInitializationSwingWorker worker = new QuasarInitializationSwingWorker(onSuccess, onFailure);
+		// Optionally run each denoising algorithm once right after initialization,
+		// so that the first denoising preview does not pay for compiling the Quasar code.
+		final boolean warmUp = wizard.getPreferences().getBoolean(WARMUP_PREFERENCE, true);
+		
+		Consumer<String> onStatus = message -> {
+			statusLabel.setText(message);
+			progressBar.setVisible(true);
+		};
+		
+		QuasarInitializationSwingWorker worker = new QuasarInitializationSwingWorker(onSuccess, onFailure, warmUp, onStatus);
+		worker.addPropertyChangeListener(e -> {
+			if ("progress".equals(e.getPropertyName()))
+				progressBar.setValue((Integer)e.getNewValue());
+		});
 		worker.execute();		
 	}
 	
+	// The message shown when Quasar is ready. If the algorithms were warmed up, it lists for each algorithm how long
+	// its first run took (including the compilation of its Quasar code) and how long a later run takes.
+	private String readyMessage()
+	{
+		Map<Algorithm.Name, QuasarWarmUp.Timing> timings = QuasarWarmUp.getTimings();
+		if (timings.isEmpty())
+			return "The graphics card is ready for denoising calculations.";
+		
+		StringBuilder sb = new StringBuilder("<html><center>The graphics card is ready for denoising calculations.<br><br>" +
+		                                     "Preparing the denoising algorithms took:<br><table>" +
+		                                     "<tr><th></th><th>first run</th><th>later runs</th><th>saved</th></tr>");
+		for (Algorithm algorithm : wizard.getModel().getAlgorithms())
+		{
+			QuasarWarmUp.Timing timing = timings.get(algorithm.getName());
+			if (timing == null)
+				continue;
+			
+			sb.append("<tr><td>").append(algorithm.getReadableName()).append("</td>")
+			  .append("<td align=right>").append(timing.coldMillis).append(" ms</td>")
+			  .append("<td align=right>").append(timing.warmMillis).append(" ms</td>")
+			  .append("<td align=right>").append(timing.getColdStartPenaltyMillis()).append(" ms</td></tr>");
+		}
+		sb.append("</table></center></html>");
+		return sb.toString();
+	}
+	
+	private boolean allAlgorithmsSupported()
+	{
+		for (Algorithm algorithm : wizard.getModel().getAlgorithms())
+		{
+			if (!DenoiseBackends.isSupported(algorithm.getName()))
+				return false;
+		}
+		return true;
+	}
+	
 	@Override
 	public void goingToNextPage() 
 	{
-		assert(initialized);
+		assert(done);
 	}
 	
 	@Override
@@ -56,13 +135,13 @@ public class WizardPageInitializeQuasar extends WizardPage
 	@Override
 	public void arriveFromNextPage() 
 	{
-		assert(initialized);
+		assert(done);
 	}
 	
 	@Override
 	public void arriveFromPreviousPage()
 	{
-		if (!initialized)
+		if (!done)
 		{
 			initializeQuasar();
 		}
@@ -71,6 +150,6 @@ public class WizardPageInitializeQuasar extends WizardPage
 	@Override
 	public boolean canGoToNextPage()
 	{
-		return initialized;
+		return done;
 	}
 }
@@ -4,7 +4,6 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.util.Arrays;
-import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -17,7 +16,6 @@ import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 
-import be.vib.bits.QExecutor;
 import ij.ImageListener;
 import ij.ImagePlus;
 import ij.ImageStack;
@@ -371,21 +369,12 @@ public class WizardPageROI extends WizardPage implements ImageListener, RoiListe
 	
 	private static float estimateNoise(ImagePlus image, ImageNormalizer normalizer)
 	{
-		float noise = -1.0f; // noise level unknown still
+		int slice = image.getCurrentSlice();
+		ImageStack stack = image.getStack();
+		ImageProcessor ip = stack.getProcessor(slice);
 		
-		try
-		{				
-			int slice = image.getCurrentSlice();
-			ImageStack stack = image.getStack();
-			ImageProcessor ip = stack.getProcessor(slice);
-			
-			noise = QExecutor.getInstance().submit(new NoiseEstimator(ip, normalizer)).get();
-			System.out.println("Estimated (normalized) std deviation of noise in " + image.getTitle() + " = " + noise);
-		}
-		catch (InterruptedException | ExecutionException e)
-		{
-			e.printStackTrace();
-		}
+		float noise = new NoiseEstimator(ip, normalizer).call();
+		System.out.println("Estimated (normalized) std deviation of noise in " + image.getTitle() + " = " + noise);
 		
 		return noise;
 	}